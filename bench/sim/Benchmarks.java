@@ -0,0 +1,21 @@
+package sim;
+
+/**
+ * Helpers shared by the benchmarks.
+ */
+final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Creates a model connected to a silent experiment, ready to create processes and distributions.
+     * @param logDirectory The log directory of the model, <code>null</code> disables logging.
+     * @return The connected model.
+     */
+    static Biathlon connectedModel(String logDirectory) {
+        Biathlon model = new Biathlon("Biathlon", Biathlon.UNIVERSAL_SEED, logDirectory);
+        model.connectToExperiment(ReplicationRunner.batchExperiment("Benchmark", Biathlon.UNIVERSAL_SEED));
+        return model;
+    }
+}
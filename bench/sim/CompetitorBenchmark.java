@@ -0,0 +1,55 @@
+package sim;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the per-step methods of the <code>Competitor</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompetitorBenchmark {
+
+    private Biathlon model;
+    private Competitor competitor;
+
+    @Setup(Level.Trial)
+    public void setupModel() {
+        model = Benchmarks.connectedModel(null);
+    }
+
+    /**
+     * A fresh competitor every iteration, so tiredness does not pile up across the measurement.
+     */
+    @Setup(Level.Iteration)
+    public void setupCompetitor() {
+        competitor = new Competitor(model, "Competitor", false, 0);
+    }
+
+    /**
+     * A single running step, the body of <code>Competitor.run()</code> without the rescheduling.
+     */
+    @Benchmark
+    public double run() {
+        return competitor.step(0.0);
+    }
+
+    @Benchmark
+    public double computeSpeed() {
+        return competitor.computeSpeed();
+    }
+
+    @Benchmark
+    public double computeAccuracy() {
+        return competitor.computeAccuracy();
+    }
+}
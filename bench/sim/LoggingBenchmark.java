@@ -0,0 +1,61 @@
+package sim;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures <code>Logger.log()</code> and <code>Results.dumpResults()</code>.
+ * The logs are written to <i>bin/bench/log</i>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LoggingBenchmark {
+
+    private Biathlon model;
+    private Logger logger;
+    private long simTime = 0;
+
+    @Setup
+    public void setup() {
+        File dir = new File("bin/bench/log");
+        dir.mkdirs();
+
+        model = Benchmarks.connectedModel(dir.getPath());
+        logger = new Logger(model, "benchmark.txt");
+
+        for (int i = 0; i < model.getNumCompetitors(); i++) {
+            model.getResults().registerCompetitor(i, String.format("Competitor #%d", i + 1));
+            model.getResults().registerMisses(i, i % 5);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        logger.close();
+    }
+
+    @Benchmark
+    public void logText() {
+        logger.log(++simTime, String.format("Desperation increases to %d%%.", (int) (simTime % 100)));
+    }
+
+    @Benchmark
+    public void logStructured() {
+        logger.log(++simTime, EventType.DESPERATION, 0, (int) (simTime % 100), 0, 0.0);
+    }
+
+    @Benchmark
+    public void dumpResults() {
+        model.getResults().dumpResults("results.txt");
+    }
+}
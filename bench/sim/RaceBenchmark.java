@@ -0,0 +1,42 @@
+package sim;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures a whole race, end to end, and its scaling with the number of competitors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RaceBenchmark {
+
+    @Param({ "10", "30", "100" })
+    public int competitors;
+
+    @Param({ "STEP", "NEXT_EVENT" })
+    public Biathlon.Movement movement;
+
+    private ReplicationRunner runner;
+    private int replication = 0;
+
+    @Setup
+    public void setup() {
+        runner = new ReplicationRunner(1, 1);
+        runner.setNumCompetitors(competitors);
+        runner.setMovement(movement);
+    }
+
+    @Benchmark
+    public Results race() {
+        return runner.runReplication(replication++);
+    }
+}
@@ -0,0 +1,44 @@
+package sim;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures <code>RandomEvent.hasHappened()</code> on the model distributions and on a competitor stream.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RandomEventBenchmark {
+
+    @Param({ "FALL", "SLIP", "PROBLEM_WITH_SKIS" })
+    public RandomEvent event;
+
+    private Biathlon model;
+
+    private RandomStream stream;
+
+    @Setup
+    public void setup() {
+        model = Benchmarks.connectedModel(null);
+        stream = model.createStream(0);
+    }
+
+    @Benchmark
+    public boolean hasHappened() {
+        return event.hasHappened(model, 0.0);
+    }
+
+    @Benchmark
+    public boolean hasHappenedStream() {
+        return event.hasHappened(stream, 0.0);
+    }
+}
@@ -0,0 +1,187 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes the records of all the <code>Logger</code>s on a single background
+ * thread.
+ * <p>
+ * Producers put the records into a bounded <code>LogRingBuffer</code> and
+ * return immediately. The writer thread formats the records (the structured
+ * ones with the <code>EventFormatter</code>) and writes them
+ * in batches, flushing the files only once <code>FLUSH_BATCH</code> records
+ * were written or <code>FLUSH_INTERVAL</code> milliseconds elapsed since the
+ * last flush. A shutdown hook drains the buffer and closes all the files, so
+ * no records are lost when the simulation calls <code>System.exit()</code>.
+ */
+public class AsyncLogWriter implements Runnable, LogRingBuffer.Consumer {
+    private static AsyncLogWriter instance = null;
+
+    /**
+     * The capacity of the record buffer.
+     */
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The number of records written before the files are flushed.
+     */
+    public static final int FLUSH_BATCH = 4096;
+
+    /**
+     * The maximal time between flushes in milliseconds.
+     */
+    public static final long FLUSH_INTERVAL = 100;
+
+    /**
+     * The time the writer thread sleeps for when there is nothing to write, in milliseconds.
+     */
+    private static final long IDLE_WAIT = 1;
+
+    private final LogRingBuffer buffer = new LogRingBuffer(BUFFER_SIZE);
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Loggers which were written to and were not closed yet. Used only by the writer thread.
+     */
+    private final Set<Logger> open = Collections.newSetFromMap(new IdentityHashMap<Logger, Boolean>());
+
+    /**
+     * Loggers written to since the last flush. Used only by the writer thread.
+     */
+    private final ArrayList<Logger> dirty = new ArrayList<Logger>();
+
+    private int pending = 0;
+    private long lastFlush = System.nanoTime();
+
+
+    private AsyncLogWriter() {
+        thread = new Thread(this, "AsyncLogWriter");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Returns the single instance of this class, starting the writer thread if needed.
+     * @return The single instance of this class.
+     */
+    public static synchronized AsyncLogWriter getInstance() {
+        if (instance == null) {
+            instance = new AsyncLogWriter();
+            instance.thread.start();
+
+            Runtime.getRuntime().addShutdownHook(new Thread("AsyncLogWriter shutdown") {
+                public void run() {
+                    instance.shutdown();
+                }
+            });
+        }
+
+        return instance;
+    }
+
+    /**
+     * Submits a record for writing. Blocks only if the buffer is full.
+     * @param target The logger the record belongs to.
+     * @param simTime Simulation time of the record in seconds.
+     * @param type <code>LogRingBuffer.TEXT</code>, <code>LogRingBuffer.CLOSE</code> or an <code>EventType</code> code.
+     * @param competitor Internal ID of the competitor.
+     * @param a Integer payload.
+     * @param b Integer payload.
+     * @param value Floating point payload.
+     * @param message The message of a text record.
+     */
+    public void submit(Logger target, long simTime, int type, int competitor, int a, int b, double value,
+            String message) {
+        while (!buffer.offer(target, simTime, type, competitor, a, b, value, message)) {
+            if (!running)
+                return;
+
+            LockSupport.unpark(thread);
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Writes all the records submitted so far and closes all the files.
+     * Further records are ignored.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(thread);
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The writer thread loop.
+     */
+    public void run() {
+        while (running) {
+            int n = buffer.drain(this, FLUSH_BATCH);
+
+            if (pending >= FLUSH_BATCH
+                    || (pending > 0 && System.nanoTime() - lastFlush >= FLUSH_INTERVAL * 1000000L))
+                flush();
+
+            if (n == 0)
+                LockSupport.parkNanos(IDLE_WAIT * 1000000L);
+        }
+
+        // Drain the tail of the logs.
+        while (buffer.drain(this, FLUSH_BATCH) > 0)
+            ;
+
+        flush();
+
+        for (Logger l : open)
+            l.closeWriter();
+
+        open.clear();
+    }
+
+    /**
+     * Writes a single record. Called on the writer thread only.
+     */
+    public void consume(Logger target, long simTime, int type, int competitor, int a, int b, double value,
+            String message) {
+        if (type == LogRingBuffer.CLOSE) {
+            target.closeWriter();
+            open.remove(target);
+            dirty.remove(target);
+            return;
+        }
+
+        if (type == LogRingBuffer.TEXT)
+            target.write(simTime, message);
+        else
+            target.write(simTime, EventType.fromCode(type), competitor, a, b, value);
+
+        open.add(target);
+
+        if (!target.dirty) {
+            target.dirty = true;
+            dirty.add(target);
+        }
+
+        ++pending;
+    }
+
+    private void flush() {
+        for (Logger l : dirty) {
+            l.flush();
+            l.dirty = false;
+        }
+
+        dirty.clear();
+        pending = 0;
+        lastFlush = System.nanoTime();
+    }
+}
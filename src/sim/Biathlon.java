@@ -5,18 +5,26 @@ import desmoj.core.simulator.Model;
 import desmoj.core.simulator.ProcessQueue;
 import desmoj.core.simulator.TimeInstant;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumMap;
+
 /**
  * The model of the Simulation.
  * Defines a number of adjustable simulation parameters used by the processes.
  */
 public class Biathlon extends Model {
-    private static Biathlon instance = null;
 
      /**
       * A universal seed used for random generators.
       */
     public static final long UNIVERSAL_SEED = 0xDEADBEEF;
 
+     /**
+      * Simulation stop time in seconds (1.0 == 1 second), a 50 minute span.
+      */
+    public static final double SIMULATION_TIME = 3000.0;
+
      /**
       * Simulation step in seconds (1.0f == 1 second).
       */
@@ -149,6 +157,59 @@ public class Biathlon extends Model {
      */
     public static final float PANIC_LOSS_MODIFIER = 0.9f;
 
+    /**
+     * Movement modes of the competitors.
+     */
+    public enum Movement {
+        /**
+         * Competitors are rescheduled every <code>STEP_TIME</code>.
+         */
+        STEP,
+
+        /**
+         * Competitors carry out all the steps up to the next shooting range or
+         * the finish line at once and are rescheduled only there. The steps
+         * themselves are identical, so is the distribution of the finish times.
+         */
+        NEXT_EVENT
+    }
+
+    /**
+     * Sampling modes of the random events.
+     */
+    public enum EventSampling {
+        /**
+         * Every event is sampled in every step of every competitor.
+         */
+        PER_STEP,
+
+        /**
+         * The step of the next occurence of every event is drawn in advance,
+         * see <code>RandomEventSchedule</code>. The event rates are the same.
+         */
+        SCHEDULED
+    }
+
+    /**
+     * Formats of the competitor and shooting range logs.
+     */
+    public enum LogFormat {
+        /**
+         * Human-readable text files, one per competitor plus one for the shooting range.
+         */
+        TEXT,
+
+        /**
+         * A single binary <code>EventLog</code> per run, see <code>EventLogDecoder</code>.
+         */
+        BINARY,
+
+        /**
+         * Text files shared by the competitors, see <code>ShardedRaceLog</code>.
+         */
+        SHARDED
+    }
+
     /**
      * Competitors queueing at the shooting range.
      */
@@ -162,19 +223,469 @@ public class Biathlon extends Model {
      */
     protected desmoj.core.simulator.ProcessQueue<ShootingRange> shootingRangeQueue;
 
+    /**
+     * The seed of this model instance.
+     */
+    private final long seed;
+
+    /**
+     * Random generator private to this model instance.
+     */
+    private final RandomStream random;
+
+    /**
+     * Directory the logs are written to or <code>null</code> if logging is disabled.
+     */
+    private final String logDirectory;
+
+    /**
+     * The number of competitors taking part in the race.
+     */
+    private int numCompetitors = NUM_COMPETITORS;
+
+    /**
+     * Results of the race carried out by this model instance.
+     */
+    private Results results;
+
+    /**
+     * Random event distributions bound to this model instance.
+     */
+    private final EnumMap<RandomEvent, RandomEvent.Sampler> randomEvents =
+        new EnumMap<RandomEvent, RandomEvent.Sampler>(RandomEvent.class);
+
+    /**
+     * Movement mode of the competitors.
+     */
+    private Movement movement = Movement.STEP;
+
+    /**
+     * Sampling mode of the random events.
+     */
+    private EventSampling eventSampling = EventSampling.PER_STEP;
+
+    /**
+     * Values of the model parameters, the constants of this class by default.
+     */
+    private Parameters parameters = new Parameters();
+
+    /**
+     * Format of the competitor and shooting range logs.
+     */
+    private LogFormat logFormat = LogFormat.TEXT;
+
+    /**
+     * The number of shooting range lanes, 0 for the single-lane <code>ShootingRange</code> process.
+     */
+    private int shootingLanes = 0;
+
+    /**
+     * The multi-lane shooting range, <code>null</code> if <code>shootingLanes</code> is 0.
+     */
+    private RangePool rangePool = null;
+
+    /**
+     * Set if the competitors draw the antithetic samples.
+     */
+    private boolean antithetic = false;
+
+    /**
+     * The biased sampling of the rare outcomes, <code>null</code> if the samples are not biased.
+     */
+    private ImportanceSampling importanceSampling = null;
+
+    /**
+     * The queue and utilization metrics of the race.
+     */
+    private RaceMetrics metrics;
+
+    /**
+     * The number of shard files used by the <code>SHARDED</code> log format.
+     */
+    private int logShards = 16;
+
+    /**
+     * The log of the race, <code>RaceLog.NONE</code> if logging is disabled.
+     */
+    private RaceLog raceLog = RaceLog.NONE;
+
+    /**
+     * The trace file, <code>null</code> if tracing is disabled.
+     */
+    private File traceFile = null;
+
+    /**
+     * Selects what is traced.
+     */
+    private TraceSettings traceSettings = null;
+
+    /**
+     * Set if the queues and processes are shown in the DESMO-J trace.
+     */
+    private boolean showInTrace = false;
+
+    /**
+     * The competitors indexed by the internal ID.
+     */
+    private Competitor[] competitors;
 
-    private Biathlon(Model owner, String modelName, boolean showInReport, boolean showInTrace) {
-        super(owner, modelName, showInReport, showInTrace);
+    /**
+     * The time of the snapshot to take, -1 if none.
+     */
+    private double snapshotTime = -1;
+
+    /**
+     * The snapshot taken, <code>null</code> until then.
+     */
+    private RaceSnapshot snapshot = null;
+
+    /**
+     * The snapshot this model continues from, <code>null</code> if it starts the race.
+     */
+    private RaceSnapshot restoreFrom = null;
+    private long variant = 0;
+
+    /**
+     * The c-tor.
+     * Every instance is fully isolated, so several models may be simulated at once.
+     *
+     * @param modelName The name of the model.
+     * @param seed The seed used by the random generators of this model.
+     * @param logDirectory The directory the logs are written to, <code>null</code> disables logging.
+     */
+    public Biathlon(String modelName, long seed, String logDirectory) {
+        super(null, modelName, true, true);
+        this.seed = seed;
+        this.random = new RandomStream(seed);
+        this.logDirectory = logDirectory;
+    }
+
+    /**
+     * Returns the seed of this model.
+     * @return The seed of this model.
+     */
+    public long getSeed() {
+        return seed;
     }
 
     /**
-     * Returns the singleton instance of this class.
-     * @return The singleton instance of this class.
+     * Returns the log directory of this model.
+     * @return The log directory or <code>null</code> if logging is disabled.
      */
-    public static Biathlon getInstance() {
-        if (instance == null)
-            instance = new Biathlon(null, "Biathlon", true, true);
-        return instance;
+    public String getLogDirectory() {
+        return logDirectory;
+    }
+
+    /**
+     * Returns the number of competitors taking part in the race.
+     * @return The number of competitors, <code>NUM_COMPETITORS</code> by default.
+     */
+    public int getNumCompetitors() {
+        return numCompetitors;
+    }
+
+    /**
+     * Sets the number of competitors taking part in the race. Has to be
+     * called before the model is connected to an experiment.
+     * @param numCompetitors The number of competitors.
+     */
+    public void setNumCompetitors(int numCompetitors) {
+        this.numCompetitors = numCompetitors;
+    }
+
+    /**
+     * Sets the number of shooting range lanes. Has to be called before the
+     * model is connected to an experiment.
+     * @param shootingLanes The number of lanes, 0 (the default) for the single-lane <code>ShootingRange</code>.
+     */
+    public void setShootingLanes(int shootingLanes) {
+        this.shootingLanes = shootingLanes;
+    }
+
+    /**
+     * Returns the multi-lane shooting range.
+     * @return The shooting range lanes or <code>null</code> if the single-lane <code>ShootingRange</code> is used.
+     */
+    public RangePool getRangePool() {
+        return rangePool;
+    }
+
+    /**
+     * Returns the results collected by this model.
+     * @return The results of the race.
+     */
+    public Results getResults() {
+        return results;
+    }
+
+    /**
+     * Returns the queue and utilization metrics collected by this model.
+     * @return The metrics of the race.
+     */
+    public RaceMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the movement mode of the competitors.
+     * @return The movement mode.
+     */
+    public Movement getMovement() {
+        return movement;
+    }
+
+    /**
+     * Sets the movement mode of the competitors. Has to be called before the simulation starts.
+     * @param movement The movement mode.
+     */
+    public void setMovement(Movement movement) {
+        this.movement = movement;
+    }
+
+    /**
+     * Returns the values of the model parameters.
+     * @return The parameters.
+     */
+    public Parameters getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Sets the values of the model parameters. Has to be called before the simulation starts.
+     * @param parameters The parameters.
+     */
+    public void setParameters(Parameters parameters) {
+        this.parameters = parameters;
+    }
+
+    /**
+     * Returns the sampling mode of the random events.
+     * @return The sampling mode.
+     */
+    public EventSampling getEventSampling() {
+        return eventSampling;
+    }
+
+    /**
+     * Sets the sampling mode of the random events. Has to be called before the simulation starts.
+     * @param eventSampling The sampling mode.
+     */
+    public void setEventSampling(EventSampling eventSampling) {
+        this.eventSampling = eventSampling;
+    }
+
+    /**
+     * Returns the format of the competitor and shooting range logs.
+     * @return The log format.
+     */
+    public LogFormat getLogFormat() {
+        return logFormat;
+    }
+
+    /**
+     * Sets the format of the competitor and shooting range logs. Has to be
+     * called before the model is connected to an experiment.
+     * @param logFormat The log format.
+     */
+    public void setLogFormat(LogFormat logFormat) {
+        this.logFormat = logFormat;
+    }
+
+    /**
+     * Sets the number of shard files used by the <code>SHARDED</code> log format, 16 by default.
+     * Has to be called before the model is connected to an experiment.
+     * @param logShards The number of shard files.
+     */
+    public void setLogShards(int logShards) {
+        this.logShards = logShards;
+    }
+
+    /**
+     * Returns the log of the race carried out by this model.
+     * @return The race log, <code>RaceLog.NONE</code> if logging is disabled.
+     */
+    public RaceLog getRaceLog() {
+        return raceLog;
+    }
+
+    /**
+     * Closes the logs shared by the processes of this model. Called once the simulation is finished.
+     */
+    public void closeLogs() {
+        raceLog.close();
+        results.close();
+    }
+
+    /**
+     * Enables the streaming trace of the race events. Has to be called before the model is connected to an
+     * experiment. The trace records the events of the enabled <code>LogLevel</code>.
+     * @param traceFile The trace file, <code>null</code> disables tracing.
+     * @param traceSettings Selects what is traced.
+     */
+    public void setTrace(File traceFile, TraceSettings traceSettings) {
+        this.traceFile = traceFile;
+        this.traceSettings = traceSettings;
+    }
+
+    /**
+     * Returns wether the queues and processes are shown in the DESMO-J trace.
+     * @return <code>true</code> if they are shown.
+     */
+    public boolean isShowInTrace() {
+        return showInTrace;
+    }
+
+    /**
+     * Shows the queues and processes in the DESMO-J trace, off by default.
+     * Has to be called before the model is connected to an experiment.
+     * @param showInTrace The flag.
+     */
+    public void setShowInTrace(boolean showInTrace) {
+        this.showInTrace = showInTrace;
+    }
+
+    /**
+     * Returns the distributions of a random event bound to this model.
+     * @param e The random event.
+     * @return The random event distributions.
+     */
+    public RandomEvent.Sampler getSampler(RandomEvent e) {
+        return randomEvents.get(e);
+    }
+
+    /**
+     * Returns a pseudorandom number with uniform distribution.
+     * @return A uniformly distributed pseudorandom double value in [0, 1] range.
+     */
+    public double rand() {
+        return random.nextDouble();
+    }
+
+    /**
+     * Returns the state of the random stream of this model.
+     * @return The state, see <code>RandomStream.getState()</code>.
+     */
+    long getRandomState() {
+        return random.getState();
+    }
+
+    /**
+     * Registers a competitor of this model.
+     * @param competitor The competitor.
+     */
+    public void registerCompetitor(Competitor competitor) {
+        competitors[competitor.getID()] = competitor;
+    }
+
+    /**
+     * Returns a competitor of this model.
+     * @param id Internal competitor ID.
+     * @return The competitor or <code>null</code> if it was not created yet.
+     */
+    public Competitor getCompetitor(int id) {
+        return competitors[id];
+    }
+
+    /**
+     * Takes a snapshot of the race once the simulation reaches a point in time. Has to be called before the
+     * model is connected to an experiment.
+     * @param time The simulation time of the snapshot in seconds.
+     */
+    public void takeSnapshotAt(double time) {
+        this.snapshotTime = time;
+    }
+
+    /**
+     * Returns the snapshot taken by <code>takeSnapshotAt()</code>.
+     * @return The snapshot or <code>null</code> if it was not taken.
+     */
+    public RaceSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Stores the snapshot taken.
+     * @param snapshot The snapshot.
+     */
+    void setSnapshot(RaceSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Continues the race from a snapshot instead of starting it. Has to be called before the model is
+     * connected to an experiment, see <code>RaceSnapshot.fork()</code>.
+     * @param snapshot The snapshot.
+     * @param variant The variant of the continuation, 0 repeats the original one.
+     */
+    public void restore(RaceSnapshot snapshot, long variant) {
+        this.restoreFrom = snapshot;
+        this.variant = variant;
+    }
+
+    /**
+     * Creates an independent random stream derived from the seed of this model.
+     * @param index The index of the stream, e.g. a competitor ID.
+     * @return A new random stream.
+     */
+    public RandomStream createStream(int index) {
+        RandomStream stream = new RandomStream(seed, index);
+        return antithetic ? stream.antithetic() : stream;
+    }
+
+    /**
+     * Returns whether the competitors draw the antithetic samples.
+     * @return <code>true</code> if the streams of the competitors are antithetic.
+     */
+    public boolean isAntithetic() {
+        return antithetic;
+    }
+
+    /**
+     * Makes the competitors draw the antithetic samples of the streams derived from the seed, so that a pair of
+     * models sharing a seed, one of them antithetic, are an antithetic replication pair. Has to be called before
+     * the simulation starts.
+     * @param antithetic Set for the antithetic samples, <code>false</code> by default.
+     */
+    public void setAntithetic(boolean antithetic) {
+        this.antithetic = antithetic;
+    }
+
+    /**
+     * Returns the biased sampling of the rare outcomes.
+     * @return The setting or <code>null</code> if the samples are not biased.
+     */
+    public ImportanceSampling getImportanceSampling() {
+        return importanceSampling;
+    }
+
+    /**
+     * Returns the biased sampling of a single competitor.
+     * @param id Internal competitor ID.
+     * @return The setting or <code>null</code> if the competitor draws unbiased samples.
+     */
+    public ImportanceSampling getImportanceSampling(int id) {
+        return importanceSampling != null && importanceSampling.isTarget(id) ? importanceSampling : null;
+    }
+
+    /**
+     * Biases the random events and the accuracy of the competitors. Has to be called before the simulation starts.
+     * @param importanceSampling The setting, <code>null</code> (the default) for the unbiased samples.
+     */
+    public void setImportanceSampling(ImportanceSampling importanceSampling) {
+        this.importanceSampling = importanceSampling;
+    }
+
+    /**
+     * Returns the likelihood ratio of the race, the weight of its outcome under importance sampling.
+     * @return The product of the likelihood ratios of the competitors, 1 if the samples are not biased.
+     */
+    public double getLikelihoodRatio() {
+        double logWeight = 0.0;
+
+        for (Competitor c : competitors)
+            if (c != null) logWeight += c.getLogLikelihoodRatio();
+
+        return Math.exp(logWeight);
     }
 
     /**
@@ -194,26 +705,103 @@ public class Biathlon extends Model {
         		" (both decrease linearly during the physical effort) and is " +
         		"also affected by an additional parameter, the desperation. " +
         		"Desperation is a result of adversities such as misses, fells " +
-        		"or problems with skis.", Biathlon.NUM_COMPETITORS, (int) Biathlon.INITIAL_DISTANCE, Biathlon.NUM_SHOOTING_RANGES, Biathlon.SHOTS_PER_SHOOTING, (int) Biathlon.PENALTY_DISTANCE);
+        		"or problems with skis.", numCompetitors, (int) Biathlon.INITIAL_DISTANCE, Biathlon.NUM_SHOOTING_RANGES, Biathlon.SHOTS_PER_SHOOTING,
+        		(int) parameters.get(Parameter.PENALTY_DISTANCE));
     }
 
     /**
      * Initialization of the simulation processes.
      */
     public void doInitialSchedules() {
-        ShootingRange shootingRange = new ShootingRange(this, "Shooting Range", true);
-        shootingRange.activate();
+        if (rangePool == null) {
+            ShootingRange shootingRange = new ShootingRange(this, "Shooting Range", showInTrace);
+            shootingRange.activate();
+        }
 
-        CompetitorGenerator generator = new CompetitorGenerator(this, "BiathlonStart", true);
+        if (snapshotTime >= 0)
+            new SnapshotProcess(this, "Snapshot", showInTrace, snapshotTime).activate();
+
+        if (restoreFrom != null) {
+            resumeCompetitors();
+            return;
+        }
+
+        CompetitorGenerator generator = new CompetitorGenerator(this, "BiathlonStart", showInTrace);
         generator.activate();
     }
 
+    /**
+     * Recreates the competitors of the snapshot this model continues from.
+     */
+    private void resumeCompetitors() {
+        for (int i = 0; i < numCompetitors; i++) {
+            RaceSnapshot.CompetitorState state = restoreFrom.getCompetitor(i);
+            Competitor competitor = new Competitor(this, "Competitor", showInTrace, state, variant);
+
+            registerCompetitor(competitor);
+
+            if (state.getPhase() != Competitor.Phase.FINISHED && state.scheduledAt >= 0)
+                competitor.activate(new TimeInstant(state.scheduledAt));
+        }
+
+        // Waiting competitors are resumed once a lane is handed over to them.
+        for (int id : restoreFrom.getQueue())
+            competitorsQueue.insert(competitors[id]);
+
+        int shooting = 0;
+
+        for (int i = 0; i < numCompetitors; i++)
+            if (restoreFrom.getCompetitor(i).getPhase() == Competitor.Phase.SHOOTING) ++shooting;
+
+        metrics.setLevels(restoreFrom.getTime(), restoreFrom.getQueue().length, shooting);
+    }
+
     /**
      * Initialization of the simulation. Rhymation of the documentation.
      */
     public void init() {
-        competitorsQueue = new ProcessQueue<Competitor>(this, "Competitors Queue", true, true);
-        shootingRangeQueue = new ProcessQueue<ShootingRange>(this, "ShootingRange Queue", true, true);
+        competitorsQueue = new ProcessQueue<Competitor>(this, "Competitors Queue", true, showInTrace);
+        shootingRangeQueue = new ProcessQueue<ShootingRange>(this, "ShootingRange Queue", true, showInTrace);
+        competitors = new Competitor[numCompetitors];
+
+        if (restoreFrom == null) {
+            results = new Results(this);
+
+            if (shootingLanes > 0)
+                rangePool = new RangePool(this, shootingLanes);
+        } else {
+            results = new Results(this, restoreFrom.getResults());
+            rangePool = new RangePool(this, restoreFrom.getRangePool());
+            random.setState(restoreFrom.getModelRandomState());
+        }
+
+        metrics = new RaceMetrics(rangePool != null ? rangePool.getLanes() : 1,
+                restoreFrom != null ? restoreFrom.getTime() : 0.0);
+
+        for (RandomEvent e : RandomEvent.values())
+            randomEvents.put(e, e.createSampler(this));
+
+        if (logDirectory != null && logFormat == LogFormat.TEXT) {
+            raceLog = new TextRaceLog(this);
+        } else if (logDirectory != null && logFormat == LogFormat.SHARDED) {
+            raceLog = new ShardedRaceLog(this, logShards);
+        } else if (logDirectory != null && logFormat == LogFormat.BINARY) {
+            File logfile = new File(logDirectory, "events.bin");
+
+            try {
+                raceLog = new BinaryRaceLog(new EventLog(logfile));
+            } catch (IOException e) {
+                System.err.println(String.format("Could not open file (%s).", logfile));
+            }
+        }
+
+        if (traceFile != null) {
+            try {
+                raceLog = new TracingRaceLog(raceLog, new Trace(traceFile, traceSettings.getMaxBytes()), traceSettings);
+            } catch (IOException e) {
+                System.err.println(String.format("Could not open file (%s).", traceFile));
+            }
+        }
     }
 
     /**
@@ -230,21 +818,40 @@ public class Biathlon extends Model {
      */
     public static void main(java.lang.String[] args) {
 
-        Biathlon model = Biathlon.getInstance();
+        Biathlon model = new Biathlon("Biathlon", UNIVERSAL_SEED, "log/");
+        model.setShootingLanes(Integer.getInteger("sim.lanes", 0));
+
+        // The DESMO-J HTML trace is huge, the streaming trace is used unless asked otherwise.
+        boolean desmojTrace = Boolean.getBoolean("sim.desmojTrace");
+        model.setShowInTrace(desmojTrace);
+        if (!desmojTrace)
+            model.setTrace(new File("log/trace.txt.gz"), TraceSettings.fromSystemProperties());
+
         Experiment exp = new Experiment("Biathlon");
+        exp.setSeedGenerator(UNIVERSAL_SEED);
         model.connectToExperiment(exp);
+        model.getMetrics().register(RaceMetrics.objectName(model.getName()));
 
         TimeInstant simStartTime = new TimeInstant(0);
-        TimeInstant simStopTime = new TimeInstant(3000); // 50 minute span.
+        TimeInstant simStopTime = new TimeInstant(SIMULATION_TIME);
 
         exp.stop(simStopTime);
-        exp.traceOn(simStartTime);
-        exp.debugOn(simStartTime);
+        if (desmojTrace) {
+            exp.traceOn(simStartTime);
+            exp.debugOn(simStartTime);
+        }
 
         exp.start();
         exp.finish();
+        model.closeLogs();
+
+        model.getResults().dumpResults("results.txt");
+
+        if (model.getRangePool() != null)
+            model.getRangePool().dumpStatistics("lanes.txt");
 
-        Results.getInstance().dumpResults("results.txt");
+        model.getMetrics().advance(model.presentTime().getTimeAsDouble());
+        model.getMetrics().dump(new File(model.getLogDirectory(), "metrics.json").getPath());
 
         System.exit(0);
     }
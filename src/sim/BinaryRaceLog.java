@@ -0,0 +1,72 @@
+package sim;
+
+/**
+ * A <code>RaceLog</code> writing the events into a binary <code>EventLog</code>.
+ */
+public class BinaryRaceLog extends RaceLog {
+
+    private final EventLog events;
+
+    /**
+     * The c-tor.
+     * @param events The binary log the events are written to.
+     */
+    public BinaryRaceLog(EventLog events) {
+        this.events = events;
+    }
+
+    public void start(double time, int competitor) {
+        events.record(time, competitor, EventType.START, 0, 0, 0.0);
+    }
+
+    public void enterRange(double time, int competitor, int visit) {
+        events.record(time, competitor, EventType.ENTER_RANGE, visit, 0, 0.0);
+    }
+
+    public void leaveRange(double time, int competitor) {
+        events.record(time, competitor, EventType.LEAVE_RANGE, 0, 0, 0.0);
+    }
+
+    public void randomEvent(double time, int competitor, RandomEvent event, double duration, int desperationMod) {
+        events.record(time, competitor, EventType.RANDOM_EVENT, event.ordinal(), desperationMod, duration);
+    }
+
+    public void desperation(double time, int competitor, int desperation) {
+        events.record(time, competitor, EventType.DESPERATION, desperation, 0, 0.0);
+    }
+
+    public void panic(double time, int competitor) {
+        events.record(time, competitor, EventType.PANIC, 0, 0, 0.0);
+    }
+
+    public void misses(double time, int competitor, int missed) {
+        events.record(time, competitor, EventType.MISSES, missed, 0, 0.0);
+    }
+
+    public void penalty(double time, int competitor, double distance) {
+        events.record(time, competitor, EventType.PENALTY, 0, 0, distance);
+    }
+
+    public void factors(double time, int competitor, double speed, double aiming, double accuracy) {
+        events.record(time, competitor, EventType.SPEED_FACTOR, 0, 0, speed);
+        events.record(time, competitor, EventType.AIMING_FACTOR, 0, 0, aiming);
+        events.record(time, competitor, EventType.ACCURACY_FACTOR, 0, 0, accuracy);
+    }
+
+    public void finish(double time, int competitor) {
+        events.record(time, competitor, EventType.FINISH, 0, 0, 0.0);
+    }
+
+    public void rangeEnter(double time, int competitor) {
+        events.record(time, competitor, EventType.RANGE_ENTER, 0, 0, 0.0);
+    }
+
+    public void rangeLeave(double time, int competitor, int missed) {
+        events.record(time, competitor, EventType.RANGE_MISSES, missed, 0, 0.0);
+        events.record(time, competitor, EventType.RANGE_LEAVE, 0, 0, 0.0);
+    }
+
+    public void close() {
+        events.close();
+    }
+}
@@ -1,9 +1,8 @@
 package sim;
 
-import desmoj.core.dist.ContDistNormal;
-import desmoj.core.dist.ContDistUniform;
 import desmoj.core.simulator.Model;
 import desmoj.core.simulator.SimProcess;
+import desmoj.core.simulator.TimeInstant;
 import desmoj.core.simulator.TimeSpan;
 
 /**
@@ -15,82 +14,49 @@ import desmoj.core.simulator.TimeSpan;
  */
 public class Competitor extends SimProcess {
 
-    private Biathlon myModel;
-    private Logger logger;
-    private int ID = -1;
-
-    /**
-     * The distance left to cover given in meters (1.0 == 1 meter).
-     */
-    private double distanceToCover;
-
-    /**
-     * The number of shooting sessions left before finishing the run.
-     */
-    private int shootingsLeft;
-
-    /**
-     * Normal distribution of this biathletes speed.
-     * Parameterized with <code>Biathlon.SPEED_MEAN</code> and
-     * <code>Biathlon.SPEED_STD_DEV</code>.
-     */
-    private ContDistNormal speed;
-
-    /**
-     * Speed modifier used by various models (e.g. tiredness of a competitor).
-     * It modifies the values sampled from <code>speed</code>.
-     */
-    private float speedFactor = 1.0f;
-
-    /**
-     * Aiming time normal distribution.
-     * Parameterize with <code>Biathlon.SHOOTING_TIME_MEAN</code> and
-     * <code>Biathlon.SHOOTING_TIME_STD_DEV</code>.
-     */
-    private ContDistNormal aimingTime;
-
     /**
-     * Aiming time modifier used by various models.
-     * It modifies the values sampled from <code>aimingTime</code>.
+     * Phases of the life cycle, telling what a competitor does next when it is resumed from a
+     * <code>RaceSnapshot</code>.
      */
-    private float aimingFactor = 1.0f;
+    public enum Phase {
+        /** Not started yet. */
+        NEW,
+        /** Holds before the next step, shoots if at a range and runs afterwards. */
+        STEPPING,
+        /** Holds until the end of a running step. */
+        RUNNING,
+        /** Waits in the queue for a lane. */
+        QUEUED,
+        /** Shoots on a lane. */
+        SHOOTING,
+        /** Finished the race. */
+        FINISHED
+    }
 
-    /**
-     * The accuracy normal distribution.
-     * Parameterized by <code>Biathlon.ACCURACY_MEAN</code> and
-     * <code>Biathlon.ACCURACY_STD_DEV</code>.
-     */
-    private ContDistNormal accuracy;
+    private Biathlon myModel;
+    private RaceLog log;
+    private int ID = -1;
 
     /**
-     * Accuracy modifier used by various models.
-     * It modifies the values sampled from <code>accuracy</code>.
+     * The state and the sampling models: running, shooting, tiredness, stress and random events.
      */
-    private float accuracyFactor = 1.0f;
+    private final CompetitorModel model;
 
     /**
-     * A uniformly distributed random stress level.
-     * Used by the stress model to add additional, random noise to the simulation.
-     * Parameterized by <code>Biathlon.MIN_DESPERATION</code> and
-     * <code>Biathlon.MAX_DESPERATION</code>.
+     * The lane of the <code>RangePool</code> handed over to this competitor while waiting.
      */
-    private ContDistUniform desperation;
+    private int lane = -1;
 
     /**
-     * The current stress level of a competitor, used by the stress model.
-     *
-     * Once it reaches the <code>Biathlon.PANIC_THRESHOLD</code> the competitor
-     * will start rushing to the finish line.
-     * The changes to this parameter happen over time caused by random events
-     * and shot misses.
+     * The phase of the life cycle.
      */
-    private int currentDesperation = 0;
+    private Phase phase = Phase.NEW;
 
     /**
-     * Flag determining wether a competitors <code>currentDesperation</code>
-     * reached the <code>Biathlon.PANIC_THRESHOLD</code>.
+     * The arrival time at the shooting range and the misses of the current shooting session.
      */
-    private boolean panic = false;
+    private double arrival;
+    private int sessionMisses;
 
     /**
      * The c-tor.
@@ -103,112 +69,282 @@ public class Competitor extends SimProcess {
     public Competitor(Model owner, String name, boolean showInTrace, int id) {
         super(owner, name, showInTrace);
         myModel = (Biathlon) owner;
-        logger = new Logger(String.format("competitor_%02d.txt", id));
+        log = myModel.getRaceLog();
         ID = id;
 
-        distanceToCover = Biathlon.INITIAL_DISTANCE;
-        shootingsLeft = Biathlon.NUM_SHOOTING_RANGES;
+        model = new CompetitorModel(id, myModel.getParameters(), new CompetitorStreams(myModel.createStream(id)),
+                myModel.getImportanceSampling(id), myModel.getEventSampling() == Biathlon.EventSampling.SCHEDULED);
+        model.setListener(new Hooks());
+    }
 
-        speed = new ContDistNormal(myModel, "Speed", Biathlon.SPEED_MEAN, Biathlon.SPEED_STD_DEV, true, false);
+    /**
+     * The c-tor. Creates a competitor resuming from a snapshot.
+     *
+     * @param owner The model owning this process.
+     * @param name The name of this proccess.
+     * @param showInTrace A flag toggling tracing in this process.
+     * @param state The captured state of the competitor.
+     * @param variant The variant of the continuation, 0 keeps the captured random streams.
+     */
+    public Competitor(Model owner, String name, boolean showInTrace, RaceSnapshot.CompetitorState state,
+            long variant) {
+        super(owner, name, showInTrace);
+        myModel = (Biathlon) owner;
+        log = myModel.getRaceLog();
+        ID = state.id;
+
+        phase = state.phase;
+        lane = state.lane;
+        arrival = state.arrival;
+        sessionMisses = state.sessionMisses;
+
+        model = new CompetitorModel(state, myModel.getParameters(),
+                new CompetitorStreams(state.randomStates, variant, myModel.isAntithetic()),
+                myModel.getImportanceSampling(state.id));
+        model.setListener(new Hooks());
+    }
 
-        aimingTime = new ContDistNormal(myModel, "Aiming", Biathlon.SHOOTING_TIME_MEAN, Biathlon.SHOOTING_TIME_STD_DEV,
-                true, false);
+    /**
+     * Captures the state of this competitor.
+     *
+     * @return The state.
+     */
+    public RaceSnapshot.CompetitorState capture() {
+        TimeInstant next = isScheduled() ? scheduledNext() : null;
+        RandomEventSchedule schedule = model.getSchedule();
+        long[] events = null;
 
-        accuracy = new ContDistNormal(myModel, "Accuracy", Biathlon.ACCURACY_MEAN, Biathlon.ACCURACY_STD_DEV, true,
-                false);
+        if (schedule != null) {
+            events = new long[RandomEvent.values().length];
 
-        desperation = new ContDistUniform(myModel, "Desperation", Biathlon.MIN_DESPERATION, Biathlon.MAX_DESPERATION,
-                true, false);
+            for (RandomEvent e : RandomEvent.values())
+                events[e.ordinal()] = schedule.getNextOccurence(e);
+        }
 
-        aimingTime.setNonNegative(true);
-        accuracy.setNonNegative(true);
-        speed.setNonNegative(true);
+        return new RaceSnapshot.CompetitorState(ID, phase, next != null ? next.getTimeAsDouble() : -1,
+                model.getDistanceToCover(), model.getShootingsLeft(), model.getSpeedFactor(), model.getAimingFactor(),
+                model.getAccuracyFactor(), model.getDesperation(), model.isPanicking(), lane, arrival, sessionMisses,
+                model.getStreams().getStates(), events, schedule != null ? schedule.getStep() : 0,
+                model.getLogLikelihoodRatio());
     }
 
     /**
      * Implements the frame life cycle of this process.
      */
     public void lifeCycle() {
-        logger.log("Starts the competition!");
+        if (phase == Phase.NEW) {
+            if (LogLevel.INFO) log.start(now(), ID);
+        } else {
+            resume();
+        }
 
-        while (distanceToCover > 0) {
+        while (!model.hasFinished()) {
+            phase = Phase.STEPPING;
             hold(new TimeSpan(Biathlon.STEP_TIME));
             shoot();
-            run();
+            move();
+        }
+
+        phase = Phase.FINISHED;
+
+        if (LogLevel.INFO) log.finish(now(), ID);
+        myModel.getResults().registerFinish(ID);
+    }
+
+    /**
+     * Completes the action interrupted by the snapshot this competitor was created from.
+     */
+    private void resume() {
+        switch (phase) {
+        case STEPPING:
+            shoot();
+            break;
+        case QUEUED:
+            int handedOver = lane;
+            lane = -1;
+            shootOnLane(myModel.getRangePool(), handedOver);
+            break;
+        case SHOOTING:
+            leaveLane(myModel.getRangePool());
+            break;
+        default:
+            return;
         }
 
-        logger.log("Finishes the competition!");
-        Results.getInstance().registerFinish(ID);
+        move();
+    }
+
+    /**
+     * Implements the running part of a step in the chosen movement mode.
+     */
+    private void move() {
+        phase = Phase.RUNNING;
+
+        if (myModel.getMovement() == Biathlon.Movement.NEXT_EVENT)
+            runToNextEvent();
+        else
+            run();
     }
 
     /**
      * Implements the shooting sessions performed by the biathlete.
      */
     private void shoot() {
-        // strzelnica co 1/n dystansu (n = liczba strzelań)
-        double nextShootingDist = (shootingsLeft + 1) * Biathlon.INITIAL_DISTANCE / (Biathlon.NUM_SHOOTING_RANGES + 2);
+        if (model.atShootingRange()) {
+            model.enterRange();
+            myModel.getResults().registerSplit(ID, Results.entrySplit(currentRange()));
 
-        if (shootingsLeft > 0 && distanceToCover < nextShootingDist) {
-            --shootingsLeft;
+            if (myModel.getRangePool() != null) {
+                shootInLane(myModel.getRangePool());
+                return;
+            }
+
+            arrival = now();
             myModel.competitorsQueue.insert(this);
+            myModel.getMetrics().enqueue(arrival);
 
             if (!myModel.shootingRangeQueue.isEmpty()) {
                 ShootingRange shootingRange = myModel.shootingRangeQueue.first();
                 myModel.shootingRangeQueue.remove(shootingRange);
                 shootingRange.activateAfter(this);
 
-                logger.log(String.format("Enters the shooting range for the %dth time.", Biathlon.NUM_SHOOTING_RANGES
-                        - shootingsLeft));
+                if (LogLevel.INFO) log.enterRange(now(), ID, Biathlon.NUM_SHOOTING_RANGES - model.getShootingsLeft());
 
                 passivate(); // Simulates the actual shooting.
 
-                logger.log("Leaves the shooting range.");
+                myModel.getMetrics().endSession(now());
+                myModel.getResults().registerSplit(ID, Results.exitSplit(currentRange()));
+                if (LogLevel.INFO) log.leaveRange(now(), ID);
             }
         }
     }
 
     /**
-     * Implements the running performed by the biathlete.
-     * Contains the tiredness, stress and random event simulation.
+     * Implements the shooting session on a lane of a multi-lane shooting range.
+     * <p>
+     * The competitor takes an idle lane or waits in the queue until another
+     * competitor hands one over, then shoots on its own.
+     *
+     * @param pool The shooting range lanes.
      */
-    private void run() {
-        double v = computeSpeed() * Biathlon.STEP_TIME;
+    private void shootInLane(RangePool pool) {
+        arrival = now();
+        int myLane = pool.acquire();
+
+        if (myLane < 0) {
+            myModel.competitorsQueue.insert(this);
+            myModel.getMetrics().enqueue(arrival);
+            phase = Phase.QUEUED;
+            passivate(); // Waits for a lane.
+
+            myLane = lane;
+            lane = -1;
+        }
 
-        double dist = Helpers.clamp(v, Biathlon.MIN_SPEED, Biathlon.MAX_SPEED);
+        shootOnLane(pool, myLane);
+    }
 
-        distanceToCover -= dist;
+    /**
+     * Implements the shooting session itself, once the competitor got a lane.
+     *
+     * @param pool The shooting range lanes.
+     * @param myLane The lane.
+     */
+    private void shootOnLane(RangePool pool, int myLane) {
+        pool.startSession(myLane, arrival, now());
+        myModel.getMetrics().startSession(arrival, now());
 
-        // Models linear change in these following parameters.
-        speedFactor += Biathlon.SPEED_FACTOR_DELTA;
-        accuracyFactor += Biathlon.ACCURACY_FACTOR_DELTA;
-        aimingFactor += Biathlon.SHOOTING_TIME_FACTOR_DELTA;
+        if (LogLevel.INFO) {
+            log.rangeEnter(now(), ID);
+            log.enterRange(now(), ID, Biathlon.NUM_SHOOTING_RANGES - model.getShootingsLeft());
+        }
 
-        // Check for random events.
-        double totalTimePenalty = 0.0;
-        for (RandomEvent e : RandomEvent.values()) {
-            // TODO : Tweak me! [hasHappened() modifier; optional]
-            if (e.hasHappened(0.0)) {
-                TimeSpan duration = e.getDuration();
-                int desperationMod = e.getDesperationMod();
+        sessionMisses = computeShotsMissed();
+        addPenalties(sessionMisses);
 
-                totalTimePenalty += duration.getTimeAsDouble();
-                currentDesperation += desperationMod;
+        lane = myLane;
+        phase = Phase.SHOOTING;
+        hold(computeShootingTime()); // The actual shooting.
 
-                logger.log(String.format("Random event occurs - %s. [t= %s , desp +%d].",
-                        e.toString(), duration.toString(), desperationMod));
+        leaveLane(pool);
+    }
 
-                logger.log(String.format("Desperation increases to %d%%.", currentDesperation));
-            }
+    /**
+     * Ends the shooting session and frees the lane.
+     *
+     * @param pool The shooting range lanes.
+     */
+    private void leaveLane(RangePool pool) {
+        int myLane = lane;
+        lane = -1;
+
+        pool.endSession(myLane, now());
+        myModel.getMetrics().endSession(now());
+        myModel.getResults().registerSplit(ID, Results.exitSplit(currentRange()));
+
+        if (LogLevel.INFO) {
+            log.rangeLeave(now(), ID, sessionMisses);
+            log.leaveRange(now(), ID);
         }
 
-        if (!panic && computeDesperation() >= Biathlon.PANIC_THRESHOLD) {
-            logger.log("Desperation increases past the panic treshold.");
-            logger.log("Competitor starts rushing.");
+        // Hand the lane over to the next competitor in the queue.
+        if (myModel.competitorsQueue.isEmpty()) {
+            pool.release(myLane);
+        } else {
+            Competitor next = myModel.competitorsQueue.first();
+            myModel.competitorsQueue.remove(next);
+            myModel.getMetrics().dequeue(now());
+            next.lane = myLane;
+            next.activate();
+        }
+    }
+
+    /**
+     * Returns the shooting range visited last.
+     *
+     * @return The index of the visit, starting at 0.
+     */
+    private int currentRange() {
+        return Biathlon.NUM_SHOOTING_RANGES - model.getShootingsLeft() - 1;
+    }
+
+    /**
+     * Implements the running performed by the biathlete.
+     * Contains the tiredness, stress and random event simulation.
+     */
+    private void run() {
+        hold(new TimeSpan(step(presentTime().getTimeAsDouble())));
+    }
+
+    /**
+     * Implements the running performed by the biathlete in the next-event movement mode.
+     * <p>
+     * Carries out the same steps as <code>run()</code> would, one step per
+     * <code>Biathlon.STEP_TIME</code>, but without rescheduling the process in
+     * between. The competitor is held only once, until the next meaningful
+     * point of the race - reaching the next shooting range or the finish line.
+     */
+    private void runToNextEvent() {
+        double now = presentTime().getTimeAsDouble();
+        double elapsed = step(now);
 
-            panic = true;
+        while (!model.hasFinished() && !model.atShootingRange()) {
+            elapsed += Biathlon.STEP_TIME;
+            elapsed += step(now + elapsed);
         }
 
-        hold(new TimeSpan(totalTimePenalty));
+        hold(new TimeSpan(elapsed));
+    }
+
+    /**
+     * Carries out a single running step without rescheduling the process.
+     * Contains the tiredness, stress and random event simulation.
+     *
+     * @param time The simulation time of the step in seconds, used for logging.
+     * @return The time penalty caused by random events in seconds.
+     */
+    double step(double time) {
+        return model.step(time);
     }
 
     /**
@@ -218,106 +354,124 @@ public class Competitor extends SimProcess {
      * @param missed The number of shots missed in a shooting session.
      */
     public void addPenalties(int missed) {
-        double penalty = missed * Biathlon.PENALTY_DISTANCE;
+        double penalty = model.addPenalties(missed);
 
-        logger.log(String.format("Receives %.0f m penalty distance.", penalty));
-
-        if (missed != 0) {
-            // Add a little stress, what could possibly go wrong!?
-            currentDesperation = Helpers.clamp(currentDesperation + missed * Biathlon.DESPERATION_DELTA_PER_MISS, 0,
-                    100);
-
-            logger.log(String.format("Desperation increases to %d%%.", currentDesperation));
-
-            // Competitor gets his score and acts accordingly.
-            speedFactor += missed * Biathlon.SPEED_DELTA_PER_MISS;
-            aimingFactor += missed * Biathlon.SHOOTING_TIME_DELTA_PER_MISS;
-            accuracyFactor += missed * Biathlon.ACCURACY_DELTA_PER_MISS;
+        if (LogLevel.DEBUG) {
+            log.penalty(now(), ID, penalty);
+            if (missed != 0) log.desperation(now(), ID, model.getDesperation());
+            log.factors(now(), ID, model.getSpeedFactor(), model.getAimingFactor(), model.getAccuracyFactor());
         }
-
-        logger.log(String.format("Speed factor is %.2f.", speedFactor));
-        logger.log(String.format("Aiming time factor is %.2f.", aimingFactor));
-        logger.log(String.format("Accuracy factor is %.2f.", accuracyFactor));
-
-        distanceToCover += penalty;
     }
 
 
     /**
      * Computes the number of missed shots in a shooting session.
-     * Uses <code>accuracy</code> model.
+     * Uses the accuracy model.
      *
      * @return The number of missed shots in a shooting session.
      */
     public int computeShotsMissed() {
-        int sps = Biathlon.SHOTS_PER_SHOOTING;
+        int missed = model.computeShotsMissed();
 
-        float acc = (float) computeAccuracy(); // Haters gonna hate...
-
-        int missed = Math.round(Helpers.clamp(sps - (acc * sps), 0.0f, sps));
-
-        logger.log(String.format("Missed %d times.", missed));
-        Results.getInstance().registerMisses(ID, missed);
+        if (LogLevel.INFO) log.misses(now(), ID, missed);
+        myModel.getResults().registerMisses(ID, missed);
 
         return missed;
     }
 
     /**
      * Computes the time spent on a shooting range modified by all the relevant models.
-     * Uses <code>aimingTime</code> model.
+     * Uses the aiming time model.
      *
      * @return The <code>TimeSpan</code> spent shooting.
      */
     public TimeSpan computeShootingTime() {
-        double at = aimingTime.sample() * aimingFactor;
-
-        if (panic) {
-            at *= Biathlon.PANIC_GAIN_MODIFIER; // Rushing...
-        }
-
-        return new TimeSpan(at);
+        return new TimeSpan(model.computeShootingTime());
     }
 
     /**
      * Computes the speed of a competitor modified by all the relevant models.
-     * Uses <code>speed</code>.
+     * Uses the speed model.
      *
      * @return The instantaneus speed of the competitor.
      */
     public double computeSpeed() {
-        double v = speed.sample() * speedFactor;
-
-        if (panic) {
-            v *= Biathlon.PANIC_GAIN_MODIFIER; // Rushing to the finish.
-        }
-
-        return v;
+        return model.computeSpeed();
     }
 
     /**
      * Computes the accuracy of a competitor modified by all the relevant models.
-     * Uses <code>accuracy</code>.
+     * Uses the accuracy model.
      *
      * @return The value of accuracy (in range [0, 1]) of the competitor.
      */
     public double computeAccuracy() {
-        double acc = accuracy.sample() * accuracyFactor;
-
-        if (panic) {
-            acc *= Biathlon.PANIC_LOSS_MODIFIER;
-        }
-
-        return acc;
+        return model.computeAccuracy();
     }
 
     /**
      * Computes the stress level of a competitor modifed by all the relevant models.
-     * Uses <code>desperation</code>.
+     * Adds a uniformly distributed random stress level.
      *
      * @return Current stress level of the competitor.
      */
     public int computeDesperation() {
-        return currentDesperation + (int) Math.round(desperation.sample());
+        return model.computeDesperation();
+    }
+
+    /**
+     * Returns the logarithm of the likelihood ratio of the importance sampling.
+     *
+     * @return The logarithm of the true over the biased density of the samples drawn so far, 0 if unbiased.
+     */
+    public double getLogLikelihoodRatio() {
+        return model.getLogLikelihoodRatio();
+    }
+
+    /**
+     * Registers, counts and logs the random events and the panic of the steps.
+     */
+    private class Hooks implements CompetitorModel.Listener {
+        public void randomEvent(double time, RandomEvent e, double duration, int desperationMod) {
+            myModel.getResults().registerRandomEvent(ID, e);
+            myModel.getMetrics().randomEvent(e);
+
+            if (LogLevel.DEBUG) {
+                log.randomEvent(time, ID, e, duration, desperationMod);
+                log.desperation(time, ID, model.getDesperation());
+            }
+        }
+
+        public void panic(double time) {
+            if (LogLevel.DEBUG) log.panic(time, ID);
+
+            myModel.getResults().registerPanic(ID);
+        }
+    }
+
+    /**
+     * Returns the internal ID of this competitor.
+     *
+     * @return The identification number of this competitor.
+     */
+    public int getID() {
+        return ID;
+    }
+
+    /**
+     * Returns the time this competitor arrived at the shooting range last.
+     *
+     * @return The arrival time in seconds.
+     */
+    double getArrival() {
+        return arrival;
+    }
+
+    /**
+     * Returns the current simulation time in seconds.
+     */
+    private double now() {
+        return presentTime().getTimeAsDouble();
     }
 
     /**
@@ -25,10 +25,11 @@ public class CompetitorGenerator extends SimProcess {
     public void lifeCycle() {
         Biathlon model = (Biathlon) getModel();
 
-        for (int i = 0; i < Biathlon.NUM_COMPETITORS; i++) {
-            Competitor competitor = new Competitor(model, "Competitor", true, i);
+        for (int i = 0; i < model.getNumCompetitors(); i++) {
+            Competitor competitor = new Competitor(model, "Competitor", model.isShowInTrace(), i);
 
-            Results.getInstance().registerCompetitor(i, competitor.toString());
+            model.getResults().registerCompetitor(i, competitor.toString());
+            model.registerCompetitor(competitor);
 
             competitor.activateAfter(this);
         }
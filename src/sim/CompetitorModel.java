@@ -0,0 +1,479 @@
+package sim;
+
+/**
+ * The state and the sampling models of a competitor.
+ * <p>
+ * Carries out the running steps, the shooting and the penalties - the speed,
+ * accuracy, aiming time, tiredness, stress and random event models - leaving
+ * the scheduling to the engine: the DESMO-J <code>Competitor</code>, the
+ * process-style <code>LightRace</code> or the event-oriented
+ * <code>EventRace</code>. The random events are sampled every step or
+ * scheduled in advance (<code>RandomEventSchedule</code>), optionally biased
+ * by <code>ImportanceSampling</code>. The engine learns about the random
+ * events and the panic through a <code>Listener</code>.
+ */
+public class CompetitorModel {
+
+    private static final RandomEvent[] EVENTS = RandomEvent.values();
+
+    /**
+     * Notified of the outcomes of the steps, e.g. to log them.
+     */
+    public interface Listener {
+        /**
+         * A random event happened in a step.
+         *
+         * @param time The simulation time of the step in seconds.
+         * @param e The random event.
+         * @param duration The time penalty of the event in seconds.
+         * @param desperationMod The stress added by the event.
+         */
+        void randomEvent(double time, RandomEvent e, double duration, int desperationMod);
+
+        /**
+         * The competitor panicked in a step.
+         *
+         * @param time The simulation time of the step in seconds.
+         */
+        void panic(double time);
+    }
+
+    private final int id;
+    private final Parameters params;
+
+    /**
+     * The random streams of the competitor, one per purpose:
+     * the speed (<code>Parameter.SPEED_MEAN</code>, <code>Parameter.SPEED_STD_DEV</code>),
+     * the aiming time (<code>Parameter.SHOOTING_TIME_MEAN</code>, <code>Parameter.SHOOTING_TIME_STD_DEV</code>),
+     * the accuracy (<code>Parameter.ACCURACY_MEAN</code>, <code>Parameter.ACCURACY_STD_DEV</code>),
+     * the random stress level (<code>Parameter.MIN_DESPERATION</code>, <code>Parameter.MAX_DESPERATION</code>)
+     * and every random event.
+     */
+    private final CompetitorStreams random;
+
+    /**
+     * The biased sampling of the rare outcomes, <code>null</code> if the samples are not biased.
+     */
+    private final ImportanceSampling bias;
+
+    /**
+     * The random events scheduled in advance, <code>null</code> if they are sampled every step.
+     */
+    private RandomEventSchedule schedule;
+
+    private Listener listener = null;
+
+    /**
+     * The logarithm of the likelihood ratio (the true over the biased density) of the samples drawn so far.
+     */
+    private double logWeight = 0.0;
+
+    /**
+     * The distance left to cover given in meters (1.0 == 1 meter).
+     */
+    private double distanceToCover = Biathlon.INITIAL_DISTANCE;
+
+    /**
+     * The number of shooting sessions left before finishing the run.
+     */
+    private int shootingsLeft = Biathlon.NUM_SHOOTING_RANGES;
+
+    /**
+     * Attribute modifiers used by the tiredness and stress models, they modify the sampled speed,
+     * aiming time and accuracy.
+     */
+    private float speedFactor = 1.0f;
+    private float aimingFactor = 1.0f;
+    private float accuracyFactor = 1.0f;
+
+    /**
+     * The current stress level and the panic flag, used by the stress model.
+     *
+     * Once the stress level reaches the <code>Parameter.PANIC_THRESHOLD</code>
+     * the competitor will start rushing to the finish line.
+     */
+    private int currentDesperation = 0;
+    private boolean panic = false;
+
+    private int misses = 0;
+
+    /**
+     * The c-tor. The random events are sampled every step and nothing is biased.
+     *
+     * @param id Internal competitor ID.
+     * @param params The values of the model parameters.
+     * @param random The random streams of the competitor.
+     */
+    public CompetitorModel(int id, Parameters params, CompetitorStreams random) {
+        this(id, params, random, null, false);
+    }
+
+    /**
+     * The c-tor.
+     *
+     * @param id Internal competitor ID.
+     * @param params The values of the model parameters.
+     * @param random The random streams of the competitor.
+     * @param bias The biased sampling or <code>null</code>.
+     * @param scheduled Set to schedule the random events in advance instead of sampling them every step.
+     */
+    public CompetitorModel(int id, Parameters params, CompetitorStreams random, ImportanceSampling bias,
+            boolean scheduled) {
+        this.id = id;
+        this.params = params;
+        this.random = random;
+        this.bias = bias;
+
+        schedule = scheduled ? new RandomEventSchedule(random.events(), probabilities()) : null;
+    }
+
+    /**
+     * The c-tor. Restores a competitor captured in a snapshot.
+     *
+     * @param state The captured state of the competitor.
+     * @param params The values of the model parameters.
+     * @param random The random streams of the competitor, restored from the state.
+     * @param bias The biased sampling or <code>null</code>.
+     */
+    public CompetitorModel(RaceSnapshot.CompetitorState state, Parameters params, CompetitorStreams random,
+            ImportanceSampling bias) {
+        this.id = state.id;
+        this.params = params;
+        this.random = random;
+        this.bias = bias;
+
+        distanceToCover = state.distanceToCover;
+        shootingsLeft = state.shootingsLeft;
+        speedFactor = state.speedFactor;
+        aimingFactor = state.aimingFactor;
+        accuracyFactor = state.accuracyFactor;
+        currentDesperation = state.currentDesperation;
+        panic = state.panic;
+        logWeight = state.logWeight;
+
+        schedule = state.scheduledEvents != null ? new RandomEventSchedule(random.events(), probabilities(),
+                state.scheduleStep, state.scheduledEvents) : null;
+    }
+
+    /**
+     * Prepares the competitor for another race, reusing this object and its streams.
+     *
+     * @param seed The seed of the race.
+     * @param form The initial speed and accuracy factors, 1 for the usual form.
+     */
+    public void reset(long seed, double form) {
+        random.reset(seed, id);
+
+        if (schedule != null)
+            schedule = new RandomEventSchedule(random.events(), probabilities());
+
+        logWeight = 0.0;
+        distanceToCover = Biathlon.INITIAL_DISTANCE;
+        shootingsLeft = Biathlon.NUM_SHOOTING_RANGES;
+        speedFactor = (float) form;
+        aimingFactor = 1.0f;
+        accuracyFactor = (float) form;
+        currentDesperation = 0;
+        panic = false;
+        misses = 0;
+    }
+
+    /**
+     * Sets the listener notified of the random events and the panic.
+     *
+     * @param listener The listener or <code>null</code>.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Checks wether the competitor reached the next shooting range.
+     *
+     * @return <code>true</code> if the competitor should visit a shooting range.
+     */
+    public boolean atShootingRange() {
+        // strzelnica co 1/n dystansu (n = liczba strzelań)
+        double nextShootingDist = (shootingsLeft + 1) * Biathlon.INITIAL_DISTANCE / (Biathlon.NUM_SHOOTING_RANGES + 2);
+
+        return shootingsLeft > 0 && distanceToCover < nextShootingDist;
+    }
+
+    /**
+     * Counts a visit of a shooting range.
+     */
+    public void enterRange() {
+        --shootingsLeft;
+    }
+
+    /**
+     * Carries out a single running step.
+     *
+     * @return The time penalty caused by random events in seconds.
+     */
+    public double step() {
+        return step(0.0);
+    }
+
+    /**
+     * Carries out a single running step.
+     * Contains the tiredness, stress and random event simulation.
+     *
+     * @param time The simulation time of the step in seconds, handed over to the listener.
+     * @return The time penalty caused by random events in seconds.
+     */
+    public double step(double time) {
+        double v = computeSpeed() * Biathlon.STEP_TIME;
+
+        distanceToCover -= Helpers.clamp(v, params.get(Parameter.MIN_SPEED), params.get(Parameter.MAX_SPEED));
+
+        // Models linear change in these following parameters.
+        speedFactor += (float) params.get(Parameter.SPEED_FACTOR_DELTA);
+        accuracyFactor += (float) params.get(Parameter.ACCURACY_FACTOR_DELTA);
+        aimingFactor += (float) params.get(Parameter.SHOOTING_TIME_FACTOR_DELTA);
+
+        // Check for random events.
+        double totalTimePenalty = 0.0;
+        if (schedule != null) schedule.advance();
+
+        // The scheduled occurences are known in advance, the steps before the next one skip the events.
+        boolean eventsDue = schedule == null || bias != null || schedule.stepsToNextEvent() == 0;
+
+        if (eventsDue) {
+            for (RandomEvent e : EVENTS) {
+                RandomStream r = random.event(e);
+
+                boolean happened = schedule != null ? schedule.isDue(e)
+                        : e.hasHappened(r, bias != null ? bias.getModifier(e) : 0.0);
+
+                if (bias != null) logWeight += bias.eventLogRatio(e, happened);
+
+                if (happened) {
+                    double duration = e.getDuration(r).getTimeAsDouble();
+                    int desperationMod = e.getDesperationMod(r);
+
+                    totalTimePenalty += duration;
+                    currentDesperation += desperationMod;
+
+                    if (listener != null) listener.randomEvent(time, e, duration, desperationMod);
+                }
+            }
+        }
+
+        if (!panic && computeDesperation() >= params.getInt(Parameter.PANIC_THRESHOLD)) {
+            panic = true;
+
+            if (listener != null) listener.panic(time);
+        }
+
+        return totalTimePenalty;
+    }
+
+    /**
+     * Computes the number of missed shots in a shooting session.
+     * Uses the accuracy model.
+     *
+     * @return The number of missed shots.
+     */
+    public int computeShotsMissed() {
+        int sps = Biathlon.SHOTS_PER_SHOOTING;
+
+        float acc = (float) computeAccuracy(); // Haters gonna hate...
+
+        int missed = Math.round(Helpers.clamp(sps - (acc * sps), 0.0f, sps));
+        misses += missed;
+
+        return missed;
+    }
+
+    /**
+     * Adds penalties related to the number of missed shots, such as penalty distance
+     * and additional stress.
+     *
+     * @param missed The number of shots missed in a shooting session.
+     * @return The penalty distance in meters.
+     */
+    public double addPenalties(int missed) {
+        double penalty = missed * params.get(Parameter.PENALTY_DISTANCE);
+
+        if (missed != 0) {
+            // Add a little stress, what could possibly go wrong!?
+            currentDesperation = Helpers.clamp(currentDesperation + missed
+                    * params.getInt(Parameter.DESPERATION_DELTA_PER_MISS), 0, 100);
+
+            // Competitor gets his score and acts accordingly.
+            speedFactor += missed * (float) params.get(Parameter.SPEED_DELTA_PER_MISS);
+            aimingFactor += missed * (float) params.get(Parameter.SHOOTING_TIME_DELTA_PER_MISS);
+            accuracyFactor += missed * (float) params.get(Parameter.ACCURACY_DELTA_PER_MISS);
+        }
+
+        distanceToCover += penalty;
+        return penalty;
+    }
+
+    /**
+     * Computes the time spent on a shooting range modified by all the relevant models.
+     * Uses the aiming time model.
+     *
+     * @return The time spent shooting in seconds.
+     */
+    public double computeShootingTime() {
+        double at = random.aiming().nonNegativeNormal(params.get(Parameter.SHOOTING_TIME_MEAN),
+                params.get(Parameter.SHOOTING_TIME_STD_DEV)) * aimingFactor;
+
+        if (panic) {
+            at *= params.get(Parameter.PANIC_GAIN_MODIFIER); // Rushing...
+        }
+
+        return at;
+    }
+
+    /**
+     * Computes the speed of a competitor modified by all the relevant models.
+     * Uses the speed model.
+     *
+     * @return The instantaneus speed of the competitor.
+     */
+    public double computeSpeed() {
+        double v = random.speed().nonNegativeNormal(params.get(Parameter.SPEED_MEAN), params.get(Parameter.SPEED_STD_DEV))
+                * speedFactor;
+
+        if (panic) {
+            v *= params.get(Parameter.PANIC_GAIN_MODIFIER); // Rushing to the finish.
+        }
+
+        return v;
+    }
+
+    /**
+     * Computes the accuracy of a competitor modified by all the relevant models.
+     * Uses the accuracy model.
+     *
+     * @return The value of accuracy (in range [0, 1]) of the competitor.
+     */
+    public double computeAccuracy() {
+        double mean = params.get(Parameter.ACCURACY_MEAN);
+        double stdDev = params.get(Parameter.ACCURACY_STD_DEV);
+        double acc;
+
+        if (bias == null) {
+            acc = random.accuracy().nonNegativeNormal(mean, stdDev) * accuracyFactor;
+        } else {
+            double x = random.accuracy().nonNegativeNormal(mean + bias.getAccuracyShift(), stdDev);
+            logWeight += bias.accuracyLogRatio(x, mean, stdDev);
+            acc = x * accuracyFactor;
+        }
+
+        if (panic) {
+            acc *= params.get(Parameter.PANIC_LOSS_MODIFIER);
+        }
+
+        return acc;
+    }
+
+    /**
+     * Computes the stress level of a competitor modifed by all the relevant models.
+     * Adds a uniformly distributed random stress level.
+     *
+     * @return Current stress level of the competitor.
+     */
+    public int computeDesperation() {
+        return currentDesperation + (int) Math.round(random.desperation().uniform(params.get(Parameter.MIN_DESPERATION),
+                params.get(Parameter.MAX_DESPERATION)));
+    }
+
+    /**
+     * @return <code>true</code> if the competitor covered the whole distance.
+     */
+    public boolean hasFinished() {
+        return distanceToCover <= 0;
+    }
+
+    /**
+     * @return Internal competitor ID.
+     */
+    public int getID() {
+        return id;
+    }
+
+    /**
+     * @return The total number of misses since the model was created or reset.
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The distance left to cover in meters.
+     */
+    public double getDistanceToCover() {
+        return distanceToCover;
+    }
+
+    /**
+     * @return The number of shooting sessions left.
+     */
+    public int getShootingsLeft() {
+        return shootingsLeft;
+    }
+
+    public float getSpeedFactor() {
+        return speedFactor;
+    }
+
+    public float getAimingFactor() {
+        return aimingFactor;
+    }
+
+    public float getAccuracyFactor() {
+        return accuracyFactor;
+    }
+
+    /**
+     * @return The current stress level, without the random part.
+     */
+    public int getDesperation() {
+        return currentDesperation;
+    }
+
+    /**
+     * @return <code>true</code> if the competitor panicked.
+     */
+    public boolean isPanicking() {
+        return panic;
+    }
+
+    /**
+     * @return The random streams of the competitor.
+     */
+    public CompetitorStreams getStreams() {
+        return random;
+    }
+
+    /**
+     * @return The random events scheduled in advance, <code>null</code> if they are sampled every step.
+     */
+    public RandomEventSchedule getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * Returns the logarithm of the likelihood ratio of the importance sampling.
+     *
+     * @return The logarithm of the true over the biased density of the samples drawn so far, 0 if unbiased.
+     */
+    public double getLogLikelihoodRatio() {
+        return logWeight;
+    }
+
+    /**
+     * Returns the probabilities of the random events in a single step, biased if importance sampling is used.
+     */
+    private double[] probabilities() {
+        return bias != null ? bias.getProbabilities() : RandomEventSchedule.defaultProbabilities();
+    }
+
+    public String toString() {
+        return String.format("Competitor #%d", id + 1);
+    }
+}
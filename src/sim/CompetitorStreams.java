@@ -0,0 +1,153 @@
+package sim;
+
+/**
+ * The random streams of a single competitor, one per purpose.
+ * <p>
+ * The speed, the aiming time, the accuracy, the random stress level and every
+ * <code>RandomEvent</code> draw from dedicated streams. A change of the
+ * model parameters which alters the number of samples of one kind (e.g. a
+ * longer penalty loop taking more running steps) does not shift the samples of
+ * the other kinds, so two scenarios simulated with the same seed stay
+ * synchronized - the common random numbers.
+ */
+public class CompetitorStreams {
+
+    private static final RandomEvent[] EVENTS = RandomEvent.values();
+
+    /**
+     * The number of streams of a competitor.
+     */
+    public static final int NUM_STREAMS = 4 + EVENTS.length;
+
+    private final RandomStream speed;
+    private final RandomStream aiming;
+    private final RandomStream accuracy;
+    private final RandomStream desperation;
+
+    /**
+     * The streams of the random events, indexed by the ordinal.
+     */
+    private final RandomStream[] events = new RandomStream[EVENTS.length];
+
+    /**
+     * The c-tor. Derives the streams from a stream of the competitor.
+     *
+     * @param base The stream of the competitor, e.g. <code>Biathlon.createStream()</code>.
+     */
+    public CompetitorStreams(RandomStream base) {
+        speed = base.substream(0);
+        aiming = base.substream(1);
+        accuracy = base.substream(2);
+        desperation = base.substream(3);
+
+        for (int i = 0; i < events.length; i++)
+            events[i] = base.substream(4 + i);
+    }
+
+    /**
+     * The c-tor. Restores captured streams.
+     *
+     * @param states The states returned by <code>getStates()</code>.
+     * @param variant The variant of the continuation, 0 keeps the captured streams.
+     * @param antithetic Set if the streams draw the antithetic samples.
+     */
+    public CompetitorStreams(long[] states, long variant, boolean antithetic) {
+        speed = restore(states[0], variant, antithetic);
+        aiming = restore(states[1], variant, antithetic);
+        accuracy = restore(states[2], variant, antithetic);
+        desperation = restore(states[3], variant, antithetic);
+
+        for (int i = 0; i < events.length; i++)
+            events[i] = restore(states[4 + i], variant, antithetic);
+    }
+
+    /**
+     * Restarts the streams where <code>CompetitorStreams(new RandomStream(seed, index))</code> would start them,
+     * without creating any.
+     *
+     * @param seed The seed of the race.
+     * @param index The index of the competitor.
+     */
+    public void reset(long seed, long index) {
+        // The state of the stream of the competitor, the streams are its substreams.
+        speed.reset(seed, index);
+        long base = speed.getState();
+
+        speed.reset(base, 0);
+        aiming.reset(base, 1);
+        accuracy.reset(base, 2);
+        desperation.reset(base, 3);
+
+        for (int i = 0; i < events.length; i++)
+            events[i].reset(base, 4 + i);
+    }
+
+    /**
+     * @return The stream of the speed samples.
+     */
+    public RandomStream speed() {
+        return speed;
+    }
+
+    /**
+     * @return The stream of the aiming time samples.
+     */
+    public RandomStream aiming() {
+        return aiming;
+    }
+
+    /**
+     * @return The stream of the accuracy samples.
+     */
+    public RandomStream accuracy() {
+        return accuracy;
+    }
+
+    /**
+     * @return The stream of the random stress level samples.
+     */
+    public RandomStream desperation() {
+        return desperation;
+    }
+
+    /**
+     * Returns the stream of a random event, used for its occurrences, durations and stress.
+     *
+     * @param e The random event.
+     * @return The stream.
+     */
+    public RandomStream event(RandomEvent e) {
+        return events[e.ordinal()];
+    }
+
+    /**
+     * @return The streams of the random events, indexed by the ordinal.
+     */
+    public RandomStream[] events() {
+        return events;
+    }
+
+    /**
+     * Captures the states of the streams.
+     *
+     * @return <code>NUM_STREAMS</code> states.
+     */
+    public long[] getStates() {
+        long[] states = new long[NUM_STREAMS];
+
+        states[0] = speed.getState();
+        states[1] = aiming.getState();
+        states[2] = accuracy.getState();
+        states[3] = desperation.getState();
+
+        for (int i = 0; i < events.length; i++)
+            states[4 + i] = events[i].getState();
+
+        return states;
+    }
+
+    private static RandomStream restore(long state, long variant, boolean antithetic) {
+        RandomStream s = variant == 0 ? new RandomStream(state) : new RandomStream(state, variant);
+        return antithetic ? s.antithetic() : s;
+    }
+}
@@ -0,0 +1,273 @@
+package sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the replications of the Biathlon race on several worker processes of the local host.
+ * <p>
+ * The coordinator splits the replication range into chunks and hands them
+ * to <code>ReplicationWorker</code> processes, each a JVM of its own talking
+ * to the coordinator over its standard input and output. A worker sends back
+ * the statistics of a chunk (a few kilobytes, regardless of the chunk size),
+ * kept by the coordinator until all the chunks are done and merged in the
+ * chunk order, so the statistics do not depend on the order the workers
+ * finish in nor on the restarts. If a worker dies or its pipe breaks, the chunk
+ * it was carrying out goes back to the queue for the other workers and the
+ * worker is restarted, up to a limit. The seed of a replication depends only
+ * on its index, so the replications do not depend on the worker they were
+ * carried out by.
+ */
+public class DistributedRunner {
+
+    private final int replications;
+    private final int workers;
+    private final int chunkSize;
+    private final int threadsPerWorker;
+
+    /**
+     * The number of restarts of a worker before its slot is given up.
+     */
+    private int maxRestarts = 3;
+
+    /**
+     * The options of the worker JVMs, added to the <i>sim.*</i> system properties of the coordinator.
+     */
+    private final List<String> jvmOptions = new ArrayList<String>();
+
+    private final AtomicInteger restarts = new AtomicInteger();
+
+    /**
+     * The c-tor.
+     * @param replications The number of replications to carry out.
+     * @param workers The number of worker processes.
+     * @param chunkSize The number of replications in a chunk.
+     * @param threadsPerWorker The size of the thread pool of a worker.
+     */
+    public DistributedRunner(int replications, int workers, int chunkSize, int threadsPerWorker) {
+        this.replications = replications;
+        this.workers = workers;
+        this.chunkSize = chunkSize;
+        this.threadsPerWorker = threadsPerWorker;
+    }
+
+    /**
+     * Sets the number of restarts of a worker before its slot is given up, 3 by default.
+     * @param maxRestarts The number of restarts.
+     */
+    public void setMaxRestarts(int maxRestarts) {
+        this.maxRestarts = maxRestarts;
+    }
+
+    /**
+     * Adds an option of the worker JVMs, e.g. <i>-Xmx512m</i>.
+     * @param option The option.
+     */
+    public void addJvmOption(String option) {
+        jvmOptions.add(option);
+    }
+
+    /**
+     * @return The number of worker restarts so far.
+     */
+    public int getRestarts() {
+        return restarts.get();
+    }
+
+    /**
+     * Carries out all the replications on the workers.
+     * @param statistics The statistics the results are added to.
+     * @throws InterruptedException If interrupted while waiting for the workers.
+     * @throws IOException If some chunks could not be carried out because all the workers failed.
+     */
+    public void run(ReplicationStatistics statistics) throws InterruptedException, IOException {
+        final BlockingQueue<int[]> chunks = new LinkedBlockingQueue<int[]>();
+
+        // A chunk is its index, the first replication and the replication past the last one.
+        for (int from = 0; from < replications; from += chunkSize)
+            chunks.add(new int[] { chunks.size(), from, Math.min(replications, from + chunkSize) });
+
+        final ReplicationStatistics[] partials = new ReplicationStatistics[chunks.size()];
+        final AtomicInteger remaining = new AtomicInteger(chunks.size());
+        Thread[] slots = new Thread[workers];
+
+        for (int w = 0; w < workers; w++) {
+            final int slot = w;
+
+            slots[w] = new Thread(new Runnable() {
+                public void run() {
+                    serve(slot, chunks, remaining, partials);
+                }
+            }, String.format("worker-%d", w));
+            slots[w].start();
+        }
+
+        for (Thread t : slots)
+            t.join();
+
+        if (remaining.get() > 0)
+            throw new IOException(String.format("All workers failed, %d chunks left.", remaining.get()));
+
+        for (ReplicationStatistics partial : partials)
+            statistics.merge(partial);
+    }
+
+    /**
+     * Feeds a worker with chunks until all of them are done, restarting it whenever it fails.
+     * The statistics of a chunk are stored at its index.
+     */
+    private void serve(int slot, BlockingQueue<int[]> chunks, AtomicInteger remaining,
+            ReplicationStatistics[] partials) {
+        Worker worker = null;
+        int failures = 0;
+
+        while (remaining.get() > 0) {
+            int[] chunk = null;
+
+            try {
+                if (worker == null)
+                    worker = new Worker(slot);
+
+                // Chunks of the failed workers may still come back, hence the polling.
+                chunk = chunks.poll(100, TimeUnit.MILLISECONDS);
+
+                if (chunk == null)
+                    continue;
+
+                ReplicationStatistics partial = worker.run(chunk[1], chunk[2]);
+
+                synchronized (partials) {
+                    partials[chunk[0]] = partial;
+                }
+
+                remaining.decrementAndGet();
+            } catch (IOException e) {
+                if (chunk != null)
+                    chunks.add(chunk);
+
+                if (worker != null)
+                    worker.destroy();
+
+                worker = null;
+
+                System.err.println(String.format("Worker %d failed (%s).", slot, e));
+
+                if (++failures > maxRestarts)
+                    return;
+
+                restarts.incrementAndGet();
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+
+        if (worker != null)
+            worker.stop();
+    }
+
+    /**
+     * A worker process and its pipes.
+     */
+    private class Worker {
+        private final Process process;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+
+        Worker(int slot) throws IOException {
+            List<String> command = new ArrayList<String>();
+
+            command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+
+            for (Map.Entry<Object, Object> p : System.getProperties().entrySet())
+                if (p.getKey().toString().startsWith("sim."))
+                    command.add(String.format("-D%s=%s", p.getKey(), p.getValue()));
+
+            command.addAll(jvmOptions);
+            command.add(ReplicationWorker.class.getName());
+            command.add(Integer.toString(threadsPerWorker));
+
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+            process = builder.start();
+            out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+
+            try {
+                if (in.readLong() != ReplicationWorker.HELLO)
+                    throw new IOException(String.format("Worker %d did not greet.", slot));
+            } catch (IOException e) {
+                destroy();
+                throw e;
+            }
+        }
+
+        ReplicationStatistics run(int from, int to) throws IOException {
+            out.writeInt(from);
+            out.writeInt(to);
+            out.flush();
+
+            if (in.readInt() != from)
+                throw new IOException(String.format("Unexpected answer to chunk %d.", from));
+
+            return ReplicationStatistics.readFrom(in);
+        }
+
+        void stop() {
+            try {
+                out.writeInt(ReplicationWorker.STOP);
+                out.close();
+                process.waitFor();
+            } catch (IOException e) {
+                destroy();
+            } catch (InterruptedException e) {
+                destroy();
+            }
+        }
+
+        void destroy() {
+            process.destroy();
+        }
+    }
+
+    /**
+     * Entry point of the coordinator. Prints the win probability of each competitor.
+     * The workers take the <i>sim.*</i> system properties of the coordinator.
+     * @param args The number of replications, optionally the number of workers, the chunk size and the number of
+     *             threads per worker.
+     */
+    public static void main(String[] args) throws Exception {
+        int replications = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int chunkSize = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+        ReplicationStatistics statistics = new ReplicationStatistics(Biathlon.NUM_COMPETITORS);
+        DistributedRunner runner = new DistributedRunner(replications, workers, chunkSize, threads);
+
+        runner.run(statistics);
+
+        System.out.println(String.format("%d replications carried out, %d worker restarts",
+                statistics.getReplications(), runner.getRestarts()));
+
+        for (int i = 0; i < statistics.getNumCompetitors(); i++)
+            System.out.println(String.format("Competitor #%d \t %.4f", i + 1, statistics.getWinProbability(i)));
+
+        statistics.dump("statistics.txt");
+
+        System.exit(0);
+    }
+}
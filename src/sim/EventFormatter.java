@@ -0,0 +1,114 @@
+package sim;
+
+import desmoj.core.simulator.TimeSpan;
+
+/**
+ * Formats the structured log records into the human-readable log lines.
+ * <p>
+ * Shared by the <code>AsyncLogWriter</code>, which formats the records of the
+ * text logs lazily on its own thread, and the <code>EventLogDecoder</code>.
+ */
+public class EventFormatter {
+
+    private EventFormatter() {
+    }
+
+    /**
+     * Appends the log lines of a record.
+     * 
+     * @param line
+     *            The buffer the lines are appended to.
+     * @param simTime
+     *            Simulation time of the record in seconds.
+     * @param type
+     *            The type of the record.
+     * @param competitor
+     *            Internal ID of the competitor.
+     * @param a
+     *            Integer payload.
+     * @param b
+     *            Integer payload.
+     * @param value
+     *            Floating point payload.
+     */
+    public static void format(StringBuilder line, long simTime, EventType type, int competitor, int a, int b,
+            double value) {
+        format(line, simTime, type, competitor, a, b, value, false);
+    }
+
+    /**
+     * Appends the log lines of a record, optionally tagged with the name of
+     * the competitor. Used by the logs shared by many competitors.
+     * 
+     * @param line
+     *            The buffer the lines are appended to.
+     * @param simTime
+     *            Simulation time of the record in seconds.
+     * @param type
+     *            The type of the record.
+     * @param competitor
+     *            Internal ID of the competitor.
+     * @param a
+     *            Integer payload.
+     * @param b
+     *            Integer payload.
+     * @param value
+     *            Floating point payload.
+     * @param tagged
+     *            Set if the competitor records should start with the name of the competitor.
+     */
+    public static void format(StringBuilder line, long simTime, EventType type, int competitor, int a, int b,
+            double value, boolean tagged) {
+        String tag = (tagged && !type.isShootingRangeRecord()) ? String.format("Competitor #%d: ", competitor + 1) : "";
+
+        switch (type) {
+        case START:
+            Logger.format(line, simTime, tag + "Starts the competition!");
+            break;
+        case ENTER_RANGE:
+            Logger.format(line, simTime, tag + String.format("Enters the shooting range for the %dth time.", a));
+            break;
+        case LEAVE_RANGE:
+            Logger.format(line, simTime, tag + "Leaves the shooting range.");
+            break;
+        case RANDOM_EVENT:
+            Logger.format(line, simTime, tag + String.format("Random event occurs - %s. [t= %s , desp +%d].",
+                    RandomEvent.values()[a].toString(), new TimeSpan(value).toString(), b));
+            break;
+        case DESPERATION:
+            Logger.format(line, simTime, tag + String.format("Desperation increases to %d%%.", a));
+            break;
+        case PANIC:
+            Logger.format(line, simTime, tag + "Desperation increases past the panic treshold.");
+            Logger.format(line, simTime, tag + "Competitor starts rushing.");
+            break;
+        case MISSES:
+            Logger.format(line, simTime, tag + String.format("Missed %d times.", a));
+            break;
+        case PENALTY:
+            Logger.format(line, simTime, tag + String.format("Receives %.0f m penalty distance.", value));
+            break;
+        case SPEED_FACTOR:
+            Logger.format(line, simTime, tag + String.format("Speed factor is %.2f.", value));
+            break;
+        case AIMING_FACTOR:
+            Logger.format(line, simTime, tag + String.format("Aiming time factor is %.2f.", value));
+            break;
+        case ACCURACY_FACTOR:
+            Logger.format(line, simTime, tag + String.format("Accuracy factor is %.2f.", value));
+            break;
+        case FINISH:
+            Logger.format(line, simTime, tag + "Finishes the competition!");
+            break;
+        case RANGE_ENTER:
+            Logger.format(line, simTime, String.format("Competitor #%d enters the shooting range.", competitor + 1));
+            break;
+        case RANGE_MISSES:
+            Logger.format(line, simTime, String.format("Competitor #%d misses %d times.", competitor + 1, a));
+            break;
+        case RANGE_LEAVE:
+            Logger.format(line, simTime, String.format("Competitor #%d leaves the shooting range.", competitor + 1));
+            break;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package sim;
+
+import java.util.Arrays;
+
+/**
+ * A light future event list.
+ * <p>
+ * A binary heap of the scheduled entries ordered by the time. The entries due
+ * at the same time are taken in the order they were scheduled, so a run does
+ * not depend on anything but the order of the <code>schedule()</code> calls.
+ * Every entry gets a sequence number, which lets the owner tell a stale entry
+ * (e.g. of a rescheduled process) from the current one without searching the
+ * heap. The sequence numbers are never -1, the owners use it for no entry.
+ *
+ * @param <T> The type of the entries.
+ */
+public class EventList<T> {
+
+    private double[] times = new double[16];
+    private long[] sequences = new long[16];
+    private Object[] entries = new Object[16];
+
+    private int size = 0;
+    private long nextSequence = 0;
+
+    /**
+     * The sequence number given out last by <code>scheduleFirst()</code>, they count down from -2.
+     */
+    private long firstSequence = -1;
+
+    /**
+     * Schedules an entry after the entries due at the same time.
+     * @param time The time the entry is due.
+     * @param entry The entry.
+     * @return The sequence number of the entry.
+     */
+    public long schedule(double time, T entry) {
+        return insert(time, nextSequence++, entry);
+    }
+
+    /**
+     * Schedules an entry before the entries due at the same time, those scheduled by this method before
+     * included, as DESMO-J does with the processes activated after the current one.
+     * @param time The time the entry is due.
+     * @param entry The entry.
+     * @return The sequence number of the entry.
+     */
+    public long scheduleFirst(double time, T entry) {
+        return insert(time, --firstSequence, entry);
+    }
+
+    private long insert(double time, long sequence, T entry) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, 2 * size);
+            sequences = Arrays.copyOf(sequences, 2 * size);
+            entries = Arrays.copyOf(entries, 2 * size);
+        }
+
+        int i = size++;
+
+        // Sift up.
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+
+            if (!before(time, sequence, parent))
+                break;
+
+            move(parent, i);
+            i = parent;
+        }
+
+        set(i, time, sequence, entry);
+        return sequence;
+    }
+
+    /**
+     * @return <code>true</code> if nothing is scheduled.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return The number of the scheduled entries, stale ones included.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The time of the first entry.
+     */
+    public double firstTime() {
+        return times[0];
+    }
+
+    /**
+     * @return The sequence number of the first entry.
+     */
+    public long firstSequence() {
+        return sequences[0];
+    }
+
+    /**
+     * Removes the first entry.
+     * @return The entry.
+     */
+    @SuppressWarnings("unchecked")
+    public T removeFirst() {
+        T first = (T) entries[0];
+        int last = --size;
+
+        double time = times[last];
+        long sequence = sequences[last];
+        Object entry = entries[last];
+        entries[last] = null;
+
+        // Sift the last entry down from the root.
+        int i = 0;
+
+        while (true) {
+            int child = 2 * i + 1;
+
+            if (child >= size)
+                break;
+
+            if (child + 1 < size && before(times[child + 1], sequences[child + 1], child))
+                ++child;
+
+            if (!before(times[child], sequences[child], time, sequence))
+                break;
+
+            move(child, i);
+            i = child;
+        }
+
+        if (size > 0)
+            set(i, time, sequence, entry);
+
+        return first;
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear() {
+        Arrays.fill(entries, 0, size, null);
+        size = 0;
+    }
+
+    private boolean before(double time, long sequence, int i) {
+        return before(time, sequence, times[i], sequences[i]);
+    }
+
+    private static boolean before(double time, long sequence, double otherTime, long otherSequence) {
+        return time < otherTime || (time == otherTime && sequence < otherSequence);
+    }
+
+    private void move(int from, int to) {
+        times[to] = times[from];
+        sequences[to] = sequences[from];
+        entries[to] = entries[from];
+    }
+
+    private void set(int i, double time, long sequence, Object entry) {
+        times[i] = time;
+        sequences[i] = sequence;
+        entries[i] = entry;
+    }
+}
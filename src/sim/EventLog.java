@@ -0,0 +1,164 @@
+package sim;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A compact, append-only binary log of the simulation events.
+ * <p>
+ * The file starts with a <code>HEADER_SIZE</code> byte header (magic number,
+ * format version and record size) followed by fixed-width records of
+ * <code>RECORD_SIZE</code> bytes each:
+ * <ul>
+ * <li><code>double</code> simulation time in seconds,</li>
+ * <li><code>int</code> competitor ID (-1 for the shooting range only records),</li>
+ * <li><code>int</code> <code>EventType</code> code,</li>
+ * <li><code>int</code> payload <code>a</code>,</li>
+ * <li><code>int</code> payload <code>b</code>,</li>
+ * <li><code>double</code> payload <code>value</code>.</li>
+ * </ul>
+ * The file is written through a memory mapping which is moved forward in
+ * <code>CHUNK_SIZE</code> steps, so recording an event is a handful of stores
+ * to memory. All the records of a single model are written by one thread at a
+ * time, hence the log is not synchronized.
+ * 
+ * @see EventLogDecoder
+ */
+public class EventLog {
+
+    /**
+     * The magic number identifying the log files.
+     */
+    public static final long MAGIC = 0x4249415448454C47L; // "BIATHELG"
+
+    /**
+     * The version of the file format.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The size of the file header in bytes.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * The size of a single record in bytes.
+     */
+    public static final int RECORD_SIZE = 32;
+
+    /**
+     * The size of the mapped window in bytes.
+     */
+    private static final int CHUNK_SIZE = RECORD_SIZE * 32768;
+
+    private final String filename;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer map;
+
+    /**
+     * The file offset of the mapped window.
+     */
+    private long mapOffset;
+
+    private long records = 0;
+
+
+    /**
+     * Creates a new log file. Any previous file with the given name is overwritten.
+     * 
+     * @param logfile
+     *            The log file.
+     * @throws IOException
+     *             If the file could not be created.
+     */
+    public EventLog(File logfile) throws IOException {
+        filename = logfile.getPath();
+        file = new RandomAccessFile(logfile, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+
+        mapOffset = 0;
+        map = channel.map(FileChannel.MapMode.READ_WRITE, mapOffset, CHUNK_SIZE);
+        map.putLong(MAGIC);
+        map.putInt(VERSION);
+        map.putInt(RECORD_SIZE);
+    }
+
+
+    /**
+     * Appends a record to the log.
+     * 
+     * @param simTime
+     *            Simulation time in seconds.
+     * @param competitor
+     *            Internal ID of the competitor.
+     * @param type
+     *            The type of the event.
+     * @param a
+     *            Integer payload.
+     * @param b
+     *            Integer payload.
+     * @param value
+     *            Floating point payload.
+     */
+    public void record(double simTime, int competitor, EventType type, int a, int b, double value) {
+        if (map == null)
+            return;
+
+        if (map.remaining() < RECORD_SIZE && !remap())
+            return;
+
+        map.putDouble(simTime);
+        map.putInt(competitor);
+        map.putInt(type.code);
+        map.putInt(a);
+        map.putInt(b);
+        map.putDouble(value);
+        ++records;
+    }
+
+
+    /**
+     * Returns the number of records written so far.
+     * 
+     * @return The number of records.
+     */
+    public long size() {
+        return records;
+    }
+
+
+    /**
+     * Trims the file to the records written and closes it.
+     */
+    public void close() {
+        if (map == null)
+            return;
+
+        map = null;
+
+        try {
+            channel.truncate(HEADER_SIZE + records * RECORD_SIZE);
+            file.close();
+        } catch (IOException e) {
+            System.err.println(String.format("Error while closing the log (%s).", filename));
+        }
+    }
+
+
+    private boolean remap() {
+        try {
+            mapOffset += map.position();
+            map = channel.map(FileChannel.MapMode.READ_WRITE, mapOffset, CHUNK_SIZE);
+            return true;
+        } catch (IOException e) {
+            System.err.println(String.format("Error while writing to the log (%s).", filename));
+            map = null;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package sim;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rebuilds the human-readable logs from a binary <code>EventLog</code>.
+ * <p>
+ * Produces the same <i>competitor_NN.txt</i> and <i>ShootingRange.txt</i>
+ * files the text logging writes during the simulation.
+ * 
+ * @see EventLog
+ */
+public class EventLogDecoder {
+
+    private final File outputDir;
+    private final Map<Integer, BufferedWriter> writers = new HashMap<Integer, BufferedWriter>();
+    private final StringBuilder line = new StringBuilder();
+
+
+    /**
+     * The c-tor.
+     * 
+     * @param outputDir
+     *            The directory the text logs are written to.
+     */
+    public EventLogDecoder(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+
+    /**
+     * Decodes a binary log into text logs.
+     * 
+     * @param logfile
+     *            The binary log file.
+     * @return The number of records decoded.
+     * @throws IOException
+     *             If the log is malformed or could not be read or written.
+     */
+    public long decode(File logfile) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(logfile, "r");
+
+        try {
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (map.remaining() < EventLog.HEADER_SIZE || map.getLong() != EventLog.MAGIC)
+                throw new IOException(String.format("Not an event log (%s).", logfile));
+
+            if (map.getInt() != EventLog.VERSION || map.getInt() != EventLog.RECORD_SIZE)
+                throw new IOException(String.format("Unsupported event log version (%s).", logfile));
+
+            long n = 0;
+
+            while (map.remaining() >= EventLog.RECORD_SIZE) {
+                double simTime = map.getDouble();
+                int competitor = map.getInt();
+                EventType type = EventType.fromCode(map.getInt());
+                int a = map.getInt();
+                int b = map.getInt();
+                double value = map.getDouble();
+
+                if (type != null) {
+                    line.setLength(0);
+                    EventFormatter.format(line, (long) simTime, type, competitor, a, b, value);
+                    write(type.isShootingRangeRecord() ? -1 : competitor, line);
+                }
+
+                ++n;
+            }
+
+            return n;
+        } finally {
+            file.close();
+
+            for (BufferedWriter w : writers.values())
+                w.close();
+
+            writers.clear();
+        }
+    }
+
+
+    /**
+     * Writes lines to the log of a competitor, or to the shooting range log if
+     * <code>competitor</code> is negative.
+     */
+    private void write(int competitor, CharSequence lines) throws IOException {
+        BufferedWriter writer = writers.get(competitor);
+
+        if (writer == null) {
+            String filename = competitor < 0 ? "ShootingRange.txt" : String.format("competitor_%02d.txt", competitor);
+            writer = new BufferedWriter(new FileWriter(new File(outputDir, filename)));
+            writers.put(competitor, writer);
+        }
+
+        writer.append(lines);
+    }
+
+
+    /**
+     * Entry point of the decoder.
+     * 
+     * @param args
+     *            The binary log file and optionally the output directory
+     *            (<i>log</i> by default).
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: EventLogDecoder <events.bin> [output directory]");
+            System.exit(1);
+        }
+
+        File outputDir = new File(args.length > 1 ? args[1] : "log");
+        outputDir.mkdirs();
+
+        long n = new EventLogDecoder(outputDir).decode(new File(args[0]));
+        System.out.println(String.format("Decoded %d records.", n));
+    }
+}
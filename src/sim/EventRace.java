@@ -0,0 +1,421 @@
+package sim;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * The Biathlon race as event-oriented state machines on an <code>EventList</code>.
+ * <p>
+ * Instead of a thread per process, every competitor and the shooting range is
+ * a state machine with at most one pending event. Handling an event moves an
+ * entity to its next state and schedules its next event; switching between
+ * the entities is a heap operation and a method call. The events and their
+ * order mirror the holds and activations of the <code>Competitor</code>,
+ * <code>ShootingRange</code> and <code>CompetitorGenerator</code> life cycles
+ * of the DESMO-J model in the <code>STEP</code> movement mode with the random
+ * events sampled every step and the single shooting range, as does
+ * <code>LightRace</code>. All of them share the <code>CompetitorModel</code>,
+ * so they carry out the same races from the same seed; <code>validate()</code>
+ * checks it.
+ * <p>
+ * A race may be run again over the same competitors once their models are
+ * reset (<code>CompetitorModel.reset()</code>); the state machines, the event
+ * list and the result arrays are reused, see <code>Season</code>.
+ */
+public class EventRace {
+
+    /**
+     * The events of the state machines.
+     */
+    public enum Event {
+        /** A competitor ends the <code>Biathlon.STEP_TIME</code> pause, arrives at a range or runs a step. */
+        RUN_STEP,
+        /** A competitor ends the delays of the random events of a step. */
+        RANDOM_EVENT,
+        /** The shooting range starts the sessions of the waiting competitors. */
+        START_SHOOTING,
+        /** A competitor ends a shooting session and runs a step. */
+        FINISH_SHOOTING,
+        /** A competitor crosses the finish line. */
+        FINISH
+    }
+
+    /**
+     * The states of a competitor.
+     */
+    public enum State {
+        /** Runs, the next event is <code>RUN_STEP</code>. */
+        RUNNING,
+        /** Delayed by the random events, the next event is <code>RANDOM_EVENT</code>. */
+        DELAYED,
+        /** Waits for the shooting range to take it. */
+        QUEUED,
+        /** Shoots, the next event is <code>FINISH_SHOOTING</code>. */
+        SHOOTING,
+        /** Finished the race. */
+        FINISHED
+    }
+
+    private final int numCompetitors;
+
+    private final EventList<Entity> events = new EventList<Entity>();
+    private double now = 0.0;
+    private long handled = 0;
+
+    private final Machine[] competitors;
+    private final RangeMachine range = new RangeMachine();
+
+    /**
+     * The competitors waiting for the shooting range.
+     */
+    private final ArrayDeque<Machine> competitorsQueue = new ArrayDeque<Machine>();
+
+    private final double[] finishTime;
+    private final int[] misses;
+
+    /**
+     * The c-tor.
+     *
+     * @param numCompetitors
+     *            The number of competitors.
+     * @param seed
+     *            The seed of the race.
+     */
+    public EventRace(int numCompetitors, long seed) {
+        this(numCompetitors, seed, new Parameters());
+    }
+
+    /**
+     * The c-tor.
+     *
+     * @param numCompetitors
+     *            The number of competitors.
+     * @param seed
+     *            The seed of the race.
+     * @param params
+     *            The values of the model parameters.
+     */
+    public EventRace(int numCompetitors, long seed, Parameters params) {
+        this(createModels(numCompetitors, seed, params));
+    }
+
+    /**
+     * The c-tor.
+     *
+     * @param models
+     *            The competitors, indexed by the internal ID.
+     */
+    public EventRace(CompetitorModel[] models) {
+        numCompetitors = models.length;
+
+        competitors = new Machine[numCompetitors];
+        finishTime = new double[numCompetitors];
+        misses = new int[numCompetitors];
+
+        for (int i = 0; i < numCompetitors; i++)
+            competitors[i] = new Machine(models[i]);
+    }
+
+    /**
+     * Carries out the race, until everybody finishes or <code>Biathlon.SIMULATION_TIME</code> passes.
+     * The models of the competitors have to be fresh or reset.
+     */
+    public void run() {
+        now = 0.0;
+        handled = 0;
+        competitorsQueue.clear();
+        range.idle = true;
+        range.sequence = -1;
+        Arrays.fill(finishTime, 0.0);
+        Arrays.fill(misses, 0);
+
+        // The generator activates every competitor right after itself, so they start in the reverse order.
+        for (int i = numCompetitors - 1; i >= 0; i--) {
+            competitors[i].state = State.RUNNING;
+            competitors[i].schedule(Event.RUN_STEP, Biathlon.STEP_TIME);
+        }
+
+        while (!events.isEmpty() && events.firstTime() <= Biathlon.SIMULATION_TIME) {
+            double time = events.firstTime();
+            long sequence = events.firstSequence();
+            Entity entity = events.removeFirst();
+
+            // The entity was rescheduled since.
+            if (entity.sequence != sequence)
+                continue;
+
+            now = time;
+            entity.handle();
+            ++handled;
+        }
+
+        events.clear();
+    }
+
+    /**
+     * Returns the finish time of a competitor.
+     *
+     * @param id
+     *            Internal competitor ID.
+     * @return The finish time in seconds or 0 if the competitor did not
+     *         finish.
+     */
+    public double getFinishTime(int id) {
+        return finishTime[id];
+    }
+
+    /**
+     * Returns the total number of misses of a competitor.
+     *
+     * @param id
+     *            Internal competitor ID.
+     * @return The number of missed shots.
+     */
+    public int getMisses(int id) {
+        return misses[id];
+    }
+
+    /**
+     * Returns the state of a competitor.
+     *
+     * @param id
+     *            Internal competitor ID.
+     * @return The state.
+     */
+    public State getState(int id) {
+        return competitors[id].state;
+    }
+
+    /**
+     * @return The number of events handled so far.
+     */
+    public long getHandledEvents() {
+        return handled;
+    }
+
+    private static CompetitorModel[] createModels(int numCompetitors, long seed, Parameters params) {
+        CompetitorModel[] models = new CompetitorModel[numCompetitors];
+
+        for (int i = 0; i < numCompetitors; i++)
+            models[i] = new CompetitorModel(i, params, new CompetitorStreams(new RandomStream(seed, i)));
+
+        return models;
+    }
+
+    /**
+     * An entity with at most one pending event, scheduling another one replaces it.
+     */
+    private abstract class Entity {
+        Event pending;
+        long sequence = -1;
+
+        void schedule(Event e, double delay) {
+            pending = e;
+            sequence = events.schedule(now + delay, this);
+        }
+
+        /**
+         * Schedules an event now, before the other events due now, see <code>SimProcess.activateAfter()</code>.
+         */
+        void scheduleFirst(Event e) {
+            pending = e;
+            sequence = events.scheduleFirst(now, this);
+        }
+
+        abstract void handle();
+    }
+
+    /**
+     * The state machine of a competitor, see <code>Competitor</code>.
+     */
+    private class Machine extends Entity {
+        final CompetitorModel model;
+        State state = State.RUNNING;
+
+        Machine(CompetitorModel model) {
+            this.model = model;
+        }
+
+        void handle() {
+            switch (pending) {
+            case RUN_STEP:
+                if (model.atShootingRange() && arriveAtRange())
+                    return;
+
+                runStep();
+                break;
+            case RANDOM_EVENT:
+                if (model.hasFinished()) {
+                    schedule(Event.FINISH, 0.0);
+                } else {
+                    state = State.RUNNING;
+                    schedule(Event.RUN_STEP, Biathlon.STEP_TIME);
+                }
+                break;
+            case FINISH_SHOOTING:
+                runStep();
+                break;
+            case FINISH:
+                state = State.FINISHED;
+                finishTime[model.getID()] = now;
+                break;
+            default:
+                throw new IllegalStateException(String.format("%s can not handle %s.", model, pending));
+            }
+        }
+
+        /**
+         * Joins the queue of the shooting range, see <code>Competitor.shoot()</code>.
+         *
+         * @return <code>true</code> if the range takes the competitor, <code>false</code> if it runs on.
+         */
+        private boolean arriveAtRange() {
+            model.enterRange();
+            competitorsQueue.add(this);
+
+            if (!range.idle)
+                return false;
+
+            range.idle = false;
+            range.scheduleFirst(Event.START_SHOOTING);
+            state = State.QUEUED;
+            return true;
+        }
+
+        /**
+         * Runs a step, delayed by its random events.
+         */
+        private void runStep() {
+            state = State.DELAYED;
+            schedule(Event.RANDOM_EVENT, model.step());
+        }
+    }
+
+    /**
+     * The state machine of the shooting range, see <code>ShootingRange</code>.
+     */
+    private class RangeMachine extends Entity {
+        boolean idle = true;
+
+        void handle() {
+            while (!competitorsQueue.isEmpty()) {
+                Machine next = competitorsQueue.poll();
+                CompetitorModel model = next.model;
+
+                model.addPenalties(model.computeShotsMissed());
+                misses[model.getID()] = model.getMisses();
+
+                double shootingTime = model.computeShootingTime();
+
+                // A competitor who ran on while the range was busy is scheduled already and stays so.
+                if (next.state == State.QUEUED) {
+                    next.state = State.SHOOTING;
+                    next.schedule(Event.FINISH_SHOOTING, shootingTime);
+                }
+            }
+
+            idle = true;
+        }
+    }
+
+    /**
+     * Compares the races competitor by competitor against the DESMO-J model
+     * (<code>STEP</code> movement, random events sampled every step, the
+     * single shooting range) and the <code>LightRace</code> of the same seeds.
+     * The <code>LightRace</code> has to match exactly. DESMO-J keeps the times
+     * as multiples of its time unit and <code>Results</code> truncates the
+     * finish times to whole seconds, so there the misses have to match and the
+     * finish times may differ by a second.
+     *
+     * @param races
+     *            The number of races.
+     * @return <code>true</code> if the engines carry out the same races.
+     */
+    public static boolean validate(int races) throws Exception {
+        ReplicationRunner runner = new ReplicationRunner(races, Runtime.getRuntime().availableProcessors());
+        runner.setMovement(Biathlon.Movement.STEP);
+        runner.setEventSampling(Biathlon.EventSampling.PER_STEP);
+
+        Results[] reference = runner.run();
+
+        int n = Biathlon.NUM_COMPETITORS;
+        int lightDiffers = 0, desmojExact = 0, desmojDiffers = 0;
+
+        for (int r = 0; r < races; r++) {
+            EventRace race = new EventRace(n, ReplicationRunner.seedFor(r));
+            race.run();
+
+            LightRace light = new LightRace(n, ReplicationRunner.seedFor(r));
+            light.run();
+
+            Results desmoj = reference[r];
+
+            for (int i = 0; i < n; i++) {
+                if (light.getFinishTime(i) != race.getFinishTime(i) || light.getMisses(i) != race.getMisses(i))
+                    ++lightDiffers;
+
+                long finish = (long) Math.floor(race.getFinishTime(i));
+
+                if (desmoj.getMisses(i) != race.getMisses(i) || Math.abs(desmoj.getFinishTime(i) - finish) > 1)
+                    ++desmojDiffers;
+                else if (desmoj.getFinishTime(i) == finish)
+                    ++desmojExact;
+            }
+        }
+
+        int total = races * n;
+
+        System.out.println(String.format("LightRace \t %d of %d competitors differ", lightDiffers, total));
+        System.out.println(String.format("DESMO-J \t %d of %d competitors differ, %d match to the second",
+                desmojDiffers, total, desmojExact));
+        System.out.println(lightDiffers == 0 && desmojDiffers == 0 ? "PASS" : "FAIL");
+
+        return lightDiffers == 0 && desmojDiffers == 0;
+    }
+
+    /**
+     * Entry point of the event-oriented race. Prints the run time and the winner of every race.
+     *
+     * @param args
+     *            The number of races, optionally followed by the number of
+     *            competitors or <i>validate</i> to compare against the
+     *            DESMO-J model.
+     */
+    public static void main(String[] args) throws Exception {
+        int races = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+
+        if (args.length > 1 && args[1].equals("validate")) {
+            boolean ok = validate(races);
+            System.exit(ok ? 0 : 1);
+        }
+
+        int competitors = args.length > 1 ? Integer.parseInt(args[1]) : Biathlon.NUM_COMPETITORS;
+
+        long handled = 0;
+        long start = System.nanoTime();
+
+        for (int r = 0; r < races; r++) {
+            EventRace race = new EventRace(competitors, ReplicationRunner.seedFor(r));
+            race.run();
+
+            int winner = -1;
+
+            for (int i = 0; i < competitors; i++) {
+                double t = race.getFinishTime(i);
+                if (t != 0 && (winner == -1 || t < race.getFinishTime(winner)))
+                    winner = i;
+            }
+
+            handled += race.getHandledEvents();
+
+            if (races <= 10 && winner != -1)
+                System.out.println(String.format("Race %d \t Competitor #%d \t %.1f s", r + 1, winner + 1,
+                        race.getFinishTime(winner)));
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format("%d races of %d competitors in %.2f s, %.0f events/s.", races, competitors,
+                seconds, handled / seconds));
+    }
+}
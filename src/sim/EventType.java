@@ -0,0 +1,88 @@
+package sim;
+
+/**
+ * The <code>EventType</code> enum lists the types of the records stored in the
+ * binary <code>EventLog</code>.
+ * <p>
+ * Each type has a fixed code which is stored in the log file, so the codes of
+ * the existing types must never change. The meaning of the numeric payload
+ * (<code>a</code>, <code>b</code> and <code>value</code>) depends on the type.
+ * 
+ * @see EventLog
+ * @see EventLogDecoder
+ */
+public enum EventType {
+    /** A competitor starts the race. */
+    START(0),
+    /** A competitor enters a shooting range, <code>a</code> is the visit number. */
+    ENTER_RANGE(1),
+    /** A competitor leaves a shooting range. */
+    LEAVE_RANGE(2),
+    /**
+     * A random event occurs, <code>a</code> is the <code>RandomEvent</code> ordinal,
+     * <code>b</code> the desperation change and <code>value</code> the duration.
+     */
+    RANDOM_EVENT(3),
+    /** Desperation of a competitor changes, <code>a</code> is the new value. */
+    DESPERATION(4),
+    /** Desperation of a competitor crosses the panic threshold. */
+    PANIC(5),
+    /** A competitor misses shots, <code>a</code> is the number of misses. */
+    MISSES(6),
+    /** A competitor receives penalty distance, <code>value</code> is the distance. */
+    PENALTY(7),
+    /** Speed factor of a competitor, <code>value</code> is the factor. */
+    SPEED_FACTOR(8),
+    /** Aiming time factor of a competitor, <code>value</code> is the factor. */
+    AIMING_FACTOR(9),
+    /** Accuracy factor of a competitor, <code>value</code> is the factor. */
+    ACCURACY_FACTOR(10),
+    /** A competitor finishes the race. */
+    FINISH(11),
+    /** The shooting range admits a competitor. */
+    RANGE_ENTER(12),
+    /** The shooting range scores a competitor, <code>a</code> is the number of misses. */
+    RANGE_MISSES(13),
+    /** The shooting range releases a competitor. */
+    RANGE_LEAVE(14);
+
+    private static final EventType[] byCode = new EventType[values().length];
+
+    static {
+        for (EventType t : values())
+            byCode[t.code] = t;
+    }
+
+    /**
+     * The code stored in the log file.
+     */
+    public final int code;
+
+
+    private EventType(int code) {
+        this.code = code;
+    }
+
+
+    /**
+     * Checks whether the record belongs to the shooting range log rather than
+     * to the log of the competitor.
+     * 
+     * @return <code>true</code> for the shooting range records.
+     */
+    public boolean isShootingRangeRecord() {
+        return this == RANGE_ENTER || this == RANGE_MISSES || this == RANGE_LEAVE;
+    }
+
+
+    /**
+     * Returns the type with the given code.
+     * 
+     * @param code
+     *            The code stored in the log file.
+     * @return The type or <code>null</code> if the code is unknown.
+     */
+    public static EventType fromCode(int code) {
+        return (code >= 0 && code < byCode.length) ? byCode[code] : null;
+    }
+}
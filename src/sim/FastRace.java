@@ -0,0 +1,528 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A fast-path race engine for bulk studies, running outside of DESMO-J.
+ * <p>
+ * Instead of a process per competitor, the state of the whole field is kept
+ * in primitive arrays indexed by the competitor ID and advanced one
+ * <code>Biathlon.STEP_TIME</code> tick at a time. Every tick the running is
+ * done by a single branch-free loop over the arrays, which the JIT compiler
+ * is able to vectorize, while the rare events (shooting, random events,
+ * panic, finish) are handled by a separate, scalar pass.
+ * <p>
+ * The engine uses the <code>Biathlon</code> constants and follows the same
+ * rules as <code>Competitor</code> and a multi-lane <code>RangePool</code>,
+ * or the single <code>ShootingRange</code> with 0 lanes (<i>sim.lanes</i>, as
+ * in every other entry point).
+ * Every competitor keeps its own, exact timeline - a tick only batches the
+ * competitors due within it. The random events are drawn as geometric
+ * inter-arrival step counts with the per-step probability of
+ * <code>RandomEvent.hasHappened()</code>. Run with <i>validate</i> to compare
+ * the finish time distribution against the DESMO-J model.
+ */
+public class FastRace {
+
+    private final int numCompetitors;
+    private final RandomStream random;
+    private final Parameters params;
+
+    /**
+     * The distance left to cover given in meters (1.0 == 1 meter).
+     */
+    final double[] distanceToCover;
+
+    /**
+     * The number of shooting sessions left before finishing the run.
+     */
+    final int[] shootingsLeft;
+
+    /**
+     * Attribute modifiers used by the tiredness and stress models.
+     */
+    final double[] speedFactor;
+    final double[] accuracyFactor;
+    final double[] aimingFactor;
+
+    /**
+     * The current stress level of a competitor.
+     */
+    final int[] currentDesperation;
+
+    /**
+     * Flag determining wether a competitor reached the panic threshold.
+     */
+    final boolean[] panic;
+
+    /**
+     * <code>Biathlon.PANIC_GAIN_MODIFIER</code> for the panicking competitors, 1.0 otherwise.
+     * Mirrors <code>panic</code> for the running loop.
+     */
+    private final double[] speedGain;
+
+    /**
+     * Simulation time of the next step of a competitor, in seconds.
+     */
+    private final double[] readyAt;
+
+    /**
+     * 1.0 if a competitor runs in the current tick, 0.0 otherwise.
+     */
+    private final double[] running;
+
+    /**
+     * Standard normal samples for the current tick.
+     */
+    private final double[] noise;
+
+    /**
+     * Set if a competitor reached a shooting range and shoots on the next step.
+     */
+    private final boolean[] atRange;
+
+    private final boolean[] finished;
+
+    /**
+     * The number of steps taken by a competitor.
+     */
+    private final long[] steps;
+
+    /**
+     * The step of the next occurence of each random event, per competitor.
+     */
+    private final long[][] nextEvent;
+
+    /**
+     * Per-step probabilities of the random events.
+     */
+    private final double[] eventProbability;
+
+    /**
+     * Time each shooting range lane becomes idle, in seconds.
+     */
+    private final double[] laneIdleAt;
+
+    private final double[] finishTime;
+    private final int[] misses;
+
+
+    /**
+     * The c-tor.
+     *
+     * @param numCompetitors
+     *            The number of competitors.
+     * @param lanes
+     *            The number of shooting range lanes, 0 for the single
+     *            <code>ShootingRange</code>.
+     * @param seed
+     *            The seed of the random generator.
+     */
+    public FastRace(int numCompetitors, int lanes, long seed) {
+        this(numCompetitors, lanes, seed, new Parameters());
+    }
+
+
+    /**
+     * The c-tor.
+     *
+     * @param numCompetitors
+     *            The number of competitors.
+     * @param lanes
+     *            The number of shooting range lanes, 0 for the single
+     *            <code>ShootingRange</code>.
+     * @param seed
+     *            The seed of the random generator.
+     * @param params
+     *            The values of the model parameters.
+     * @throws IllegalArgumentException
+     *             If the number of lanes is negative.
+     */
+    public FastRace(int numCompetitors, int lanes, long seed, Parameters params) {
+        if (lanes < 0)
+            throw new IllegalArgumentException(String.format("The number of lanes can not be negative (%d).", lanes));
+
+        this.numCompetitors = numCompetitors;
+        this.random = new RandomStream(seed);
+        this.params = params;
+
+        distanceToCover = new double[numCompetitors];
+        shootingsLeft = new int[numCompetitors];
+        speedFactor = new double[numCompetitors];
+        accuracyFactor = new double[numCompetitors];
+        aimingFactor = new double[numCompetitors];
+        currentDesperation = new int[numCompetitors];
+        panic = new boolean[numCompetitors];
+        speedGain = new double[numCompetitors];
+        readyAt = new double[numCompetitors];
+        running = new double[numCompetitors];
+        noise = new double[numCompetitors];
+        atRange = new boolean[numCompetitors];
+        finished = new boolean[numCompetitors];
+        steps = new long[numCompetitors];
+        finishTime = new double[numCompetitors];
+        misses = new int[numCompetitors];
+        // The single ShootingRange starts the sessions of all the waiting competitors at once, a lane for each.
+        laneIdleAt = new double[lanes == 0 ? numCompetitors : lanes];
+
+        RandomEvent[] events = RandomEvent.values();
+        nextEvent = new long[events.length][numCompetitors];
+        eventProbability = new double[events.length];
+
+        for (RandomEvent e : events)
+            eventProbability[e.ordinal()] = e.getProbability();
+
+        Arrays.fill(distanceToCover, Biathlon.INITIAL_DISTANCE);
+        Arrays.fill(shootingsLeft, Biathlon.NUM_SHOOTING_RANGES);
+        Arrays.fill(speedFactor, 1.0);
+        Arrays.fill(accuracyFactor, 1.0);
+        Arrays.fill(aimingFactor, 1.0);
+        Arrays.fill(speedGain, 1.0);
+        Arrays.fill(readyAt, Biathlon.STEP_TIME);
+
+        for (int e = 0; e < events.length; e++)
+            for (int i = 0; i < numCompetitors; i++)
+                nextEvent[e][i] = RandomEventSchedule.nextOccurence(random, eventProbability[e]);
+    }
+
+
+    /**
+     * Carries out the race, until everybody finishes or <code>Biathlon.SIMULATION_TIME</code> passes.
+     */
+    public void run() {
+        int left = numCompetitors;
+
+        for (double tick = 0.0; left > 0 && tick < Biathlon.SIMULATION_TIME; tick += Biathlon.STEP_TIME) {
+            double tickEnd = tick + Biathlon.STEP_TIME;
+
+            for (int i = 0; i < numCompetitors; i++) {
+                running[i] = (!finished[i] && !atRange[i] && readyAt[i] < tickEnd) ? 1.0 : 0.0;
+                noise[i] = random.nextGaussian();
+            }
+
+            runAll();
+
+            for (int i = 0; i < numCompetitors; i++) {
+                if (finished[i] || readyAt[i] >= tickEnd)
+                    continue;
+
+                if (atRange[i]) {
+                    shoot(i);
+                    runOne(i);
+                }
+
+                if (afterStep(i))
+                    --left;
+            }
+        }
+    }
+
+
+    /**
+     * Returns the finish time of a competitor.
+     *
+     * @param id
+     *            Internal competitor ID.
+     * @return The finish time in seconds or 0 if the competitor did not
+     *         finish.
+     */
+    public double getFinishTime(int id) {
+        return finishTime[id];
+    }
+
+
+    /**
+     * Returns the total number of misses of a competitor.
+     *
+     * @param id
+     *            Internal competitor ID.
+     * @return The number of missed shots.
+     */
+    public int getMisses(int id) {
+        return misses[id];
+    }
+
+
+    /**
+     * The running of a single tick for the whole field. Branch-free, so it can be vectorized.
+     */
+    private void runAll() {
+        final double mean = params.get(Parameter.SPEED_MEAN);
+        final double stdDev = params.get(Parameter.SPEED_STD_DEV);
+        final double minSpeed = params.get(Parameter.MIN_SPEED);
+        final double maxSpeed = params.get(Parameter.MAX_SPEED);
+        final double speedDelta = params.get(Parameter.SPEED_FACTOR_DELTA);
+        final double accuracyDelta = params.get(Parameter.ACCURACY_FACTOR_DELTA);
+        final double aimingDelta = params.get(Parameter.SHOOTING_TIME_FACTOR_DELTA);
+
+        for (int i = 0; i < numCompetitors; i++) {
+            double m = running[i];
+            double v = (mean + stdDev * noise[i]) * speedFactor[i] * speedGain[i] * Biathlon.STEP_TIME;
+            double dist = Math.max(Math.min(v, maxSpeed), minSpeed);
+
+            distanceToCover[i] -= m * dist;
+            speedFactor[i] += m * speedDelta;
+            accuracyFactor[i] += m * accuracyDelta;
+            aimingFactor[i] += m * aimingDelta;
+        }
+    }
+
+
+    /**
+     * The running of a single step for a single competitor, see <code>runAll()</code>.
+     */
+    private void runOne(int i) {
+        double v = random.normal(params.get(Parameter.SPEED_MEAN), params.get(Parameter.SPEED_STD_DEV)) * speedFactor[i]
+                * speedGain[i] * Biathlon.STEP_TIME;
+
+        distanceToCover[i] -= Helpers.clamp(v, params.get(Parameter.MIN_SPEED), params.get(Parameter.MAX_SPEED));
+        speedFactor[i] += params.get(Parameter.SPEED_FACTOR_DELTA);
+        accuracyFactor[i] += params.get(Parameter.ACCURACY_FACTOR_DELTA);
+        aimingFactor[i] += params.get(Parameter.SHOOTING_TIME_FACTOR_DELTA);
+    }
+
+
+    /**
+     * Random events, panic and the checks following a running step of a competitor.
+     *
+     * @return <code>true</code> if the competitor finished.
+     */
+    private boolean afterStep(int i) {
+        double time = readyAt[i];
+        double penalty = 0.0;
+        long step = ++steps[i];
+
+        for (int e = 0; e < eventProbability.length; e++) {
+            if (nextEvent[e][i] == step) {
+                RandomEvent event = RandomEvent.values()[e];
+
+                penalty += random.uniform(event.getMinDuration(), event.getMaxDuration());
+                currentDesperation[i] += (int) random.uniform(event.getMinDesperation(), event.getMaxDesperation());
+                nextEvent[e][i] = step + RandomEventSchedule.nextOccurence(random, eventProbability[e]);
+            }
+        }
+
+        // Panic is impossible unless the desperation is close to the threshold.
+        int threshold = params.getInt(Parameter.PANIC_THRESHOLD);
+        int maxDesperation = params.getInt(Parameter.MAX_DESPERATION);
+
+        if (!panic[i] && currentDesperation[i] >= threshold - maxDesperation) {
+            double d = random.uniform(params.getInt(Parameter.MIN_DESPERATION), (double) maxDesperation);
+
+            if (currentDesperation[i] + Math.round(d) >= threshold) {
+                panic[i] = true;
+                speedGain[i] = params.get(Parameter.PANIC_GAIN_MODIFIER);
+            }
+        }
+
+        if (distanceToCover[i] <= 0) {
+            finished[i] = true;
+            finishTime[i] = time + penalty;
+            return true;
+        }
+
+        double nextShootingDist = (shootingsLeft[i] + 1) * Biathlon.INITIAL_DISTANCE
+                / (Biathlon.NUM_SHOOTING_RANGES + 2);
+        atRange[i] = shootingsLeft[i] > 0 && distanceToCover[i] < nextShootingDist;
+        readyAt[i] = time + penalty + Biathlon.STEP_TIME;
+
+        return false;
+    }
+
+
+    /**
+     * A shooting session of a competitor on the first lane to become idle.
+     */
+    private void shoot(int i) {
+        double arrival = readyAt[i];
+
+        int lane = 0;
+        for (int l = 1; l < laneIdleAt.length; l++)
+            if (laneIdleAt[l] < laneIdleAt[lane])
+                lane = l;
+
+        double start = Math.max(arrival, laneIdleAt[lane]);
+
+        // Same order as the ShootingRange: misses, penalties, shooting time.
+        double acc = random.nonNegativeNormal(params.get(Parameter.ACCURACY_MEAN),
+                params.get(Parameter.ACCURACY_STD_DEV)) * accuracyFactor[i];
+        if (panic[i])
+            acc *= params.get(Parameter.PANIC_LOSS_MODIFIER);
+
+        int sps = Biathlon.SHOTS_PER_SHOOTING;
+        int missed = Math.round(Helpers.clamp(sps - ((float) acc * sps), 0.0f, sps));
+
+        misses[i] += missed;
+        distanceToCover[i] += missed * params.get(Parameter.PENALTY_DISTANCE);
+
+        if (missed != 0) {
+            currentDesperation[i] = Helpers.clamp(currentDesperation[i] + missed
+                    * params.getInt(Parameter.DESPERATION_DELTA_PER_MISS), 0, 100);
+            speedFactor[i] += missed * params.get(Parameter.SPEED_DELTA_PER_MISS);
+            aimingFactor[i] += missed * params.get(Parameter.SHOOTING_TIME_DELTA_PER_MISS);
+            accuracyFactor[i] += missed * params.get(Parameter.ACCURACY_DELTA_PER_MISS);
+        }
+
+        double time = random.nonNegativeNormal(params.get(Parameter.SHOOTING_TIME_MEAN),
+                params.get(Parameter.SHOOTING_TIME_STD_DEV)) * aimingFactor[i];
+        if (panic[i])
+            time *= params.get(Parameter.PANIC_GAIN_MODIFIER);
+
+        laneIdleAt[lane] = start + time;
+        readyAt[i] = start + time;
+        atRange[i] = false;
+        --shootingsLeft[i];
+    }
+
+
+    /**
+     * Compares the finish time distribution of the engine against the DESMO-J
+     * model with the two-sample Kolmogorov-Smirnov test at the 1% level.
+     *
+     * @param replications
+     *            The number of replications of each model.
+     * @param lanes
+     *            The number of shooting range lanes, 0 for the single
+     *            <code>ShootingRange</code>.
+     * @return <code>true</code> if the distributions are indistinguishable.
+     */
+    public static boolean validate(int replications, int lanes) throws Exception {
+        ReplicationRunner runner = new ReplicationRunner(replications, Runtime.getRuntime().availableProcessors());
+        runner.setShootingLanes(lanes);
+
+        List<Double> reference = new ArrayList<Double>();
+
+        for (Results r : runner.run())
+            for (int i = 0; i < Biathlon.NUM_COMPETITORS; i++)
+                if (r.getFinishTime(i) != 0)
+                    reference.add((double) r.getFinishTime(i));
+
+        List<Double> fast = new ArrayList<Double>();
+
+        for (int r = 0; r < replications; r++) {
+            FastRace race = new FastRace(Biathlon.NUM_COMPETITORS, lanes, ReplicationRunner.seedFor(r));
+            race.run();
+
+            // Results truncate the finish times to whole seconds.
+            for (int i = 0; i < Biathlon.NUM_COMPETITORS; i++)
+                if (race.getFinishTime(i) != 0)
+                    fast.add(Math.floor(race.getFinishTime(i)));
+        }
+
+        double[] a = toSortedArray(reference);
+        double[] b = toSortedArray(fast);
+
+        double d = ksStatistic(a, b);
+        double critical = 1.628 * Math.sqrt((double) (a.length + b.length) / ((double) a.length * b.length));
+
+        System.out.println(String.format("DESMO-J \t n = %d \t mean = %.2f s \t std dev = %.2f s", a.length, mean(a),
+                stdDev(a)));
+        System.out.println(String.format("FastRace \t n = %d \t mean = %.2f s \t std dev = %.2f s", b.length, mean(b),
+                stdDev(b)));
+        System.out.println(String.format("KS statistic = %.4f \t critical value (1%%) = %.4f \t %s", d, critical,
+                d <= critical ? "PASS" : "FAIL"));
+
+        return d <= critical;
+    }
+
+
+    private static double[] toSortedArray(List<Double> values) {
+        double[] a = new double[values.size()];
+
+        for (int i = 0; i < a.length; i++)
+            a[i] = values.get(i);
+
+        Arrays.sort(a);
+        return a;
+    }
+
+
+    /**
+     * The two-sample Kolmogorov-Smirnov statistic of two sorted samples.
+     */
+    private static double ksStatistic(double[] a, double[] b) {
+        int i = 0, j = 0;
+        double d = 0.0;
+
+        while (i < a.length && j < b.length) {
+            double x = Math.min(a[i], b[j]);
+
+            while (i < a.length && a[i] <= x)
+                ++i;
+            while (j < b.length && b[j] <= x)
+                ++j;
+
+            d = Math.max(d, Math.abs((double) i / a.length - (double) j / b.length));
+        }
+
+        return d;
+    }
+
+
+    private static double mean(double[] a) {
+        double sum = 0.0;
+
+        for (double x : a)
+            sum += x;
+
+        return sum / a.length;
+    }
+
+
+    private static double stdDev(double[] a) {
+        double m = mean(a);
+        double sum = 0.0;
+
+        for (double x : a)
+            sum += (x - m) * (x - m);
+
+        return Math.sqrt(sum / (a.length - 1));
+    }
+
+
+    /**
+     * Entry point of the fast-path engine.
+     *
+     * @param args
+     *            The number of replications, optionally followed by
+     *            <i>validate</i> to compare against the DESMO-J model.
+     */
+    public static void main(String[] args) throws Exception {
+        int replications = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int lanes = Integer.getInteger("sim.lanes", 0);
+
+        if (args.length > 1 && args[1].equals("validate")) {
+            boolean ok = validate(replications, lanes);
+            System.exit(ok ? 0 : 1);
+        }
+
+        int[] wins = new int[Biathlon.NUM_COMPETITORS];
+        long start = System.nanoTime();
+
+        for (int r = 0; r < replications; r++) {
+            FastRace race = new FastRace(Biathlon.NUM_COMPETITORS, lanes, ReplicationRunner.seedFor(r));
+            race.run();
+
+            int winner = -1;
+
+            for (int i = 0; i < Biathlon.NUM_COMPETITORS; i++) {
+                double t = race.getFinishTime(i);
+                if (t != 0 && (winner == -1 || t < race.getFinishTime(winner)))
+                    winner = i;
+            }
+
+            if (winner != -1)
+                wins[winner]++;
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        for (int i = 0; i < wins.length; i++)
+            System.out.println(String.format("Competitor #%d \t %.4f", i + 1, (double) wins[i] / replications));
+
+        System.out.println(String.format("%d races in %.2f s (%.0f races/s).", replications, seconds, replications
+                / seconds));
+    }
+}
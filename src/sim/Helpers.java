@@ -1,13 +1,9 @@
 package sim;
 
-import java.util.Random;
-
 /**
  * A class containing several helper methods used across the simulation.
  */
 public class Helpers {
-    private static Random random = new Random(Biathlon.UNIVERSAL_SEED);
-
     /**
      * Clamps a value <code>i</code> to the [<code>low</code>, <code>high</code>] range.
      * @param i The value to be clampped.
@@ -34,11 +30,25 @@ public class Helpers {
     }
 
     /**
-     * Returns a pseudorandom number with uniform distribution.
-     * @return A uniformly distributed pseudorandom double value in [0, 1] range.
+     * Returns the standard normal probability density function.
+     * @param x The argument.
+     * @return The density at <code>x</code>.
      */
-    public static double rand() {
-        return random.nextDouble();
+    public static double normalPdf(double x) {
+        return Math.exp(-0.5 * x * x) / Math.sqrt(2.0 * Math.PI);
     }
 
+    /**
+     * Returns the standard normal cumulative distribution function.
+     * Uses the Zelen &amp; Severo approximation (absolute error below 7.5e-8).
+     * @param x The argument.
+     * @return The probability of a standard normal variable being lower than <code>x</code>.
+     */
+    public static double normalCdf(double x) {
+        double t = 1.0 / (1.0 + 0.2316419 * Math.abs(x));
+        double p = t * (0.319381530 + t * (-0.356563782 + t * (1.781477937 + t * (-1.821255978 + t * 1.330274429))));
+        double q = normalPdf(x) * p;
+
+        return x >= 0 ? 1.0 - q : q;
+    }
 }
@@ -0,0 +1,205 @@
+package sim;
+
+import java.util.BitSet;
+
+/**
+ * The biased sampling of the rare race outcomes.
+ * <p>
+ * The likehood of every <code>RandomEvent</code> may be scaled by a factor
+ * (through the likehood modifier of <code>RandomEvent.hasHappened()</code>)
+ * and the mean accuracy may be shifted, making the falls, the equipment
+ * problems, the misses and the panic much more frequent. Only the targeted
+ * competitors - those the estimated outcome is about - are biased; every one
+ * of them keeps the logarithm of the likelihood ratio of its samples, the true
+ * over the biased density, while the others draw unbiased samples with a
+ * ratio of 1. The product over the competitors
+ * (<code>Biathlon.getLikelihoodRatio()</code>) is the weight of the
+ * replication; the weighted means of the outcome indicators are unbiased
+ * estimates of their probabilities under the unbiased model. Biasing the whole
+ * field multiplies the variance of the log-weight by the field size and
+ * collapses the effective sample size.
+ */
+public class ImportanceSampling {
+
+    private static final RandomEvent[] EVENTS = RandomEvent.values();
+
+    private final double[] eventBias = new double[EVENTS.length];
+    private double accuracyShift = 0.0;
+
+    /**
+     * The biased competitors, <code>null</code> biases all of them.
+     */
+    private BitSet targets = null;
+
+    /**
+     * Per event likehood modifiers and the log-likelihood ratios of a step with and without an occurence.
+     */
+    private final double[] modifier = new double[EVENTS.length];
+    private final double[] logRatioHit = new double[EVENTS.length];
+    private final double[] logRatioMiss = new double[EVENTS.length];
+    private final double[] probability = new double[EVENTS.length];
+
+    /**
+     * The c-tor. Creates an unbiased setting.
+     */
+    public ImportanceSampling() {
+        // Unbiased: no modifiers and likelihood ratios of 1.
+        for (RandomEvent e : EVENTS) {
+            eventBias[e.ordinal()] = 1.0;
+            probability[e.ordinal()] = e.getProbability();
+        }
+    }
+
+    /**
+     * Scales the likehood of a random event.
+     * @param e The random event.
+     * @param factor The factor the mean likehood is multiplied by, 1 leaves the event unbiased.
+     */
+    public void setEventBias(RandomEvent e, double factor) {
+        int i = e.ordinal();
+        double p = e.getProbability();
+
+        eventBias[i] = factor;
+        modifier[i] = (factor - 1.0) * e.getLikehoodMean();
+        probability[i] = e.getProbability(modifier[i]);
+        logRatioHit[i] = Math.log(p / probability[i]);
+        logRatioMiss[i] = Math.log((1.0 - p) / (1.0 - probability[i]));
+    }
+
+    /**
+     * @param e The random event.
+     * @return The factor the mean likehood of the event is multiplied by.
+     */
+    public double getEventBias(RandomEvent e) {
+        return eventBias[e.ordinal()];
+    }
+
+    /**
+     * Shifts the mean accuracy, a negative shift makes the misses more frequent.
+     * @param accuracyShift The shift of <code>Parameter.ACCURACY_MEAN</code>, 0 by default.
+     */
+    public void setAccuracyShift(double accuracyShift) {
+        this.accuracyShift = accuracyShift;
+    }
+
+    /**
+     * @return The shift of the mean accuracy.
+     */
+    public double getAccuracyShift() {
+        return accuracyShift;
+    }
+
+    /**
+     * Biases only the chosen competitors, all of them by default.
+     * @param ids Internal IDs of the competitors.
+     */
+    public void setTargets(int... ids) {
+        targets = new BitSet();
+
+        for (int id : ids)
+            targets.set(id);
+    }
+
+    /**
+     * @param id Internal competitor ID.
+     * @return <code>true</code> if the samples of the competitor are biased.
+     */
+    public boolean isTarget(int id) {
+        return targets == null || targets.get(id);
+    }
+
+    /**
+     * @return The lowest ID of the biased competitors, 0 if all of them are biased.
+     */
+    public int getFirstTarget() {
+        return targets == null ? 0 : Math.max(0, targets.nextSetBit(0));
+    }
+
+    /**
+     * @return <code>true</code> if any of the samples is biased.
+     */
+    public boolean isSet() {
+        if (accuracyShift != 0.0)
+            return true;
+
+        for (double b : eventBias)
+            if (b != 1.0)
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Returns the likehood modifier of a random event.
+     * @param e The random event.
+     * @return The modifier passed to <code>RandomEvent.hasHappened()</code>.
+     */
+    public double getModifier(RandomEvent e) {
+        return modifier[e.ordinal()];
+    }
+
+    /**
+     * Returns the biased probabilities of the random events in a single step.
+     * @return The probabilities indexed by the ordinal.
+     */
+    public double[] getProbabilities() {
+        return probability.clone();
+    }
+
+    /**
+     * Returns the log-likelihood ratio of a step of a random event.
+     * @param e The random event.
+     * @param happened Set if the event occured in the step.
+     * @return The logarithm of the true over the biased probability.
+     */
+    public double eventLogRatio(RandomEvent e, boolean happened) {
+        return happened ? logRatioHit[e.ordinal()] : logRatioMiss[e.ordinal()];
+    }
+
+    /**
+     * Returns the log-likelihood ratio of an accuracy sample drawn from the shifted, non-negative normal
+     * distribution.
+     * @param x The sample.
+     * @param mean The true mean accuracy.
+     * @param stdDev The standard deviation of the accuracy.
+     * @return The logarithm of the true over the biased density.
+     */
+    public double accuracyLogRatio(double x, double mean, double stdDev) {
+        double biased = mean + accuracyShift;
+        double a = (x - mean) / stdDev;
+        double b = (x - biased) / stdDev;
+
+        // Both densities are truncated at 0, hence the normalizing terms.
+        return 0.5 * (b * b - a * a) + Math.log(Helpers.normalCdf(biased / stdDev) / Helpers.normalCdf(mean / stdDev));
+    }
+
+    /**
+     * Reads the setting from the system properties: <i>sim.is.fall</i>,
+     * <i>sim.is.slip</i>, <i>sim.is.problem_with_skis</i> (the likehood
+     * factors), <i>sim.is.accuracyShift</i> and <i>sim.is.targets</i> (comma
+     * separated, 1-based like the logs, competitor #1 by default).
+     * @return The setting.
+     */
+    public static ImportanceSampling fromSystemProperties() {
+        ImportanceSampling settings = new ImportanceSampling();
+
+        for (RandomEvent e : EVENTS) {
+            String factor = System.getProperty("sim.is." + e.name().toLowerCase());
+
+            if (factor != null)
+                settings.setEventBias(e, Double.parseDouble(factor));
+        }
+
+        settings.setAccuracyShift(Double.parseDouble(System.getProperty("sim.is.accuracyShift", "0")));
+
+        String[] names = System.getProperty("sim.is.targets", "1").split(",");
+        int[] ids = new int[names.length];
+
+        for (int i = 0; i < names.length; i++)
+            ids[i] = Integer.parseInt(names[i].trim()) - 1;
+
+        settings.setTargets(ids);
+
+        return settings;
+    }
+}
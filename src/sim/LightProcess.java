@@ -0,0 +1,138 @@
+package sim;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * A process run by the <code>ProcessScheduler</code>.
+ * <p>
+ * Mirrors the part of the DESMO-J <code>SimProcess</code> the race uses: the
+ * blocking <code>lifeCycle()</code> holds for a time span or passivates until
+ * another process activates it. The time is given in seconds.
+ */
+public abstract class LightProcess {
+
+    private final ProcessScheduler scheduler;
+    private final String name;
+
+    /**
+     * Released by the scheduler handing the control over to this process.
+     */
+    final Semaphore resume = new Semaphore(0);
+
+    /**
+     * The thread of the life cycle, <code>null</code> until the process runs first.
+     */
+    Thread thread = null;
+
+    /**
+     * The sequence number of the entry of the event list, -1 if not scheduled.
+     */
+    long sequence = -1;
+
+    boolean finished = false;
+
+    /**
+     * The c-tor.
+     * @param scheduler The scheduler running this process.
+     * @param name The name of this process.
+     */
+    protected LightProcess(ProcessScheduler scheduler, String name) {
+        this.scheduler = scheduler;
+        this.name = name;
+    }
+
+    /**
+     * Implements the life cycle of this process.
+     */
+    public abstract void lifeCycle();
+
+    /**
+     * Suspends the running process for a time span.
+     * @param span The time span in seconds.
+     */
+    public void hold(double span) {
+        scheduler.schedule(this, scheduler.presentTime() + span);
+        scheduler.yieldControl(this);
+    }
+
+    /**
+     * Suspends the running process until another process activates it.
+     */
+    public void passivate() {
+        scheduler.yieldControl(this);
+    }
+
+    /**
+     * Schedules this process at the current time, after the processes scheduled already.
+     */
+    public void activate() {
+        activate(0.0);
+    }
+
+    /**
+     * Schedules this process after a time span. As in DESMO-J, a scheduled process is left as it is.
+     * @param delay The time span in seconds.
+     */
+    public void activate(double delay) {
+        if (finished)
+            throw new IllegalStateException(String.format("%s has finished.", this));
+
+        if (!isScheduled())
+            scheduler.schedule(this, scheduler.presentTime() + delay);
+    }
+
+    /**
+     * Schedules this process right after the running one, before the other processes due now, as
+     * <code>SimProcess.activateAfter()</code> does with the current process. A scheduled process is left as it is.
+     * @param after The running process.
+     */
+    public void activateAfter(LightProcess after) {
+        if (finished)
+            throw new IllegalStateException(String.format("%s has finished.", this));
+
+        if (after != scheduler.current())
+            throw new IllegalStateException(String.format("%s is not running.", after));
+
+        if (!isScheduled())
+            scheduler.scheduleFirst(this, scheduler.presentTime());
+    }
+
+    /**
+     * Removes this process from the schedule.
+     */
+    public void cancel() {
+        sequence = -1;
+    }
+
+    /**
+     * @return <code>true</code> if this process is scheduled.
+     */
+    public boolean isScheduled() {
+        return sequence != -1;
+    }
+
+    /**
+     * @return <code>true</code> if the life cycle has ended.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return The current simulation time in seconds.
+     */
+    public double presentTime() {
+        return scheduler.presentTime();
+    }
+
+    /**
+     * @return The scheduler running this process.
+     */
+    public ProcessScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public String toString() {
+        return name;
+    }
+}
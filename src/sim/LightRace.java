@@ -0,0 +1,227 @@
+package sim;
+
+import java.util.ArrayDeque;
+
+/**
+ * The Biathlon race run by the <code>ProcessScheduler</code> instead of DESMO-J.
+ * <p>
+ * The life cycles of the competitors, the shooting range and the generator
+ * are those of <code>Competitor</code> (in the <code>STEP</code> movement
+ * mode, with the random events sampled every step), <code>ShootingRange</code>
+ * and <code>CompetitorGenerator</code>, written against
+ * <code>LightProcess</code>, activating each other in the same order. The
+ * competitors run the <code>CompetitorModel</code> of <code>Competitor</code>
+ * and draw from the same streams as in a <code>Biathlon</code> model of the
+ * same seed. With the processes on virtual threads a field of a hundred
+ * thousand competitors takes a few carrier threads instead of as many OS
+ * threads.
+ */
+public class LightRace {
+
+    private final ProcessScheduler scheduler;
+    private final Parameters params;
+    private final int numCompetitors;
+    private final long seed;
+
+    /**
+     * The competitors waiting for the shooting range and the idle shooting range, as the
+     * <code>ProcessQueue</code>s of <code>Biathlon</code>.
+     */
+    private final ArrayDeque<Runner> competitorsQueue = new ArrayDeque<Runner>();
+    private final ArrayDeque<Range> shootingRangeQueue = new ArrayDeque<Range>();
+
+    private final double[] finishTime;
+    private final int[] misses;
+
+    /**
+     * The c-tor.
+     *
+     * @param numCompetitors
+     *            The number of competitors.
+     * @param seed
+     *            The seed of the race.
+     */
+    public LightRace(int numCompetitors, long seed) {
+        this(numCompetitors, seed, new Parameters(), new ProcessScheduler());
+    }
+
+    /**
+     * The c-tor.
+     *
+     * @param numCompetitors
+     *            The number of competitors.
+     * @param seed
+     *            The seed of the race.
+     * @param params
+     *            The values of the model parameters.
+     * @param scheduler
+     *            A fresh scheduler running the race.
+     */
+    public LightRace(int numCompetitors, long seed, Parameters params, ProcessScheduler scheduler) {
+        this.numCompetitors = numCompetitors;
+        this.seed = seed;
+        this.params = params;
+        this.scheduler = scheduler;
+
+        finishTime = new double[numCompetitors];
+        misses = new int[numCompetitors];
+    }
+
+    /**
+     * Carries out the race, until everybody finishes or <code>Biathlon.SIMULATION_TIME</code> passes.
+     */
+    public void run() {
+        new Range().activate();
+        new Generator().activate();
+
+        try {
+            scheduler.run(Biathlon.SIMULATION_TIME);
+        } finally {
+            scheduler.finish();
+        }
+    }
+
+    /**
+     * Returns the finish time of a competitor.
+     *
+     * @param id
+     *            Internal competitor ID.
+     * @return The finish time in seconds or 0 if the competitor did not
+     *         finish.
+     */
+    public double getFinishTime(int id) {
+        return finishTime[id];
+    }
+
+    /**
+     * Returns the total number of misses of a competitor.
+     *
+     * @param id
+     *            Internal competitor ID.
+     * @return The number of missed shots.
+     */
+    public int getMisses(int id) {
+        return misses[id];
+    }
+
+    /**
+     * @return The scheduler running the race.
+     */
+    public ProcessScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * The life cycle of <code>CompetitorGenerator</code>.
+     */
+    private class Generator extends LightProcess {
+        Generator() {
+            super(scheduler, "BiathlonStart");
+        }
+
+        public void lifeCycle() {
+            for (int i = 0; i < numCompetitors; i++)
+                new Runner(i).activateAfter(this);
+        }
+    }
+
+    /**
+     * The life cycle of <code>ShootingRange</code>.
+     */
+    private class Range extends LightProcess {
+        Range() {
+            super(scheduler, "Shooting Range");
+        }
+
+        public void lifeCycle() {
+            while (true) {
+                if (competitorsQueue.isEmpty()) {
+                    shootingRangeQueue.add(this);
+                    passivate();
+                } else {
+                    Runner next = competitorsQueue.poll();
+
+                    next.model.addPenalties(next.model.computeShotsMissed());
+                    misses[next.model.getID()] = next.model.getMisses();
+                    next.activate(next.model.computeShootingTime());
+                }
+            }
+        }
+    }
+
+    /**
+     * The life cycle of <code>Competitor</code>.
+     */
+    private class Runner extends LightProcess {
+        private final CompetitorModel model;
+
+        Runner(int id) {
+            super(scheduler, String.format("Competitor #%d", id + 1));
+            model = new CompetitorModel(id, params, new CompetitorStreams(new RandomStream(seed, id)));
+        }
+
+        public void lifeCycle() {
+            while (!model.hasFinished()) {
+                hold(Biathlon.STEP_TIME);
+                shoot();
+                hold(model.step());
+            }
+
+            finishTime[model.getID()] = presentTime();
+        }
+
+        private void shoot() {
+            if (!model.atShootingRange())
+                return;
+
+            model.enterRange();
+            competitorsQueue.add(this);
+
+            if (!shootingRangeQueue.isEmpty()) {
+                shootingRangeQueue.poll().activateAfter(this);
+                passivate(); // Simulates the actual shooting.
+            }
+        }
+    }
+
+    /**
+     * Entry point of the light race. Prints the run time and the winner of every race.
+     *
+     * @param args
+     *            The number of races, optionally followed by the number of
+     *            competitors.
+     */
+    public static void main(String[] args) {
+        int races = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int competitors = args.length > 1 ? Integer.parseInt(args[1]) : Biathlon.NUM_COMPETITORS;
+
+        long switches = 0;
+        boolean virtual = false;
+        long start = System.nanoTime();
+
+        for (int r = 0; r < races; r++) {
+            LightRace race = new LightRace(competitors, ReplicationRunner.seedFor(r));
+            race.run();
+
+            int winner = -1;
+
+            for (int i = 0; i < competitors; i++) {
+                double t = race.getFinishTime(i);
+                if (t != 0 && (winner == -1 || t < race.getFinishTime(winner)))
+                    winner = i;
+            }
+
+            switches += race.getScheduler().getSwitches();
+            virtual = race.getScheduler().isVirtual();
+
+            if (races <= 10 && winner != -1)
+                System.out.println(String.format("Race %d \t Competitor #%d \t %.1f s", r + 1, winner + 1,
+                        race.getFinishTime(winner)));
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format("%d races of %d competitors in %.2f s on %s threads, %.0f switches/s.",
+                races, competitors, seconds, virtual ? "virtual" : "platform", switches / seconds));
+    }
+}
@@ -0,0 +1,30 @@
+package sim;
+
+/**
+ * Global logging levels of the simulation.
+ * <p>
+ * The level is read once from the <code>sim.log</code> system property:
+ * <i>off</i>, <i>info</i> or <i>debug</i> (the default). The flags are
+ * constants, so the JIT compiler removes the logging call sites guarded by a
+ * disabled level altogether, arguments included.
+ * 
+ * @see RaceLog
+ */
+public final class LogLevel {
+
+    private static final String level = System.getProperty("sim.log", "debug");
+
+    /**
+     * Set if the progress of the race is logged: start, shooting ranges and finish.
+     */
+    public static final boolean INFO = level.equals("info") || level.equals("debug");
+
+    /**
+     * Set if the details are logged as well: random events, desperation, penalties and factors.
+     */
+    public static final boolean DEBUG = level.equals("debug");
+
+
+    private LogLevel() {
+    }
+}
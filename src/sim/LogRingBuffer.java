@@ -0,0 +1,198 @@
+package sim;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free ring buffer of log records.
+ * <p>
+ * Any number of threads may put records into the buffer, but only a single
+ * thread may take them out. Every slot carries a sequence number which tells
+ * whether the slot is free or holds a published record, so neither side ever
+ * takes a lock. The records are stored in parallel arrays, hence putting a
+ * record into the buffer does not allocate.
+ * 
+ * @see AsyncLogWriter
+ */
+public class LogRingBuffer {
+
+    /**
+     * Record type of the plain text messages.
+     */
+    public static final int TEXT = -1;
+
+    /**
+     * Record type of the requests to close a logger.
+     */
+    public static final int CLOSE = -2;
+
+    /**
+     * Receives the records taken out of the buffer.
+     */
+    public interface Consumer {
+        /**
+         * Consumes a single record.
+         * 
+         * @param target
+         *            The logger the record belongs to.
+         * @param simTime
+         *            Simulation time of the record in seconds.
+         * @param type
+         *            <code>TEXT</code>, <code>CLOSE</code> or an
+         *            <code>EventType</code> code.
+         * @param competitor
+         *            Internal ID of the competitor.
+         * @param a
+         *            Integer payload.
+         * @param b
+         *            Integer payload.
+         * @param value
+         *            Floating point payload.
+         * @param message
+         *            The message of a <code>TEXT</code> record.
+         */
+        void consume(Logger target, long simTime, int type, int competitor, int a, int b, double value,
+                String message);
+    }
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final Logger[] targets;
+    private final long[] times;
+    private final int[] types;
+    private final int[] competitors;
+    private final int[] as;
+    private final int[] bs;
+    private final double[] values;
+    private final String[] messages;
+
+    /**
+     * Position of the next slot to be claimed by a producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Position of the next slot to be read by the consumer.
+     */
+    private long head = 0;
+
+
+    /**
+     * Creates a new, empty buffer.
+     * 
+     * @param capacity
+     *            The capacity of the buffer, has to be a power of two.
+     */
+    public LogRingBuffer(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0)
+            throw new IllegalArgumentException("Capacity has to be a power of two.");
+
+        mask = capacity - 1;
+        sequences = new AtomicLongArray(capacity);
+        targets = new Logger[capacity];
+        times = new long[capacity];
+        types = new int[capacity];
+        competitors = new int[capacity];
+        as = new int[capacity];
+        bs = new int[capacity];
+        values = new double[capacity];
+        messages = new String[capacity];
+
+        for (int i = 0; i < capacity; i++)
+            sequences.set(i, i);
+    }
+
+
+    /**
+     * Puts a record into the buffer. Safe to call from any thread.
+     * 
+     * @param target
+     *            The logger the record belongs to.
+     * @param simTime
+     *            Simulation time of the record in seconds.
+     * @param type
+     *            <code>TEXT</code>, <code>CLOSE</code> or an
+     *            <code>EventType</code> code.
+     * @param competitor
+     *            Internal ID of the competitor.
+     * @param a
+     *            Integer payload.
+     * @param b
+     *            Integer payload.
+     * @param value
+     *            Floating point payload.
+     * @param message
+     *            The message of a <code>TEXT</code> record.
+     * @return <code>false</code> if the buffer is full, otherwise
+     *         <code>true</code>.
+     */
+    public boolean offer(Logger target, long simTime, int type, int competitor, int a, int b, double value,
+            String message) {
+        long pos = tail.get();
+
+        while (true) {
+            int slot = (int) (pos & mask);
+            long diff = sequences.get(slot) - pos;
+
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    targets[slot] = target;
+                    times[slot] = simTime;
+                    types[slot] = type;
+                    competitors[slot] = competitor;
+                    as[slot] = a;
+                    bs[slot] = b;
+                    values[slot] = value;
+                    messages[slot] = message;
+                    sequences.lazySet(slot, pos + 1); // Publishes the record.
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+
+            pos = tail.get();
+        }
+    }
+
+
+    /**
+     * Takes the published records out of the buffer. May be called only by the
+     * consumer thread.
+     * 
+     * @param consumer
+     *            Receives the records in the order they were published.
+     * @param max
+     *            The maximal number of records to take.
+     * @return The number of records taken.
+     */
+    public int drain(Consumer consumer, int max) {
+        int n = 0;
+
+        while (n < max) {
+            int slot = (int) (head & mask);
+
+            if (sequences.get(slot) != head + 1)
+                break;
+
+            Logger target = targets[slot];
+            long simTime = times[slot];
+            int type = types[slot];
+            int competitor = competitors[slot];
+            int a = as[slot];
+            int b = bs[slot];
+            double value = values[slot];
+            String message = messages[slot];
+
+            targets[slot] = null;
+            messages[slot] = null;
+            sequences.lazySet(slot, head + mask + 1); // Frees the slot.
+            ++head;
+            ++n;
+
+            consumer.consume(target, simTime, type, competitor, a, b, value, message);
+        }
+
+        return n;
+    }
+}
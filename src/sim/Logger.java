@@ -8,6 +8,8 @@ import java.io.IOException;
 /**
  * The <code>Logger</code> class provides a convenient way of creating and
  * managing a log file.
+ * <p>
+ * The records are written asynchronously by the <code>AsyncLogWriter</code>.
  * 
  * @author Pawel Kleczek
  * @version 0.1
@@ -18,25 +20,68 @@ public class Logger {
 
     private BufferedWriter writer;
 
+    /**
+     * Set if the writer holds records which were not flushed yet. Used by the
+     * <code>AsyncLogWriter</code> thread only.
+     */
+    boolean dirty = false;
+
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * The model providing the simulation time.
+     */
+    private final Biathlon model;
+
     /**
      * Name of the log file (may also include a file extension).
      */
     private final String logname;
 
+    /**
+     * Set if the structured records are tagged with the name of the competitor.
+     */
+    private final boolean tagged;
+
 
     /**
      * Creates a new <code>Logger</code> instance and associates it with a newly
      * created file specified by the given filename
      * <p>
-     * The file is created in the <i>log</i> directory. Any previous log with
-     * the given name is overwritten.
+     * The file is created in the log directory of the model. Any previous log
+     * with the given name is overwritten. If the model has logging disabled no
+     * file is created and all the writes are ignored.
      * 
+     * @param model
+     *            The model providing the log directory and simulation time.
      * @param filename
      *            Name of the log file.
      */
-    public Logger(String filename) {
+    public Logger(Biathlon model, String filename) {
+        this(model, filename, false);
+    }
+
+    /**
+     * Creates a new <code>Logger</code> instance, optionally shared by several
+     * competitors.
+     * 
+     * @param model
+     *            The model providing the log directory and simulation time.
+     * @param filename
+     *            Name of the log file.
+     * @param tagged
+     *            Set if the structured records should be tagged with the name
+     *            of the competitor.
+     */
+    public Logger(Biathlon model, String filename, boolean tagged) {
+        this.model = model;
+        this.tagged = tagged;
         logname = filename;
-        File logfile = new File("log/" + filename);
+
+        if (model.getLogDirectory() == null)
+            return;
+
+        File logfile = new File(model.getLogDirectory(), filename);
 
         try {
             if (logfile.exists())
@@ -63,15 +108,26 @@ public class Logger {
         if (writer == null)
             return;
 
-        try {
-            long mins = simTime / 60;
-            long secs = simTime % 60;
+        AsyncLogWriter.getInstance().submit(this, simTime, LogRingBuffer.TEXT, 0, 0, 0, 0.0, str);
+    }
 
-            writer.write(String.format("%02d:%02d \t%s\n", mins, secs, str));
-            writer.flush();
-        } catch (IOException e) {
-            System.err.println(String.format("Error while writing to the log (%s).", logname));
-        }
+    /**
+     * Writes a structured record at a given time. The record is formatted
+     * lazily by the <code>EventFormatter</code>.
+     * 
+     * @param simTime Exact simulation time in seconds.
+     * @param type The type of the record.
+     * @param competitor Internal ID of the competitor.
+     * @param a Integer payload.
+     * @param b Integer payload.
+     * @param value Floating point payload.
+     */
+    public void log(long simTime, EventType type, int competitor, int a, int b, double value) {
+
+        if (writer == null)
+            return;
+
+        AsyncLogWriter.getInstance().submit(this, simTime, type.code, competitor, a, b, value, null);
     }
 
     /**
@@ -80,16 +136,88 @@ public class Logger {
      * @param str String to be written.
      */
     public void log(String str) {
-        long simTime = Biathlon.getInstance().presentTime().getTimeTruncated();
+        long simTime = model.presentTime().getTimeTruncated();
         log(simTime, str);
     }
 
+    /**
+     * Closes the log file once all the records logged so far are written.
+     */
+    public void close() {
+
+        if (writer == null)
+            return;
 
-    @Override
-    protected void finalize() throws Throwable {
-        // Clean-up.
-        writer.close();
-        super.finalize();
+        AsyncLogWriter.getInstance().submit(this, 0, LogRingBuffer.CLOSE, 0, 0, 0, 0.0, null);
+    }
+
+
+    /**
+     * Formats and writes a record. Called by the <code>AsyncLogWriter</code> thread only.
+     */
+    void write(long simTime, String str) {
+        line.setLength(0);
+        format(line, simTime, str);
+        writeLine();
+    }
+
+    /**
+     * Formats and writes a structured record. Called by the <code>AsyncLogWriter</code> thread only.
+     */
+    void write(long simTime, EventType type, int competitor, int a, int b, double value) {
+        line.setLength(0);
+        EventFormatter.format(line, simTime, type, competitor, a, b, value, tagged);
+        writeLine();
+    }
+
+    private void writeLine() {
+        try {
+            writer.append(line);
+        } catch (IOException e) {
+            System.err.println(String.format("Error while writing to the log (%s).", logname));
+        }
+    }
+
+    /**
+     * Formats a log line, the time is written as <i>mm:ss</i>.
+     * 
+     * @param line The buffer the line is appended to.
+     * @param simTime Exact simulation time in seconds.
+     * @param str String to be written.
+     */
+    static void format(StringBuilder line, long simTime, String str) {
+        long mins = simTime / 60;
+        long secs = simTime % 60;
+
+        if (mins < 10)
+            line.append('0');
+        line.append(mins).append(':');
+
+        if (secs < 10)
+            line.append('0');
+        line.append(secs).append(" \t").append(str).append('\n');
+    }
+
+    /**
+     * Flushes the log file. Called by the <code>AsyncLogWriter</code> thread only.
+     */
+    void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println(String.format("Error while writing to the log (%s).", logname));
+        }
+    }
+
+    /**
+     * Closes the log file. Called by the <code>AsyncLogWriter</code> thread only.
+     */
+    void closeWriter() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println(String.format("Error while closing the log (%s).", logname));
+        }
     }
 
 }
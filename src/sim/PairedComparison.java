@@ -0,0 +1,279 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares two scenarios (values of the model parameters) replication by replication.
+ * <p>
+ * The replication <i>r</i> of both scenarios uses the same seed, and the
+ * competitors draw from dedicated streams per purpose
+ * (<code>CompetitorStreams</code>), so the scenarios see the same random
+ * numbers - the common random numbers. The differences between the paired
+ * replications vary much less than the results of independent runs, so their
+ * mean converges with several times fewer replications. Optionally every
+ * observation is an antithetic replication pair, averaged.
+ */
+public class PairedComparison {
+
+    private final ReplicationRunner first;
+    private final ReplicationRunner second;
+    private final int observations;
+    private final int threads;
+    private final int numCompetitors;
+
+    private boolean antithetic = false;
+
+    private Tally tally;
+
+    /**
+     * Per competitor statistics of the observations.
+     */
+    private static class Tally {
+        final RunningStats[] firstFinish;
+        final RunningStats[] secondFinish;
+        final RunningStats[] finishDifference;
+        final RunningStats[] winDifference;
+        final RunningStats[] missesDifference;
+
+        Tally(int numCompetitors) {
+            firstFinish = create(numCompetitors);
+            secondFinish = create(numCompetitors);
+            finishDifference = create(numCompetitors);
+            winDifference = create(numCompetitors);
+            missesDifference = create(numCompetitors);
+        }
+
+        /**
+         * Adds an observation, made of one or two (an antithetic pair) replications of each scenario.
+         */
+        void add(Results[] a, Results[] b) {
+            for (int i = 0; i < finishDifference.length; i++) {
+                double finishA = 0, finishB = 0, winA = 0, winB = 0, missesA = 0, missesB = 0;
+                boolean finished = true;
+
+                for (int k = 0; k < a.length; k++) {
+                    finished &= a[k].getFinishTime(i) != 0 && b[k].getFinishTime(i) != 0;
+                    finishA += a[k].getFinishTime(i);
+                    finishB += b[k].getFinishTime(i);
+                    winA += a[k].getWinner() == i ? 1 : 0;
+                    winB += b[k].getWinner() == i ? 1 : 0;
+                    missesA += a[k].getMisses(i);
+                    missesB += b[k].getMisses(i);
+                }
+
+                // The finish times are compared only if the competitor finished every race of the observation.
+                if (finished) {
+                    firstFinish[i].add(finishA / a.length);
+                    secondFinish[i].add(finishB / a.length);
+                    finishDifference[i].add((finishA - finishB) / a.length);
+                }
+
+                winDifference[i].add((winA - winB) / a.length);
+                missesDifference[i].add((missesA - missesB) / a.length);
+            }
+        }
+
+        void merge(Tally other) {
+            for (int i = 0; i < finishDifference.length; i++) {
+                firstFinish[i].merge(other.firstFinish[i]);
+                secondFinish[i].merge(other.secondFinish[i]);
+                finishDifference[i].merge(other.finishDifference[i]);
+                winDifference[i].merge(other.winDifference[i]);
+                missesDifference[i].merge(other.missesDifference[i]);
+            }
+        }
+
+        private static RunningStats[] create(int n) {
+            RunningStats[] stats = new RunningStats[n];
+
+            for (int i = 0; i < n; i++)
+                stats[i] = new RunningStats();
+
+            return stats;
+        }
+    }
+
+    /**
+     * The c-tor.
+     * @param first The parameters of the first scenario.
+     * @param second The parameters of the second scenario.
+     * @param observations The number of paired observations.
+     * @param threads The size of the thread pool.
+     */
+    public PairedComparison(Parameters first, Parameters second, int observations, int threads) {
+        this(first, second, observations, threads, Biathlon.NUM_COMPETITORS, 0);
+    }
+
+    /**
+     * The c-tor.
+     * @param first The parameters of the first scenario.
+     * @param second The parameters of the second scenario.
+     * @param observations The number of paired observations.
+     * @param threads The size of the thread pool.
+     * @param numCompetitors The number of competitors.
+     * @param shootingLanes The number of shooting range lanes, 0 for the single-lane <code>ShootingRange</code>.
+     */
+    public PairedComparison(Parameters first, Parameters second, int observations, int threads,
+            int numCompetitors, int shootingLanes) {
+        this.observations = observations;
+        this.threads = threads;
+        this.numCompetitors = numCompetitors;
+
+        this.first = createRunner(first, numCompetitors, shootingLanes);
+        this.second = createRunner(second, numCompetitors, shootingLanes);
+    }
+
+    /**
+     * Makes every observation an antithetic replication pair, off by default.
+     * @param antithetic Set for the antithetic pairs.
+     */
+    public void setAntithetic(boolean antithetic) {
+        this.antithetic = antithetic;
+        first.setAntithetic(antithetic);
+        second.setAntithetic(antithetic);
+    }
+
+    /**
+     * Carries out the paired replications of both scenarios.
+     * @throws InterruptedException If interrupted while waiting for the replications.
+     * @throws ExecutionException If a replication failed.
+     */
+    public void run() throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final AtomicInteger next = new AtomicInteger();
+        final int perObservation = antithetic ? 2 : 1;
+
+        tally = new Tally(numCompetitors);
+
+        try {
+            List<Future<Tally>> futures = new ArrayList<Future<Tally>>(threads);
+
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(new Callable<Tally>() {
+                    public Tally call() {
+                        Tally local = new Tally(numCompetitors);
+                        Results[] a = new Results[perObservation];
+                        Results[] b = new Results[perObservation];
+                        int observation;
+
+                        while ((observation = next.getAndIncrement()) < observations) {
+                            for (int k = 0; k < perObservation; k++) {
+                                int replication = observation * perObservation + k;
+                                a[k] = first.runReplication(replication);
+                                b[k] = second.runReplication(replication);
+                            }
+
+                            local.add(a, b);
+                        }
+
+                        return local;
+                    }
+                }));
+            }
+
+            for (Future<Tally> f : futures)
+                tally.merge(f.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the differences of the finish times (first - second) of a competitor, over the observations
+     * the competitor finished in both scenarios.
+     * @param id Internal competitor ID.
+     * @return The statistics of the differences in seconds.
+     */
+    public RunningStats getFinishTimeDifference(int id) {
+        return tally.finishDifference[id];
+    }
+
+    /**
+     * Returns the differences of the wins (first - second) of a competitor. The mean estimates the difference of
+     * the win probabilities.
+     * @param id Internal competitor ID.
+     * @return The statistics of the differences.
+     */
+    public RunningStats getWinDifference(int id) {
+        return tally.winDifference[id];
+    }
+
+    /**
+     * Returns the differences of the total misses (first - second) of a competitor.
+     * @param id Internal competitor ID.
+     * @return The statistics of the differences in shots.
+     */
+    public RunningStats getMissesDifference(int id) {
+        return tally.missesDifference[id];
+    }
+
+    /**
+     * Returns the variance reduction of the finish time difference of a competitor: the variance of the
+     * difference of independent runs over the variance of the paired difference.
+     * @param id Internal competitor ID.
+     * @return The factor by which the paired comparison needs fewer observations for the same precision.
+     */
+    public double getVarianceReduction(int id) {
+        double paired = tally.finishDifference[id].getVariance();
+        double independent = tally.firstFinish[id].getVariance() + tally.secondFinish[id].getVariance();
+
+        return paired > 0 ? independent / paired : Double.POSITIVE_INFINITY;
+    }
+
+    private static ReplicationRunner createRunner(Parameters parameters, int numCompetitors, int shootingLanes) {
+        ReplicationRunner runner = new ReplicationRunner(0, 1);
+        runner.setParameters(parameters);
+        runner.setNumCompetitors(numCompetitors);
+        runner.setShootingLanes(shootingLanes);
+        return runner;
+    }
+
+    /**
+     * Entry point of the comparison. Prints the mean differences, their 95% confidence half-widths and the
+     * variance reductions per competitor.
+     * @param args The number of observations followed by NAME=first:second parameter values.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: PairedComparison <observations> NAME=first:second ...");
+            System.exit(1);
+        }
+
+        int observations = Integer.parseInt(args[0]);
+        Parameters first = new Parameters();
+        Parameters second = new Parameters();
+
+        for (int i = 1; i < args.length; i++) {
+            String[] kv = args[i].split("=");
+            String[] values = kv[1].split(":");
+            Parameter p = Parameter.valueOf(kv[0]);
+
+            first.set(p, Double.parseDouble(values[0]));
+            second.set(p, Double.parseDouble(values[1]));
+        }
+
+        PairedComparison comparison = new PairedComparison(first, second, observations,
+                Runtime.getRuntime().availableProcessors(), Biathlon.NUM_COMPETITORS,
+                Integer.getInteger("sim.lanes", 0));
+        comparison.setAntithetic(Boolean.getBoolean("sim.antithetic"));
+        comparison.run();
+
+        for (int i = 0; i < Biathlon.NUM_COMPETITORS; i++) {
+            RunningStats d = comparison.getFinishTimeDifference(i);
+            RunningStats w = comparison.getWinDifference(i);
+
+            System.out.println(String.format("Competitor #%d \t finish %+.2f s +- %.2f \t wins %+.4f +- %.4f \t"
+                    + " variance reduction %.1fx", i + 1, d.getMean(), 1.96 * d.getStdError(), w.getMean(),
+                    1.96 * w.getStdError(), comparison.getVarianceReduction(i)));
+        }
+
+        System.exit(0);
+    }
+}
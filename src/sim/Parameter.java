@@ -0,0 +1,46 @@
+package sim;
+
+/**
+ * The tunable parameters of the model, see <code>Parameters</code>.
+ * <p>
+ * The defaults are the <code>Biathlon</code> constants of the same name. The
+ * structure of the race (the distance, the number of competitors, shooting
+ * ranges and shots, the step and the simulation time) is not tunable. The
+ * integer parameters (desperation and panic threshold) are rounded down.
+ */
+public enum Parameter {
+    PENALTY_DISTANCE(Biathlon.PENALTY_DISTANCE),
+    ACCURACY_MEAN(Biathlon.ACCURACY_MEAN),
+    ACCURACY_STD_DEV(Biathlon.ACCURACY_STD_DEV),
+    ACCURACY_FACTOR_DELTA(Biathlon.ACCURACY_FACTOR_DELTA),
+    ACCURACY_DELTA_PER_MISS(Biathlon.ACCURACY_DELTA_PER_MISS),
+    SHOOTING_TIME_MEAN(Biathlon.SHOOTING_TIME_MEAN),
+    SHOOTING_TIME_STD_DEV(Biathlon.SHOOTING_TIME_STD_DEV),
+    SHOOTING_TIME_FACTOR_DELTA(Biathlon.SHOOTING_TIME_FACTOR_DELTA),
+    SHOOTING_TIME_DELTA_PER_MISS(Biathlon.SHOOTING_TIME_DELTA_PER_MISS),
+    MIN_SPEED(Biathlon.MIN_SPEED),
+    MAX_SPEED(Biathlon.MAX_SPEED),
+    SPEED_MEAN(Biathlon.SPEED_MEAN),
+    SPEED_STD_DEV(Biathlon.SPEED_STD_DEV),
+    SPEED_FACTOR_DELTA(Biathlon.SPEED_FACTOR_DELTA),
+    SPEED_DELTA_PER_MISS(Biathlon.SPEED_DELTA_PER_MISS),
+    MIN_DESPERATION(Biathlon.MIN_DESPERATION),
+    MAX_DESPERATION(Biathlon.MAX_DESPERATION),
+    DESPERATION_DELTA_PER_MISS(Biathlon.DESPERATION_DELTA_PER_MISS),
+    PANIC_THRESHOLD(Biathlon.PANIC_THRESHOLD),
+    PANIC_GAIN_MODIFIER(Biathlon.PANIC_GAIN_MODIFIER),
+    PANIC_LOSS_MODIFIER(Biathlon.PANIC_LOSS_MODIFIER);
+
+    private final double defaultValue;
+
+    private Parameter(double defaultValue) {
+        this.defaultValue = defaultValue;
+    }
+
+    /**
+     * @return The default value, the <code>Biathlon</code> constant.
+     */
+    public double getDefault() {
+        return defaultValue;
+    }
+}
@@ -0,0 +1,447 @@
+package sim;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a study over a design of model parameter values.
+ * <p>
+ * The design is a full factorial grid or a Latin hypercube over the chosen
+ * <code>Parameter</code> ranges. Every point is simulated for a number of
+ * replications; the point x replication tasks are split recursively over a
+ * work-stealing <code>ForkJoinPool</code>, so uneven races balance out. The
+ * replication <i>r</i> uses the same seed at every point (common random
+ * numbers), so the differences between the points are not drowned in noise.
+ * The aggregates of a point are handed to a <code>Listener</code> as soon as
+ * all of its replications are done, nothing else is kept in memory.
+ * <p>
+ * By default the points are simulated with the <code>FastRace</code> engine,
+ * <i>-Dsim.engine=desmoj</i> selects the DESMO-J model.
+ */
+public class ParameterSweep {
+
+    /**
+     * Simulation engines of the sweep.
+     */
+    public enum Engine {
+        /** The struct-of-arrays <code>FastRace</code>. */
+        FAST,
+        /** The DESMO-J model, one <code>Experiment</code> per replication. */
+        DESMOJ
+    }
+
+    /**
+     * Receives the aggregates of the points, possibly from many threads at once.
+     */
+    public interface Listener {
+        /**
+         * Called once all the replications of a point are done.
+         * @param index The index of the point in the design.
+         * @param point The parameter values.
+         * @param aggregate The aggregated results.
+         */
+        void pointDone(int index, Parameters point, Aggregate aggregate);
+    }
+
+    /**
+     * The results of all the replications of a point.
+     */
+    public static class Aggregate {
+        private int replications = 0;
+        private final RunningStats finishTime = new RunningStats();
+        private final RunningStats winningTime = new RunningStats();
+        private long misses = 0;
+
+        /**
+         * Accumulates a single race.
+         * @param finishTimes The finish times of the competitors, 0 if a competitor did not finish.
+         * @param misses The misses of the competitors.
+         * @return The number of replications accumulated so far.
+         */
+        synchronized int add(double[] finishTimes, int[] misses) {
+            double winner = 0.0;
+
+            for (int i = 0; i < finishTimes.length; i++) {
+                double t = finishTimes[i];
+                this.misses += misses[i];
+
+                if (t != 0) {
+                    finishTime.add(t);
+
+                    if (winner == 0.0 || t < winner) winner = t;
+                }
+            }
+
+            if (winner != 0.0) winningTime.add(winner);
+
+            return ++replications;
+        }
+
+        /**
+         * @return The number of replications accumulated.
+         */
+        public synchronized int getReplications() {
+            return replications;
+        }
+
+        /**
+         * @return The mean finish time of the finishers in seconds.
+         */
+        public synchronized double getMeanFinishTime() {
+            return finishTime.getMean();
+        }
+
+        /**
+         * @return The standard deviation of the finish time of the finishers in seconds.
+         */
+        public synchronized double getFinishTimeStdDev() {
+            return finishTime.getStdDev();
+        }
+
+        /**
+         * @return The mean finish time of the winners in seconds.
+         */
+        public synchronized double getMeanWinningTime() {
+            return winningTime.getMean();
+        }
+
+        /**
+         * @return The standard deviation of the finish time of the winners in seconds.
+         */
+        public synchronized double getWinningTimeStdDev() {
+            return winningTime.getStdDev();
+        }
+
+        /**
+         * @param numCompetitors The number of competitors.
+         * @return The mean number of misses per competitor and race.
+         */
+        public synchronized double getMeanMisses(int numCompetitors) {
+            return replications > 0 ? (double) misses / ((long) replications * numCompetitors) : 0.0;
+        }
+
+        /**
+         * @param numCompetitors The number of competitors.
+         * @return The fraction of the competitors finishing within <code>Biathlon.SIMULATION_TIME</code>.
+         */
+        public synchronized double getFinishRate(int numCompetitors) {
+            return replications > 0 ? (double) finishTime.getCount() / ((long) replications * numCompetitors) : 0.0;
+        }
+    }
+
+    private final int replications;
+    private final int threads;
+
+    private final List<Parameter> parameters = new ArrayList<Parameter>();
+    private final List<double[]> ranges = new ArrayList<double[]>();
+
+    private Engine engine = Engine.FAST;
+    private int numCompetitors = Biathlon.NUM_COMPETITORS;
+    private int shootingLanes = 0;
+    private Parameters base = new Parameters();
+
+    /**
+     * The c-tor.
+     * @param replications The number of replications per point.
+     * @param threads The parallelism of the pool.
+     */
+    public ParameterSweep(int replications, int threads) {
+        this.replications = replications;
+        this.threads = threads;
+    }
+
+    /**
+     * Adds a swept parameter.
+     * @param p The parameter.
+     * @param low The lowest value.
+     * @param high The highest value.
+     */
+    public void addRange(Parameter p, double low, double high) {
+        parameters.add(p);
+        ranges.add(new double[] { low, high });
+    }
+
+    /**
+     * Sets the values of the parameters which are not swept, the defaults by default.
+     * @param base The parameter values.
+     */
+    public void setBase(Parameters base) {
+        this.base = base;
+    }
+
+    /**
+     * Sets the simulation engine, <code>FAST</code> by default.
+     * @param engine The engine.
+     */
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Sets the number of competitors, <code>Biathlon.NUM_COMPETITORS</code> by default.
+     * @param numCompetitors The number of competitors.
+     */
+    public void setNumCompetitors(int numCompetitors) {
+        this.numCompetitors = numCompetitors;
+    }
+
+    /**
+     * Sets the number of shooting range lanes, 0 (the single <code>ShootingRange</code>, as in
+     * <code>ReplicationRunner</code>) by default. Both engines simulate the same range.
+     * @param shootingLanes The number of lanes.
+     * @throws IllegalArgumentException If the number of lanes is negative.
+     */
+    public void setShootingLanes(int shootingLanes) {
+        if (shootingLanes < 0)
+            throw new IllegalArgumentException(String.format("The number of lanes can not be negative (%d).",
+                    shootingLanes));
+
+        this.shootingLanes = shootingLanes;
+    }
+
+    /**
+     * Creates a full factorial design, <code>levels^k</code> points evenly spaced over the ranges.
+     * @param levels The number of levels per parameter.
+     * @return The points of the design.
+     */
+    public List<Parameters> grid(int levels) {
+        List<Parameters> points = new ArrayList<Parameters>();
+        int k = parameters.size();
+        int[] level = new int[k];
+
+        do {
+            Parameters point = new Parameters(base);
+
+            for (int j = 0; j < k; j++) {
+                double[] r = ranges.get(j);
+                double f = levels > 1 ? (double) level[j] / (levels - 1) : 0.5;
+                point.set(parameters.get(j), r[0] + f * (r[1] - r[0]));
+            }
+
+            points.add(point);
+        } while (nextLevel(level, levels));
+
+        return points;
+    }
+
+    /**
+     * Creates a Latin hypercube design: every parameter range is split into
+     * <code>n</code> strata and every stratum is sampled exactly once.
+     * @param n The number of points.
+     * @param seed The seed of the design.
+     * @return The points of the design.
+     */
+    public List<Parameters> latinHypercube(int n, long seed) {
+        RandomStream random = new RandomStream(seed);
+        List<Parameters> points = new ArrayList<Parameters>(n);
+
+        for (int i = 0; i < n; i++)
+            points.add(new Parameters(base));
+
+        int[] strata = new int[n];
+
+        for (int j = 0; j < parameters.size(); j++) {
+            double[] r = ranges.get(j);
+
+            for (int i = 0; i < n; i++)
+                strata[i] = i;
+
+            // Fisher-Yates shuffle of the strata.
+            for (int i = n - 1; i > 0; i--) {
+                int s = random.nextInt(i + 1);
+                int t = strata[i];
+                strata[i] = strata[s];
+                strata[s] = t;
+            }
+
+            for (int i = 0; i < n; i++) {
+                double f = (strata[i] + random.nextDouble()) / n;
+                points.get(i).set(parameters.get(j), r[0] + f * (r[1] - r[0]));
+            }
+        }
+
+        return points;
+    }
+
+    /**
+     * Simulates all the replications of all the points.
+     * @param points The design.
+     * @param listener Receives the aggregates of the points.
+     */
+    public void run(List<Parameters> points, Listener listener) {
+        Aggregate[] aggregates = new Aggregate[points.size()];
+
+        for (int i = 0; i < aggregates.length; i++)
+            aggregates[i] = new Aggregate();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        try {
+            pool.invoke(new Task(points, aggregates, listener, 0, (long) points.size() * replications));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Simulates a single replication of a point.
+     * @param point The parameter values.
+     * @param replication The index of the replication.
+     * @param aggregate The aggregate the results are added to.
+     * @return The number of replications of the point accumulated so far.
+     */
+    private int simulate(Parameters point, int replication, Aggregate aggregate) {
+        double[] finishTimes = new double[numCompetitors];
+        int[] misses = new int[numCompetitors];
+        long seed = ReplicationRunner.seedFor(replication); // Common random numbers.
+
+        if (engine == Engine.FAST) {
+            FastRace race = new FastRace(numCompetitors, shootingLanes, seed, point);
+            race.run();
+
+            for (int i = 0; i < numCompetitors; i++) {
+                finishTimes[i] = race.getFinishTime(i);
+                misses[i] = race.getMisses(i);
+            }
+        } else {
+            ReplicationRunner runner = new ReplicationRunner(1, 1);
+            runner.setNumCompetitors(numCompetitors);
+            runner.setShootingLanes(shootingLanes);
+            runner.setParameters(point);
+
+            Results results = runner.runReplication(replication);
+
+            for (int i = 0; i < numCompetitors; i++) {
+                finishTimes[i] = results.getFinishTime(i);
+                misses[i] = results.getMisses(i);
+            }
+        }
+
+        return aggregate.add(finishTimes, misses);
+    }
+
+    /**
+     * A range of the point x replication tasks, split in halves until small enough.
+     */
+    private class Task extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The number of tasks simulated without further splitting.
+         */
+        private static final int THRESHOLD = 4;
+
+        // A task is never serialized, the pool only runs it.
+        private final transient List<Parameters> points;
+        private final transient Aggregate[] aggregates;
+        private final transient Listener listener;
+        private final long from;
+        private final long to;
+
+        Task(List<Parameters> points, Aggregate[] aggregates, Listener listener, long from, long to) {
+            this.points = points;
+            this.aggregates = aggregates;
+            this.listener = listener;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > THRESHOLD) {
+                long mid = (from + to) >>> 1;
+                invokeAll(new Task(points, aggregates, listener, from, mid), new Task(points, aggregates, listener,
+                        mid, to));
+                return;
+            }
+
+            for (long t = from; t < to; t++) {
+                int index = (int) (t / replications); // Point-major, so points complete early.
+                int replication = (int) (t % replications);
+                Aggregate aggregate = aggregates[index];
+
+                if (simulate(points.get(index), replication, aggregate) == replications) {
+                    listener.pointDone(index, points.get(index), aggregate);
+                    aggregates[index] = null;
+                }
+            }
+        }
+    }
+
+    private static boolean nextLevel(int[] level, int levels) {
+        for (int j = 0; j < level.length; j++) {
+            if (++level[j] < levels) return true;
+            level[j] = 0;
+        }
+
+        return false;
+    }
+
+    /**
+     * Entry point of the sweep. Writes a CSV line per point to the standard output, in completion order.
+     * @param args <i>grid</i> or <i>lhs</i>, the number of levels or points, the number of replications and
+     *            the swept parameters as <i>NAME=low:high</i>.
+     */
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.err.println("Usage: ParameterSweep grid|lhs <levels|points> <replications> NAME=low:high ...");
+            System.exit(1);
+        }
+
+        int n = Integer.parseInt(args[1]);
+        int replications = Integer.parseInt(args[2]);
+
+        ParameterSweep sweep = new ParameterSweep(replications, Runtime.getRuntime().availableProcessors());
+        sweep.setEngine(Engine.valueOf(System.getProperty("sim.engine", "fast").toUpperCase()));
+        sweep.setShootingLanes(Integer.getInteger("sim.lanes", 0));
+
+        final List<Parameter> swept = new ArrayList<Parameter>();
+
+        for (int i = 3; i < args.length; i++) {
+            String[] kv = args[i].split("=");
+            String[] range = kv[1].split(":");
+            Parameter p = Parameter.valueOf(kv[0]);
+
+            sweep.addRange(p, Double.parseDouble(range[0]), Double.parseDouble(range[1]));
+            swept.add(p);
+        }
+
+        List<Parameters> points = args[0].equals("grid") ? sweep.grid(n) : sweep.latinHypercube(n,
+                Biathlon.UNIVERSAL_SEED);
+
+        final PrintStream out = System.out;
+        StringBuilder header = new StringBuilder("point");
+
+        for (Parameter p : swept)
+            header.append(',').append(p.name());
+
+        out.println(header.append(",replications,mean_finish,sd_finish,mean_winning,sd_winning,mean_misses,"
+                + "finish_rate"));
+
+        final int numCompetitors = Biathlon.NUM_COMPETITORS;
+        long start = System.nanoTime();
+
+        sweep.run(points, new Listener() {
+            public void pointDone(int index, Parameters point, Aggregate a) {
+                StringBuilder line = new StringBuilder().append(index);
+
+                for (Parameter p : swept)
+                    line.append(',').append(point.get(p));
+
+                line.append(String.format(",%d,%.3f,%.3f,%.3f,%.3f,%.4f,%.4f", a.getReplications(),
+                        a.getMeanFinishTime(), a.getFinishTimeStdDev(), a.getMeanWinningTime(),
+                        a.getWinningTimeStdDev(), a.getMeanMisses(numCompetitors), a.getFinishRate(numCompetitors)));
+
+                synchronized (out) {
+                    out.println(line);
+                }
+            }
+        });
+
+        System.err.println(String.format("%d points x %d replications in %.1f s.", points.size(), replications,
+                (System.nanoTime() - start) / 1e9));
+    }
+}
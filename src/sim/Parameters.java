@@ -0,0 +1,84 @@
+package sim;
+
+import java.util.Arrays;
+
+/**
+ * A set of values of the model parameters, bound to a single model instance.
+ * <p>
+ * Replaces the <code>Biathlon</code> constants wherever they are read during
+ * the simulation, so a sensitivity study does not require a recompile per
+ * point. The values are kept in an array indexed by the
+ * <code>Parameter</code> ordinal.
+ */
+public class Parameters {
+
+    private final double[] values;
+
+    /**
+     * The c-tor. Creates the default values.
+     */
+    public Parameters() {
+        Parameter[] all = Parameter.values();
+        values = new double[all.length];
+
+        for (Parameter p : all)
+            values[p.ordinal()] = p.getDefault();
+    }
+
+    /**
+     * The c-tor. Copies other values.
+     * @param other The values to copy.
+     */
+    public Parameters(Parameters other) {
+        values = other.values.clone();
+    }
+
+    /**
+     * Returns the value of a parameter.
+     * @param p The parameter.
+     * @return The value.
+     */
+    public double get(Parameter p) {
+        return values[p.ordinal()];
+    }
+
+    /**
+     * Returns the value of an integer parameter.
+     * @param p The parameter.
+     * @return The value rounded down.
+     */
+    public int getInt(Parameter p) {
+        return (int) values[p.ordinal()];
+    }
+
+    /**
+     * Sets the value of a parameter.
+     * @param p The parameter.
+     * @param value The value.
+     */
+    public void set(Parameter p, double value) {
+        values[p.ordinal()] = value;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        return that instanceof Parameters && Arrays.equals(values, ((Parameters) that).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+
+        for (Parameter p : Parameter.values()) {
+            if (s.length() > 0) s.append(' ');
+            s.append(p.name()).append('=').append(values[p.ordinal()]);
+        }
+
+        return s.toString();
+    }
+}
@@ -0,0 +1,203 @@
+package sim;
+
+/**
+ * The precision the replications are carried out to by
+ * <code>ReplicationRunner.runAdaptive()</code>.
+ * <p>
+ * A target is met once the confidence interval of every selected statistic of
+ * every competitor is narrow enough: the win probability (absolute half-width,
+ * Agresti-Coull interval, or the normal interval of the weighted mean under
+ * importance sampling), the mean finish time (half-width relative to the
+ * mean) and the mean total misses (absolute half-width). Unset targets are not
+ * checked.
+ */
+public class PrecisionTarget {
+
+    private double winProbability = Double.NaN;
+    private double finishTime = Double.NaN;
+    private double misses = Double.NaN;
+
+    private int minReplications = 30;
+
+    private double confidence = 0.95;
+    private double z = normalQuantile(0.975);
+
+    /**
+     * Sets the half-width of the win probability intervals.
+     * @param halfWidth The half-width, e.g. 0.01; <code>NaN</code> disables the target.
+     */
+    public void setWinProbability(double halfWidth) {
+        winProbability = halfWidth;
+    }
+
+    /**
+     * Sets the half-width of the mean finish time intervals, relative to the mean.
+     * @param relativeHalfWidth The relative half-width, e.g. 0.001; <code>NaN</code> disables the target.
+     */
+    public void setFinishTime(double relativeHalfWidth) {
+        finishTime = relativeHalfWidth;
+    }
+
+    /**
+     * Sets the half-width of the mean total misses intervals.
+     * @param halfWidth The half-width in shots, e.g. 0.05; <code>NaN</code> disables the target.
+     */
+    public void setMisses(double halfWidth) {
+        misses = halfWidth;
+    }
+
+    /**
+     * Sets the number of replications carried out before the target is checked, 30 by default. A few replications
+     * may agree by chance, e.g. nobody misses, and give intervals of zero width.
+     * @param minReplications The number of replications, at least 2.
+     */
+    public void setMinReplications(int minReplications) {
+        this.minReplications = Math.max(2, minReplications);
+    }
+
+    /**
+     * @return The number of replications carried out before the target is checked.
+     */
+    public int getMinReplications() {
+        return minReplications;
+    }
+
+    /**
+     * Sets the confidence level of the intervals, 0.95 by default.
+     * @param confidence The confidence level in (0, 1) range.
+     */
+    public void setConfidence(double confidence) {
+        this.confidence = confidence;
+        z = normalQuantile(0.5 + confidence / 2);
+    }
+
+    /**
+     * @return The confidence level of the intervals.
+     */
+    public double getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * @return <code>true</code> if any of the statistics has a target.
+     */
+    public boolean isSet() {
+        return !Double.isNaN(winProbability) || !Double.isNaN(finishTime) || !Double.isNaN(misses);
+    }
+
+    /**
+     * Returns the half-width of the win probability interval of a competitor.
+     * @param statistics The statistics of the replications.
+     * @param id Internal competitor ID.
+     * @return The half-width.
+     */
+    public double winProbabilityHalfWidth(ReplicationStatistics statistics, int id) {
+        // The weighted wins are not binomial, their variance is estimated directly.
+        if (statistics.isWeighted())
+            return z * statistics.getWinProbabilityStdError(id);
+
+        double n = statistics.getReplications() + z * z;
+        double p = (statistics.getWinProbability(id) * statistics.getReplications() + z * z / 2) / n;
+
+        return z * Math.sqrt(p * (1 - p) / n);
+    }
+
+    /**
+     * Returns the half-width of the mean finish time interval of a competitor.
+     * @param statistics The statistics of the replications.
+     * @param id Internal competitor ID.
+     * @return The half-width in seconds.
+     */
+    public double finishTimeHalfWidth(ReplicationStatistics statistics, int id) {
+        return z * statistics.getFinishTime(id).getStdError();
+    }
+
+    /**
+     * Returns the half-width of the mean total misses interval of a competitor.
+     * @param statistics The statistics of the replications.
+     * @param id Internal competitor ID.
+     * @return The half-width in shots.
+     */
+    public double missesHalfWidth(ReplicationStatistics statistics, int id) {
+        return z * statistics.getTotalMisses(id).getStdError();
+    }
+
+    /**
+     * Checks whether the statistics are precise enough.
+     * @param statistics The statistics of the replications.
+     * @return <code>true</code> if all the targets are met.
+     */
+    public boolean isMet(ReplicationStatistics statistics) {
+        if (statistics.getReplications() < minReplications)
+            return false;
+
+        for (int i = 0; i < statistics.getNumCompetitors(); i++) {
+            if (!Double.isNaN(winProbability) && winProbabilityHalfWidth(statistics, i) > winProbability)
+                return false;
+
+            RunningStats t = statistics.getFinishTime(i);
+
+            // A competitor who never finished has no finish time to estimate.
+            if (!Double.isNaN(finishTime) && t.getCount() > 0
+                    && (t.getCount() < 2 || finishTimeHalfWidth(statistics, i) > finishTime * t.getMean()))
+                return false;
+
+            if (!Double.isNaN(misses) && missesHalfWidth(statistics, i) > misses)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads the targets from the system properties: <i>sim.precision.win</i>,
+     * <i>sim.precision.finish</i>, <i>sim.precision.misses</i>,
+     * <i>sim.precision.min</i> and <i>sim.precision.confidence</i>.
+     * @return The target.
+     */
+    public static PrecisionTarget fromSystemProperties() {
+        PrecisionTarget target = new PrecisionTarget();
+
+        target.setWinProbability(Double.parseDouble(System.getProperty("sim.precision.win", "NaN")));
+        target.setFinishTime(Double.parseDouble(System.getProperty("sim.precision.finish", "NaN")));
+        target.setMisses(Double.parseDouble(System.getProperty("sim.precision.misses", "NaN")));
+        target.setMinReplications(Integer.getInteger("sim.precision.min", 30));
+        target.setConfidence(Double.parseDouble(System.getProperty("sim.precision.confidence", "0.95")));
+
+        return target;
+    }
+
+    /**
+     * Computes a quantile of the standard normal distribution (Acklam's rational approximation,
+     * relative error below 1.2e-9).
+     * @param p The probability in (0, 1) range.
+     * @return The quantile.
+     */
+    static double normalQuantile(double p) {
+        final double[] a = { -3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+                1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00 };
+        final double[] b = { -5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+                6.680131188771972e+01, -1.328068155288572e+01 };
+        final double[] c = { -7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+                -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00 };
+        final double[] d = { 7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+                3.754408661907416e+00 };
+
+        if (p < 0.02425) {
+            double q = Math.sqrt(-2 * Math.log(p));
+            return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+
+        if (p > 1 - 0.02425) {
+            double q = Math.sqrt(-2 * Math.log(1 - p));
+            return -(((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+
+        double q = p - 0.5;
+        double r = q * q;
+        return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+                / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+}
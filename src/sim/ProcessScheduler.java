@@ -0,0 +1,291 @@
+package sim;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A deterministic scheduler of <code>LightProcess</code> life cycles.
+ * <p>
+ * Every process runs its blocking <code>lifeCycle()</code> on a thread of its
+ * own, but only one thread runs at a time. There is no scheduler thread: a
+ * process which holds, passivates or finishes takes the next entry of the
+ * <code>EventList</code> itself and hands the control straight over to the
+ * next process, or keeps it if it is the next one itself. The thread calling
+ * <code>run()</code> only starts the first process and waits for the end of
+ * the run. A run therefore depends on the schedule alone, never on the thread
+ * scheduling of the JVM.
+ * <p>
+ * On Java 21 and newer the processes run on virtual threads (looked up by
+ * reflection, so the code still runs on older JVMs): a process costs a few
+ * hundred bytes of heap instead of an OS thread, and as both sides of a
+ * hand-over are virtual threads, it unparks one continuation and parks
+ * another without involving an OS thread.
+ * <i>-Djdk.virtualThreadScheduler.parallelism=1</i> keeps all of them on a
+ * single carrier thread. Older JVMs fall back to platform threads with small
+ * stacks, where a hand-over is a single OS-level unpark and park.
+ * <i>-Dsim.threads=platform</i> forces the fallback.
+ */
+public class ProcessScheduler {
+
+    /**
+     * The stack size of the platform threads of the fallback, the life cycles do not nest deeply.
+     */
+    public static final long PLATFORM_STACK_SIZE = 128 * 1024;
+
+    /**
+     * <code>Thread.ofVirtual()</code> and <code>Thread.Builder.unstarted()</code>, <code>null</code> before Java 21.
+     */
+    private static final Method OF_VIRTUAL;
+    private static final Method UNSTARTED;
+
+    static {
+        Method ofVirtual = null, unstarted = null;
+
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+        } catch (Exception e) {
+            ofVirtual = null;
+            unstarted = null;
+        }
+
+        OF_VIRTUAL = ofVirtual;
+        UNSTARTED = unstarted;
+    }
+
+    /**
+     * Thrown inside the processes still alive when the scheduler finishes, to unwind their life cycles.
+     */
+    private static class Terminated extends Error {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final EventList<LightProcess> events = new EventList<LightProcess>();
+
+    /**
+     * Released once the run ends, to wake up the thread waiting in <code>run()</code> or <code>finish()</code>.
+     */
+    private final Semaphore control = new Semaphore(0);
+
+    /**
+     * The processes started and not finished yet, in the order of their start.
+     */
+    private final Set<LightProcess> alive = new LinkedHashSet<LightProcess>();
+
+    private final boolean virtual;
+
+    private double now = 0.0;
+    private double until = 0.0;
+    private LightProcess current = null;
+    private LightProcess failed = null;
+    private Throwable failure = null;
+    private boolean terminating = false;
+    private long switches = 0;
+
+    /**
+     * The c-tor. Uses the virtual threads if available, unless <i>sim.threads</i> is <i>platform</i>.
+     */
+    public ProcessScheduler() {
+        this(!"platform".equals(System.getProperty("sim.threads")));
+    }
+
+    /**
+     * The c-tor.
+     * @param virtual Set to use the virtual threads if available.
+     */
+    public ProcessScheduler(boolean virtual) {
+        this.virtual = virtual && isVirtualAvailable();
+    }
+
+    /**
+     * @return <code>true</code> if the JVM supports the virtual threads.
+     */
+    public static boolean isVirtualAvailable() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @return <code>true</code> if the processes run on virtual threads.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * @return The current simulation time in seconds.
+     */
+    public double presentTime() {
+        return now;
+    }
+
+    /**
+     * @return The running process, <code>null</code> outside of the life cycles.
+     */
+    public LightProcess current() {
+        return current;
+    }
+
+    /**
+     * @return The number of hand-overs from one thread to another so far.
+     */
+    public long getSwitches() {
+        return switches;
+    }
+
+    /**
+     * Carries out the scheduled life cycles until nothing is scheduled or the time is up.
+     * @param until The simulation time to stop at in seconds.
+     * @throws IllegalStateException If a life cycle failed, with the failure as the cause.
+     */
+    public void run(double until) {
+        this.until = until;
+
+        LightProcess first = next();
+
+        if (first == null)
+            return;
+
+        handOver(first);
+        control.acquireUninterruptibly();
+
+        if (failure != null)
+            throw new IllegalStateException(String.format("%s failed.", failed), failure);
+    }
+
+    /**
+     * Unwinds the life cycles of the processes still alive and ends their threads. Call once done with the run.
+     */
+    public void finish() {
+        terminating = true;
+        events.clear();
+
+        for (LightProcess p : new ArrayList<LightProcess>(alive)) {
+            p.resume.release();
+            control.acquireUninterruptibly();
+        }
+    }
+
+    /**
+     * Schedules the resumption of a process, replacing the time it was scheduled at.
+     */
+    void schedule(LightProcess p, double time) {
+        p.sequence = events.schedule(time, p);
+    }
+
+    /**
+     * Schedules the resumption of a process before the other processes due at the same time.
+     */
+    void scheduleFirst(LightProcess p, double time) {
+        p.sequence = events.scheduleFirst(time, p);
+    }
+
+    /**
+     * Gives the control from the running process over to the next one, until the process is resumed.
+     */
+    void yieldControl(LightProcess p) {
+        if (current != p)
+            throw new IllegalStateException(String.format("%s is not running.", p));
+
+        LightProcess next = next();
+
+        // The process is the next one itself, it keeps the control.
+        if (next == p)
+            return;
+
+        handOver(next);
+        p.resume.acquireUninterruptibly();
+
+        if (terminating)
+            throw new Terminated();
+    }
+
+    /**
+     * Takes the next process off the event list and advances the time to it.
+     * @return The process or <code>null</code> if nothing is scheduled until the end of the run.
+     */
+    private LightProcess next() {
+        while (!events.isEmpty() && events.firstTime() <= until) {
+            double time = events.firstTime();
+            long sequence = events.firstSequence();
+            LightProcess p = events.removeFirst();
+
+            // The process was rescheduled or canceled since.
+            if (p.sequence != sequence)
+                continue;
+
+            p.sequence = -1;
+            now = time;
+            return p;
+        }
+
+        return null;
+    }
+
+    /**
+     * Hands the control over to a process, starting its thread first if need be, or ends the run.
+     * @param p The process or <code>null</code> to wake up the thread waiting in <code>run()</code>.
+     */
+    private void handOver(final LightProcess p) {
+        current = p;
+
+        if (p == null) {
+            control.release();
+            return;
+        }
+
+        ++switches;
+
+        if (p.thread == null) {
+            alive.add(p);
+            p.thread = newThread(new Runnable() {
+                public void run() {
+                    body(p);
+                }
+            }, p.toString());
+            p.thread.start();
+        } else {
+            p.resume.release();
+        }
+    }
+
+    /**
+     * The body of the thread of a process.
+     */
+    private void body(LightProcess p) {
+        try {
+            p.lifeCycle();
+        } catch (Terminated e) {
+            // Unwound by finish().
+        } catch (Throwable e) {
+            failed = p;
+            failure = e;
+        } finally {
+            p.finished = true;
+            alive.remove(p);
+
+            if (terminating || failure != null)
+                control.release();
+            else
+                handOver(next());
+        }
+    }
+
+    private Thread newThread(Runnable body, String name) {
+        if (virtual) {
+            try {
+                Thread t = (Thread) UNSTARTED.invoke(OF_VIRTUAL.invoke(null), body);
+                t.setName(name);
+                return t;
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not create a virtual thread.", e);
+            }
+        }
+
+        Thread t = new Thread(null, body, name, PLATFORM_STACK_SIZE);
+        t.setDaemon(true);
+        return t;
+    }
+}
@@ -0,0 +1,291 @@
+package sim;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A mergeable quantile sketch of a stream of values (a merging t-digest).
+ * <p>
+ * The values are summarized by at most <code>compression</code> + 1
+ * centroids (mean and weight). The size of a centroid is bounded by the
+ * arcsine (k1) scale function, which keeps the centroids near the tails
+ * small, so the extreme quantiles are more accurate than the median, and
+ * bounds their number regardless of the number of values. New values are
+ * buffered and merged into the centroids in batches. All the arrays are
+ * allocated up front, the memory taken does not depend on the number of
+ * values.
+ */
+public class QuantileSketch {
+
+    /**
+     * The default compression, roughly the number of centroids kept.
+     */
+    public static final double DEFAULT_COMPRESSION = 100.0;
+
+    private final double compression;
+
+    /**
+     * The centroids, sorted by mean.
+     */
+    private final double[] means;
+    private final double[] weights;
+    private int centroids = 0;
+
+    /**
+     * A copy of the centroids taken while merging new ones in.
+     */
+    private final double[] scratchMeans;
+    private final double[] scratchWeights;
+
+    /**
+     * Values not merged into the centroids yet.
+     */
+    private final double[] buffer;
+    private int buffered = 0;
+
+    private double totalWeight = 0.0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * The c-tor. Uses <code>DEFAULT_COMPRESSION</code>.
+     */
+    public QuantileSketch() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * The c-tor.
+     * @param compression The compression, higher values are more accurate and take more memory.
+     */
+    public QuantileSketch(double compression) {
+        this.compression = compression;
+
+        int capacity = (int) Math.ceil(2 * compression) + 10;
+        means = new double[capacity];
+        weights = new double[capacity];
+        scratchMeans = new double[capacity];
+        scratchWeights = new double[capacity];
+        buffer = new double[5 * capacity];
+    }
+
+    /**
+     * Adds a value.
+     * @param x The value.
+     */
+    public void add(double x) {
+        if (buffered == buffer.length)
+            compress();
+
+        buffer[buffered++] = x;
+        totalWeight += 1.0;
+
+        if (x < min) min = x;
+        if (x > max) max = x;
+    }
+
+    /**
+     * Adds the values summarized by another sketch.
+     * @param other The other sketch.
+     */
+    public void merge(QuantileSketch other) {
+        other.compress();
+        compress();
+
+        totalWeight += other.totalWeight;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+
+        mergeCentroids(other.means, other.weights, other.centroids);
+    }
+
+    /**
+     * Writes the sketch, merging the buffered values first.
+     * @param out The stream.
+     * @throws IOException If the sketch could not be written.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        compress();
+
+        out.writeDouble(compression);
+        out.writeDouble(totalWeight);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        out.writeInt(centroids);
+
+        for (int i = 0; i < centroids; i++) {
+            out.writeDouble(means[i]);
+            out.writeDouble(weights[i]);
+        }
+    }
+
+    /**
+     * Reads a sketch written by <code>writeTo()</code>.
+     * @param in The stream.
+     * @return The sketch.
+     * @throws IOException If the sketch could not be read.
+     */
+    public static QuantileSketch readFrom(DataInput in) throws IOException {
+        QuantileSketch s = new QuantileSketch(in.readDouble());
+
+        s.totalWeight = in.readDouble();
+        s.min = in.readDouble();
+        s.max = in.readDouble();
+
+        int n = in.readInt();
+
+        for (int i = 0; i < n; i++)
+            s.centroids = s.store(i, in.readDouble(), in.readDouble());
+
+        return s;
+    }
+
+    /**
+     * @return The number of values.
+     */
+    public long getCount() {
+        return (long) totalWeight;
+    }
+
+    /**
+     * Estimates a quantile.
+     * @param q The quantile in [0, 1] range.
+     * @return The estimated value or <code>NaN</code> if there are no values.
+     */
+    public double quantile(double q) {
+        compress();
+
+        if (centroids == 0) return Double.NaN;
+        if (centroids == 1) return means[0];
+
+        double rank = q * totalWeight;
+
+        // Every centroid is assumed to spread evenly around its mean.
+        if (rank < weights[0] / 2)
+            return min + (means[0] - min) * rank / (weights[0] / 2);
+
+        double cumulative = weights[0] / 2;
+
+        for (int i = 0; i < centroids - 1; i++) {
+            double step = (weights[i] + weights[i + 1]) / 2;
+
+            if (cumulative + step >= rank) {
+                double f = (rank - cumulative) / step;
+                return means[i] + f * (means[i + 1] - means[i]);
+            }
+
+            cumulative += step;
+        }
+
+        double last = weights[centroids - 1] / 2;
+        double f = Math.min(1.0, (rank - cumulative) / last);
+        return means[centroids - 1] + f * (max - means[centroids - 1]);
+    }
+
+    /**
+     * @return The smallest value.
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * @return The largest value.
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Merges the buffered values into the centroids.
+     */
+    private void compress() {
+        if (buffered == 0) return;
+
+        Arrays.sort(buffer, 0, buffered);
+
+        int n = buffered;
+        buffered = 0;
+        mergeCentroids(buffer, null, n);
+    }
+
+    /**
+     * Merges sorted centroids into the centroids of this sketch. A centroid
+     * takes its neighbours as long as it spans at most 1 on the k1 scale,
+     * so two neighbouring centroids span more than 1 and there are at most
+     * <code>compression</code> + 1 of them over the whole scale.
+     * @param w2 The weights of the centroids, <code>null</code> if all of them are 1.
+     */
+    private void mergeCentroids(double[] m2, double[] w2, int n2) {
+        int n1 = centroids;
+        System.arraycopy(means, 0, scratchMeans, 0, n1);
+        System.arraycopy(weights, 0, scratchWeights, 0, n1);
+
+        double total = 0.0;
+
+        for (int i = 0; i < n1; i++)
+            total += scratchWeights[i];
+        for (int i = 0; i < n2; i++)
+            total += w2 != null ? w2[i] : 1.0;
+
+        int i1 = 0, i2 = 0, out = 0;
+        double sumBefore = 0.0;
+        double curMean = 0.0;
+        double curWeight = 0.0;
+        double qLimit = 0.0;
+
+        while (i1 < n1 || i2 < n2) {
+            double m, w;
+
+            if (i2 >= n2 || (i1 < n1 && scratchMeans[i1] <= m2[i2])) {
+                m = scratchMeans[i1];
+                w = scratchWeights[i1++];
+            } else {
+                m = m2[i2];
+                w = w2 != null ? w2[i2] : 1.0;
+                ++i2;
+            }
+
+            if (curWeight == 0.0) {
+                curMean = m;
+                curWeight = w;
+                qLimit = quantileLimit(0.0);
+                continue;
+            }
+
+            if ((sumBefore + curWeight + w) / total <= qLimit) {
+                curMean += (m - curMean) * w / (curWeight + w);
+                curWeight += w;
+            } else {
+                out = store(out, curMean, curWeight);
+                sumBefore += curWeight;
+                curMean = m;
+                curWeight = w;
+                qLimit = quantileLimit(sumBefore / total);
+            }
+        }
+
+        centroids = curWeight > 0.0 ? store(out, curMean, curWeight) : out;
+    }
+
+    /**
+     * Returns the largest quantile a centroid starting at a quantile may reach, 1 further on the k1 scale
+     * <code>k(q) = compression / (2 pi) * asin(2q - 1)</code>.
+     */
+    private double quantileLimit(double q) {
+        double k = compression / (2 * Math.PI) * Math.asin(2 * q - 1) + 1;
+
+        if (k >= compression / 4)
+            return 1.0;
+
+        return (Math.sin(k * 2 * Math.PI / compression) + 1) / 2;
+    }
+
+    private int store(int i, double mean, double weight) {
+        means[i] = mean;
+        weights[i] = weight;
+        return i + 1;
+    }
+}
@@ -0,0 +1,136 @@
+package sim;
+
+/**
+ * A structured log of a single race.
+ * <p>
+ * Every event has its own method taking primitive arguments only, so logging
+ * does not allocate. Turning the arguments into text is left to the sink,
+ * which may do it lazily or not at all. The call sites are expected to be
+ * guarded by the matching <code>LogLevel</code> flag.
+ * <p>
+ * All the methods do nothing by default, see <code>RaceLog.NONE</code>.
+ * 
+ * @see TextRaceLog
+ * @see BinaryRaceLog
+ */
+public abstract class RaceLog {
+
+    /**
+     * A log discarding everything.
+     */
+    public static final RaceLog NONE = new RaceLog() {
+    };
+
+    /**
+     * A competitor starts the race.
+     * @param time Simulation time in seconds.
+     * @param competitor Internal competitor ID.
+     */
+    public void start(double time, int competitor) {
+    }
+
+    /**
+     * A competitor enters a shooting range.
+     * @param time Simulation time in seconds.
+     * @param competitor Internal competitor ID.
+     * @param visit The number of the shooting range visit (1-based).
+     */
+    public void enterRange(double time, int competitor, int visit) {
+    }
+
+    /**
+     * A competitor leaves a shooting range.
+     * @param time Simulation time in seconds.
+     * @param competitor Internal competitor ID.
+     */
+    public void leaveRange(double time, int competitor) {
+    }
+
+    /**
+     * A random event happens to a competitor.
+     * @param time Simulation time in seconds.
+     * @param competitor Internal competitor ID.
+     * @param event The event.
+     * @param duration Duration of the event in seconds.
+     * @param desperationMod Desperation change caused by the event.
+     */
+    public void randomEvent(double time, int competitor, RandomEvent event, double duration, int desperationMod) {
+    }
+
+    /**
+     * Desperation of a competitor changes.
+     * @param time Simulation time in seconds.
+     * @param competitor Internal competitor ID.
+     * @param desperation The new desperation level in percent.
+     */
+    public void desperation(double time, int competitor, int desperation) {
+    }
+
+    /**
+     * Desperation of a competitor crosses the panic threshold.
+     * @param time Simulation time in seconds.
+     * @param competitor Internal competitor ID.
+     */
+    public void panic(double time, int competitor) {
+    }
+
+    /**
+     * A competitor misses shots during a shooting session.
+     * @param time Simulation time in seconds.
+     * @param competitor Internal competitor ID.
+     * @param missed The number of missed shots.
+     */
+    public void misses(double time, int competitor, int missed) {
+    }
+
+    /**
+     * A competitor receives penalty distance.
+     * @param time Simulation time in seconds.
+     * @param competitor Internal competitor ID.
+     * @param distance The penalty distance in meters.
+     */
+    public void penalty(double time, int competitor, double distance) {
+    }
+
+    /**
+     * The attribute modifiers of a competitor after a shooting session.
+     * @param time Simulation time in seconds.
+     * @param competitor Internal competitor ID.
+     * @param speed The speed factor.
+     * @param aiming The aiming time factor.
+     * @param accuracy The accuracy factor.
+     */
+    public void factors(double time, int competitor, double speed, double aiming, double accuracy) {
+    }
+
+    /**
+     * A competitor finishes the race.
+     * @param time Simulation time in seconds.
+     * @param competitor Internal competitor ID.
+     */
+    public void finish(double time, int competitor) {
+    }
+
+    /**
+     * The shooting range admits a competitor.
+     * @param time Simulation time in seconds.
+     * @param competitor Internal competitor ID.
+     */
+    public void rangeEnter(double time, int competitor) {
+    }
+
+    /**
+     * The shooting range scores and releases a competitor.
+     * @param time Simulation time of the release in seconds.
+     * @param competitor Internal competitor ID.
+     * @param missed The number of missed shots.
+     */
+    public void rangeLeave(double time, int competitor, int missed) {
+    }
+
+    /**
+     * Closes the log once the race is over.
+     */
+    public void close() {
+    }
+}
@@ -0,0 +1,310 @@
+package sim;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Queue and utilization metrics of a single race.
+ * <p>
+ * Tracks the time-weighted number of busy lanes and of waiting competitors,
+ * the waiting times (statistics and a fixed-bucket histogram) and the number
+ * of occurrences of every <code>RandomEvent</code>. Updating the metrics does
+ * not allocate. The metrics are updated by the simulation thread only; the
+ * JMX getters read them without synchronization, so they may lag behind
+ * slightly while the race runs.
+ */
+public class RaceMetrics implements RaceMetricsMBean {
+
+    /**
+     * The upper bounds of the waiting time histogram buckets in seconds.
+     */
+    private static final double[] WAIT_BUCKETS = { 0.0, 1.0, 2.0, 5.0, 10.0, 20.0, 30.0, 60.0, 120.0, 300.0 };
+
+    private static final RandomEvent[] EVENTS = RandomEvent.values();
+
+    /**
+     * Numbers the registered metrics, so several models of a JVM get distinct names.
+     */
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private final int capacity;
+
+    /**
+     * The time the metrics are collected since and the time of the last update, in seconds.
+     */
+    private final double start;
+    private double last;
+
+    /**
+     * Current levels and their integrals over time.
+     */
+    private int busy = 0;
+    private int queued = 0;
+    private int maxQueued = 0;
+    private double busyArea = 0.0;
+    private double queueArea = 0.0;
+
+    /**
+     * The end times of the sessions which end without a call of <code>endSession()</code>, in descending
+     * order, see <code>endSessionAt()</code>.
+     */
+    private double[] pendingEnds = new double[16];
+    private int pending = 0;
+
+    private final RunningStats waits = new RunningStats();
+    private final long[] waitHistogram = new long[WAIT_BUCKETS.length + 1];
+
+    private final long[] eventCounts = new long[EVENTS.length];
+
+    /**
+     * The c-tor.
+     * @param capacity The number of shooting range lanes.
+     * @param start The simulation time the metrics are collected since, in seconds.
+     */
+    public RaceMetrics(int capacity, double start) {
+        this.capacity = capacity;
+        this.start = start;
+        this.last = start;
+    }
+
+    /**
+     * Sets the current levels without recording any samples. Used when the race continues from a snapshot.
+     * @param now The current time, in seconds.
+     * @param queueLength The number of waiting competitors.
+     * @param busyLanes The number of shooting sessions in progress.
+     */
+    void setLevels(double now, int queueLength, int busyLanes) {
+        advance(now);
+        queued = queueLength;
+        maxQueued = Math.max(maxQueued, queued);
+        busy = busyLanes;
+    }
+
+    /**
+     * Registers a competitor joining the queue.
+     * @param now The current time, in seconds.
+     */
+    public void enqueue(double now) {
+        advance(now);
+
+        if (++queued > maxQueued)
+            maxQueued = queued;
+    }
+
+    /**
+     * Registers a competitor leaving the queue.
+     * @param now The current time, in seconds.
+     */
+    public void dequeue(double now) {
+        advance(now);
+        --queued;
+    }
+
+    /**
+     * Registers the start of a shooting session.
+     * @param arrival The time the competitor arrived at the range, in seconds.
+     * @param now The current time, in seconds.
+     */
+    public void startSession(double arrival, double now) {
+        advance(now);
+        ++busy;
+
+        double wait = now - arrival;
+        waits.add(wait);
+
+        int b = 0;
+        while (b < WAIT_BUCKETS.length && wait > WAIT_BUCKETS[b])
+            ++b;
+
+        ++waitHistogram[b];
+    }
+
+    /**
+     * Registers the end of a shooting session.
+     * @param now The current time, in seconds.
+     */
+    public void endSession(double now) {
+        advance(now);
+        --busy;
+    }
+
+    /**
+     * Registers the end of a shooting session in advance. The session ends once the metrics are advanced past the
+     * end time. Used for the sessions of the competitors who ran on and are not told when the session ends.
+     * @param end The time the session ends, in seconds.
+     */
+    public void endSessionAt(double end) {
+        if (pending == pendingEnds.length)
+            pendingEnds = Arrays.copyOf(pendingEnds, 2 * pending);
+
+        int i = pending++;
+
+        for (; i > 0 && pendingEnds[i - 1] < end; i--)
+            pendingEnds[i] = pendingEnds[i - 1];
+
+        pendingEnds[i] = end;
+    }
+
+    /**
+     * Registers an occurrence of a random event.
+     * @param e The event.
+     */
+    public void randomEvent(RandomEvent e) {
+        ++eventCounts[e.ordinal()];
+    }
+
+    /**
+     * Extends the time integrals to the given time.
+     * @param now The current time, in seconds.
+     */
+    public void advance(double now) {
+        while (pending > 0 && pendingEnds[pending - 1] <= now) {
+            integrate(pendingEnds[--pending]);
+            --busy;
+        }
+
+        integrate(now);
+    }
+
+    private void integrate(double now) {
+        if (now <= last) return;
+
+        double dt = now - last;
+        busyArea += busy * dt;
+        queueArea += queued * dt;
+        last = now;
+    }
+
+    public double getTime() {
+        return last;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public double getRangeUtilization() {
+        double t = last - start;
+        return t > 0 ? busyArea / (capacity * t) : 0.0;
+    }
+
+    public int getBusyLanes() {
+        return busy;
+    }
+
+    public int getQueueLength() {
+        return queued;
+    }
+
+    public double getMeanQueueLength() {
+        double t = last - start;
+        return t > 0 ? queueArea / t : 0.0;
+    }
+
+    public int getMaxQueueLength() {
+        return maxQueued;
+    }
+
+    public long getSessions() {
+        return waits.getCount();
+    }
+
+    public double getMeanWait() {
+        return waits.getMean();
+    }
+
+    public double getMaxWait() {
+        return waits.getCount() > 0 ? waits.getMax() : 0.0;
+    }
+
+    public double[] getWaitBuckets() {
+        return WAIT_BUCKETS.clone();
+    }
+
+    public long[] getWaitHistogram() {
+        return waitHistogram.clone();
+    }
+
+    public String[] getRandomEventNames() {
+        String[] names = new String[EVENTS.length];
+
+        for (int i = 0; i < EVENTS.length; i++)
+            names[i] = EVENTS[i].name();
+
+        return names;
+    }
+
+    public long[] getRandomEventCounts() {
+        return eventCounts.clone();
+    }
+
+    /**
+     * Returns a name to register the metrics of a model with, distinct from the names of all the other metrics
+     * registered by this JVM.
+     * @param model The name of the model.
+     * @return The object name, <i>sim:type=RaceMetrics,model=...,instance=...</i>.
+     */
+    public static String objectName(String model) {
+        return String.format("sim:type=RaceMetrics,model=%s,instance=%d", ObjectName.quote(model),
+                instances.incrementAndGet());
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     * @param name The object name, see <code>objectName()</code>.
+     */
+    public void register(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(name));
+        } catch (JMException e) {
+            System.err.println(String.format("Could not register the metrics (%s).", name));
+        }
+    }
+
+    /**
+     * Dumps the metrics into a JSON file.
+     * @param filename The file storing the metrics.
+     */
+    public void dump(String filename) {
+        PrintWriter out;
+
+        try {
+            out = new PrintWriter(filename);
+        } catch (FileNotFoundException e) {
+            System.err.println(String.format("Could not open file (%s).", filename));
+            return;
+        }
+
+        out.println("{");
+        out.println(String.format(Locale.ROOT, "  \"time\": %.3f,", last));
+        out.println(String.format("  \"capacity\": %d,", capacity));
+        out.println(String.format(Locale.ROOT, "  \"rangeUtilization\": %.6f,", getRangeUtilization()));
+        out.println(String.format(Locale.ROOT, "  \"meanQueueLength\": %.6f,", getMeanQueueLength()));
+        out.println(String.format("  \"maxQueueLength\": %d,", maxQueued));
+        out.println(String.format("  \"sessions\": %d,", getSessions()));
+        out.println(String.format(Locale.ROOT, "  \"meanWait\": %.3f,", getMeanWait()));
+        out.println(String.format(Locale.ROOT, "  \"maxWait\": %.3f,", getMaxWait()));
+
+        out.print("  \"waitHistogram\": [");
+        for (int b = 0; b < waitHistogram.length; b++) {
+            String le = b < WAIT_BUCKETS.length ? String.format(Locale.ROOT, "%.1f", WAIT_BUCKETS[b])
+                    : "null";
+            out.print(String.format("%s{\"le\": %s, \"count\": %d}", b > 0 ? ", " : "", le, waitHistogram[b]));
+        }
+        out.println("],");
+
+        out.print("  \"randomEvents\": {");
+        for (int i = 0; i < EVENTS.length; i++)
+            out.print(String.format("%s\"%s\": %d", i > 0 ? ", " : "", EVENTS[i].name(), eventCounts[i]));
+        out.println("}");
+
+        out.println("}");
+        out.close();
+    }
+}
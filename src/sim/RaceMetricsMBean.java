@@ -0,0 +1,77 @@
+package sim;
+
+/**
+ * The JMX management interface of the <code>RaceMetrics</code>.
+ */
+public interface RaceMetricsMBean {
+
+    /**
+     * @return The simulation time of the last update in seconds.
+     */
+    double getTime();
+
+    /**
+     * @return The number of shooting range lanes, 1 for the single-lane <code>ShootingRange</code>.
+     */
+    int getCapacity();
+
+    /**
+     * @return The fraction of the lane time spent shooting.
+     */
+    double getRangeUtilization();
+
+    /**
+     * @return The number of shooting sessions in progress.
+     */
+    int getBusyLanes();
+
+    /**
+     * @return The number of competitors waiting in the queue.
+     */
+    int getQueueLength();
+
+    /**
+     * @return The time-weighted mean length of the queue.
+     */
+    double getMeanQueueLength();
+
+    /**
+     * @return The maximal length of the queue.
+     */
+    int getMaxQueueLength();
+
+    /**
+     * @return The number of shooting sessions started.
+     */
+    long getSessions();
+
+    /**
+     * @return The mean waiting time for a lane in seconds.
+     */
+    double getMeanWait();
+
+    /**
+     * @return The maximal waiting time for a lane in seconds.
+     */
+    double getMaxWait();
+
+    /**
+     * @return The upper bounds of the waiting time histogram buckets in seconds.
+     */
+    double[] getWaitBuckets();
+
+    /**
+     * @return The waiting time histogram, the last bucket counts the waits above all the bounds.
+     */
+    long[] getWaitHistogram();
+
+    /**
+     * @return The names of the random events.
+     */
+    String[] getRandomEventNames();
+
+    /**
+     * @return The number of occurrences per random event, in the order of <code>getRandomEventNames()</code>.
+     */
+    long[] getRandomEventCounts();
+}
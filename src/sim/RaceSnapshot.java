@@ -0,0 +1,362 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import desmoj.core.simulator.Experiment;
+import desmoj.core.simulator.TimeInstant;
+
+/**
+ * The complete state of a race at a point of simulation time.
+ * <p>
+ * A snapshot holds the state of every competitor (distance, shootings left,
+ * factors, desperation, panic, the phase of its life cycle and the time it is
+ * scheduled next), the order of the shooting range queue, copies of the
+ * <code>Results</code> and of the <code>RangePool</code> and the state of all
+ * the random streams. Any number of continuations can be forked off it, each
+ * simulating only the rest of the race. A fork of variant 0 repeats the
+ * original continuation exactly, the other variants re-derive the random
+ * streams from the captured state. The competitor states may be modified
+ * before forking to ask what-if questions.
+ * <p>
+ * Snapshots require the multi-lane shooting range (<code>Biathlon.setShootingLanes()</code>).
+ *
+ * @see Biathlon#takeSnapshotAt(double)
+ */
+public class RaceSnapshot {
+
+    private final double time;
+    private final long seed;
+    private final int numCompetitors;
+    private final Biathlon.Movement movement;
+    private final Biathlon.EventSampling eventSampling;
+    private final boolean antithetic;
+    private final ImportanceSampling importanceSampling;
+    private final long modelRandomState;
+    private final Parameters parameters;
+
+    private final CompetitorState[] competitors;
+
+    /**
+     * Internal IDs of the competitors waiting for a lane, in the queue order.
+     */
+    private final int[] queue;
+
+    private final Results results;
+    private final RangePool rangePool;
+
+    /**
+     * The state of a single competitor.
+     */
+    public static class CompetitorState {
+        final int id;
+        final Competitor.Phase phase;
+
+        /**
+         * The time the competitor is scheduled at, -1 if it is not scheduled.
+         */
+        final double scheduledAt;
+
+        double distanceToCover;
+        int shootingsLeft;
+        float speedFactor;
+        float aimingFactor;
+        float accuracyFactor;
+        int currentDesperation;
+        boolean panic;
+
+        final int lane;
+        final double arrival;
+        final int sessionMisses;
+
+        /**
+         * The states of the <code>CompetitorStreams</code>.
+         */
+        final long[] randomStates;
+
+        /**
+         * The state of the <code>RandomEventSchedule</code>, <code>null</code> if events are sampled every step.
+         */
+        final long[] scheduledEvents;
+        final long scheduleStep;
+
+        /**
+         * The log-likelihood ratio of the importance sampling so far.
+         */
+        final double logWeight;
+
+        CompetitorState(int id, Competitor.Phase phase, double scheduledAt, double distanceToCover,
+                int shootingsLeft, float speedFactor, float aimingFactor, float accuracyFactor,
+                int currentDesperation, boolean panic, int lane, double arrival, int sessionMisses, long[] randomStates,
+                long[] scheduledEvents, long scheduleStep, double logWeight) {
+            this.id = id;
+            this.phase = phase;
+            this.scheduledAt = scheduledAt;
+            this.distanceToCover = distanceToCover;
+            this.shootingsLeft = shootingsLeft;
+            this.speedFactor = speedFactor;
+            this.aimingFactor = aimingFactor;
+            this.accuracyFactor = accuracyFactor;
+            this.currentDesperation = currentDesperation;
+            this.panic = panic;
+            this.lane = lane;
+            this.arrival = arrival;
+            this.sessionMisses = sessionMisses;
+            this.randomStates = randomStates;
+            this.scheduledEvents = scheduledEvents;
+            this.scheduleStep = scheduleStep;
+            this.logWeight = logWeight;
+        }
+
+        /**
+         * @return Internal ID of the competitor.
+         */
+        public int getID() {
+            return id;
+        }
+
+        /**
+         * @return The phase of the life cycle the competitor was in.
+         */
+        public Competitor.Phase getPhase() {
+            return phase;
+        }
+
+        /**
+         * @return The distance left to cover in meters.
+         */
+        public double getDistanceToCover() {
+            return distanceToCover;
+        }
+
+        /**
+         * @param distanceToCover The distance left to cover in meters.
+         */
+        public void setDistanceToCover(double distanceToCover) {
+            this.distanceToCover = distanceToCover;
+        }
+
+        /**
+         * @return The number of shooting sessions left.
+         */
+        public int getShootingsLeft() {
+            return shootingsLeft;
+        }
+
+        /**
+         * Sets the speed, aiming time and accuracy modifiers.
+         * @param speedFactor The speed modifier.
+         * @param aimingFactor The aiming time modifier.
+         * @param accuracyFactor The accuracy modifier.
+         */
+        public void setFactors(float speedFactor, float aimingFactor, float accuracyFactor) {
+            this.speedFactor = speedFactor;
+            this.aimingFactor = aimingFactor;
+            this.accuracyFactor = accuracyFactor;
+        }
+
+        /**
+         * @return The speed modifier.
+         */
+        public float getSpeedFactor() {
+            return speedFactor;
+        }
+
+        /**
+         * @return The aiming time modifier.
+         */
+        public float getAimingFactor() {
+            return aimingFactor;
+        }
+
+        /**
+         * @return The accuracy modifier.
+         */
+        public float getAccuracyFactor() {
+            return accuracyFactor;
+        }
+
+        /**
+         * @return The stress level.
+         */
+        public int getDesperation() {
+            return currentDesperation;
+        }
+
+        /**
+         * @param currentDesperation The stress level.
+         */
+        public void setDesperation(int currentDesperation) {
+            this.currentDesperation = currentDesperation;
+        }
+
+        /**
+         * @return <code>true</code> if the competitor panics.
+         */
+        public boolean isPanic() {
+            return panic;
+        }
+
+        /**
+         * @param panic The panic flag.
+         */
+        public void setPanic(boolean panic) {
+            this.panic = panic;
+        }
+    }
+
+
+    private RaceSnapshot(Biathlon model, CompetitorState[] competitors, int[] queue) {
+        this.time = model.presentTime().getTimeAsDouble();
+        this.seed = model.getSeed();
+        this.numCompetitors = model.getNumCompetitors();
+        this.movement = model.getMovement();
+        this.eventSampling = model.getEventSampling();
+        this.antithetic = model.isAntithetic();
+        this.importanceSampling = model.getImportanceSampling();
+        this.modelRandomState = model.getRandomState();
+        this.parameters = new Parameters(model.getParameters());
+        this.competitors = competitors;
+        this.queue = queue;
+        this.results = new Results(model, model.getResults());
+        this.rangePool = new RangePool(model, model.getRangePool());
+    }
+
+
+    /**
+     * Captures the current state of a race. Has to be called from within the
+     * simulation, see <code>Biathlon.takeSnapshotAt()</code>.
+     *
+     * @param model
+     *            The model carrying out the race.
+     * @return The snapshot.
+     */
+    public static RaceSnapshot capture(Biathlon model) {
+        if (model.getRangePool() == null)
+            throw new IllegalStateException("Snapshots require the multi-lane shooting range.");
+
+        CompetitorState[] competitors = new CompetitorState[model.getNumCompetitors()];
+
+        for (int i = 0; i < competitors.length; i++) {
+            if (model.getCompetitor(i) == null)
+                throw new IllegalStateException("Snapshots can be taken only once all the competitors started.");
+
+            competitors[i] = model.getCompetitor(i).capture();
+        }
+
+        List<Integer> queue = new ArrayList<Integer>();
+
+        for (Competitor c : model.competitorsQueue)
+            queue.add(c.getID());
+
+        int[] order = new int[queue.size()];
+
+        for (int i = 0; i < order.length; i++)
+            order[i] = queue.get(i);
+
+        return new RaceSnapshot(model, competitors, order);
+    }
+
+
+    /**
+     * Creates a model continuing the race from this snapshot. The model has
+     * to be started at <code>getTime()</code>.
+     *
+     * @param modelName
+     *            The name of the model.
+     * @param logDirectory
+     *            The directory the logs are written to, <code>null</code>
+     *            disables logging.
+     * @param variant
+     *            The variant of the continuation, 0 repeats the original one.
+     * @return The model, not connected to an experiment yet.
+     */
+    public Biathlon fork(String modelName, String logDirectory, long variant) {
+        Biathlon model = new Biathlon(modelName, seed, logDirectory);
+        model.setNumCompetitors(numCompetitors);
+        model.setShootingLanes(rangePool.getLanes());
+        model.setMovement(movement);
+        model.setEventSampling(eventSampling);
+        model.setAntithetic(antithetic);
+        model.setImportanceSampling(importanceSampling);
+        model.setParameters(new Parameters(parameters));
+        model.restore(this, variant);
+        return model;
+    }
+
+
+    /**
+     * Simulates a continuation of the race from this snapshot to the end.
+     *
+     * @param variant
+     *            The variant of the continuation, 0 repeats the original one.
+     * @return The results of the whole race, detached from the model.
+     */
+    public Results runFork(long variant) {
+        Biathlon model = fork("Biathlon", null, variant);
+
+        Experiment exp = ReplicationRunner.batchExperiment(String.format("Biathlon_fork_%d", variant), seed + variant);
+        model.connectToExperiment(exp);
+
+        exp.stop(new TimeInstant(Biathlon.SIMULATION_TIME));
+        exp.start(new TimeInstant(time));
+        exp.finish();
+        model.closeLogs();
+
+        Results results = model.getResults();
+        results.detach();
+        return results;
+    }
+
+
+    /**
+     * @return The simulation time of the snapshot in seconds.
+     */
+    public double getTime() {
+        return time;
+    }
+
+
+    /**
+     * Returns the state of a competitor. It may be modified before forking.
+     *
+     * @param id
+     *            Internal competitor ID.
+     * @return The state of the competitor.
+     */
+    public CompetitorState getCompetitor(int id) {
+        return competitors[id];
+    }
+
+
+    /**
+     * @return Internal IDs of the competitors waiting for a lane, in the queue order.
+     */
+    public int[] getQueue() {
+        return queue.clone();
+    }
+
+
+    /**
+     * @return The results up to the snapshot.
+     */
+    public Results getResults() {
+        return results;
+    }
+
+
+    /**
+     * @return The state of the shooting range lanes.
+     */
+    public RangePool getRangePool() {
+        return rangePool;
+    }
+
+
+    /**
+     * @return The state of the random stream of the model.
+     */
+    long getModelRandomState() {
+        return modelRandomState;
+    }
+}
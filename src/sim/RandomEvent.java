@@ -30,72 +30,212 @@ public enum RandomEvent {
     // Estimated number of falls (per run) : 1x
     // Estimated number of problems with skis (per run) : 2x
     // Estimated number of slips: every minute
-    FALL(new ContDistNormal(Biathlon.getInstance(), "Fall down (likehood)", 0.8 / Biathlon.estimateDuration(),
-            1.0 / Biathlon.estimateDuration() * 0.1, false, false), new DiscreteDistUniform(Biathlon.getInstance(),
-            "Fall down (duration)", 4, 8, false, false), new DiscreteDistUniform(Biathlon.getInstance(),
-            "Fall down (desperation)", 5, 7, false, false)), SLIP(new ContDistNormal(Biathlon.getInstance(),
-            "Slip (likehood)", 40.0 / Biathlon.estimateDuration(), 60.0 / Biathlon.estimateDuration() * 0.25, false,
-            false), new DiscreteDistUniform(Biathlon.getInstance(), "Slip (duration)", 1, 2, false, false),
-            new DiscreteDistUniform(Biathlon.getInstance(), "Slip (desperation)", 0, 1, false, false)), PROBLEM_WITH_SKIS(
-            new ContDistNormal(Biathlon.getInstance(), "Problem with skis (likehood)",
-                    1.5 / Biathlon.estimateDuration(), 2.0 / Biathlon.estimateDuration() * 0.08, false, false),
-            new DiscreteDistUniform(Biathlon.getInstance(), "Problem with skis (duration)", 7, 15, false, false),
-            new DiscreteDistUniform(Biathlon.getInstance(), "Problem with skis (desperation)", 3, 6, false, false));
+    FALL("Fall down", 0.8, 1.0 * 0.1, 4, 8, 5, 7),
+    SLIP("Slip", 40.0, 60.0 * 0.25, 1, 2, 0, 1),
+    PROBLEM_WITH_SKIS("Problem with skis", 1.5, 2.0 * 0.08, 7, 15, 3, 6);
 
     /**
-     * Models likehood of occurence of an event.
+     * Name prefix of the distributions modelling this event.
      */
-    private final NumericalDist<Double> likehood;
+    private final String label;
 
     /**
-     * Models duration of an event (in seconds).
+     * Expected number of occurences per run (likehood mean).
      */
-    private final NumericalDist<Long> duration;
+    private final double occurences;
 
     /**
-     * Shows how an event affects competotor's desperation.
+     * Standard deviation of the number of occurences per run.
      */
-    private final NumericalDist<Long> desperationMod;
+    private final double occurencesStdDev;
 
+    private final long minDuration;
+    private final long maxDuration;
+    private final long minDesperation;
+    private final long maxDesperation;
 
-    private RandomEvent(NumericalDist<Double> likehood, NumericalDist<Long> duration, NumericalDist<Long> desperationMod) {
-        this.likehood = likehood;
-        this.duration = duration;
-        this.desperationMod = desperationMod;
+    /**
+     * Likehood of occurence in a single step (mean and standard deviation).
+     */
+    private final double likehoodMean;
+    private final double likehoodStdDev;
+
+
+    private RandomEvent(String label, double occurences, double occurencesStdDev, long minDuration,
+            long maxDuration, long minDesperation, long maxDesperation) {
+        this.label = label;
+        this.occurences = occurences;
+        this.occurencesStdDev = occurencesStdDev;
+        this.minDuration = minDuration;
+        this.maxDuration = maxDuration;
+        this.minDesperation = minDesperation;
+        this.maxDesperation = maxDesperation;
+        this.likehoodMean = occurences / Biathlon.estimateDuration();
+        this.likehoodStdDev = occurencesStdDev / Biathlon.estimateDuration();
+    }
+
+
+    /**
+     * Creates the distributions modelling this event and binds them to a model.
+     * 
+     * @param model
+     *            The model owning the distributions.
+     * @return Event's distributions.
+     */
+    public Sampler createSampler(Biathlon model) {
+        return new Sampler(new ContDistNormal(model, label + " (likehood)", likehoodMean, likehoodStdDev, false,
+                false), new DiscreteDistUniform(model, label + " (duration)", minDuration, maxDuration, false,
+                false), new DiscreteDistUniform(model, label + " (desperation)", minDesperation, maxDesperation,
+                false, false), model);
+    }
+
+
+    /**
+     * Calculates the probability of the event happening in a single simulation
+     * step, that is the expected value of the likehood clamped to [0, 1].
+     * 
+     * @return The probability of occurence per step.
+     */
+    public double getProbability() {
+        return getProbability(0.0);
+    }
+
+
+    /**
+     * Calculates the probability of the event happening in a single simulation
+     * step when sampled with a likehood modifier (see <code>hasHappened()</code>).
+     * 
+     * @param modifier
+     *            The likehood modifier.
+     * @return The probability of occurence per step.
+     */
+    public double getProbability(double modifier) {
+        double m = likehoodMean + modifier;
+        double s = likehoodStdDev;
+
+        // E[max(L, 0)] for L ~ N(m, s), the upper clamp is never reached.
+        return m * Helpers.normalCdf(m / s) + s * Helpers.normalPdf(m / s);
+    }
+
+
+    /**
+     * @return The mean likehood of occurence in a single step.
+     */
+    public double getLikehoodMean() {
+        return likehoodMean;
+    }
+
+
+    /**
+     * @return The minimal duration of the event in seconds.
+     */
+    public int getMinDuration() {
+        return (int) minDuration;
+    }
+
+
+    /**
+     * @return The maximal duration of the event in seconds.
+     */
+    public int getMaxDuration() {
+        return (int) maxDuration;
+    }
+
+
+    /**
+     * @return The minimal change in a desperation level caused by the event.
+     */
+    public int getMinDesperation() {
+        return (int) minDesperation;
+    }
+
+
+    /**
+     * @return The maximal change in a desperation level caused by the event.
+     */
+    public int getMaxDesperation() {
+        return (int) maxDesperation;
     }
 
 
     /**
      * Determines whether an event has happened.
      * 
+     * @param model
+     *            The model the competitor belongs to.
      * @param modifier
      *            Affects likehood of event's occurence. The higher its value
      *            the more likely an event occures.
      * @return <code>true</code> if an event occured, otherwise
      *         <code>false</code>
      */
-    public boolean hasHappened(double modifier) {
-        return (likehood.sample() + modifier > Helpers.rand());
+    public boolean hasHappened(Biathlon model, double modifier) {
+        return model.getSampler(this).hasHappened(modifier);
     }
 
 
     /**
      * Calculates the duration of an event.
      * 
+     * @param model
+     *            The model the competitor belongs to.
      * @return Event's duration.
      */
-    public TimeSpan getDuration() {
-        return duration.sampleTimeSpan();
+    public TimeSpan getDuration(Biathlon model) {
+        return model.getSampler(this).getDuration();
     }
 
 
     /**
      * Calculates how an event could affect competitor's psyche.
      * 
+     * @param model
+     *            The model the competitor belongs to.
+     * @return Change in a desperation level of a competitor.
+     */
+    public int getDesperationMod(Biathlon model) {
+        return model.getSampler(this).getDesperationMod();
+    }
+
+
+    /**
+     * Determines whether an event has happened, sampling a random stream.
+     * 
+     * @param random
+     *            The random stream of the competitor.
+     * @param modifier
+     *            Affects likehood of event's occurence.
+     * @return <code>true</code> if an event occured, otherwise
+     *         <code>false</code>
+     * @see #hasHappened(Biathlon, double)
+     */
+    public boolean hasHappened(RandomStream random, double modifier) {
+        return (random.normal(likehoodMean, likehoodStdDev) + modifier > random.nextDouble());
+    }
+
+
+    /**
+     * Calculates the duration of an event, sampling a random stream.
+     * 
+     * @param random
+     *            The random stream of the competitor.
+     * @return Event's duration.
+     */
+    public TimeSpan getDuration(RandomStream random) {
+        return new TimeSpan((double) random.uniform(minDuration, maxDuration));
+    }
+
+
+    /**
+     * Calculates how an event could affect competitor's psyche, sampling a
+     * random stream.
+     * 
+     * @param random
+     *            The random stream of the competitor.
      * @return Change in a desperation level of a competitor.
      */
-    public int getDesperationMod() {
-        return desperationMod.sample().intValue();
+    public int getDesperationMod(RandomStream random) {
+        return (int) random.uniform(minDesperation, maxDesperation);
     }
 
 
@@ -104,4 +244,61 @@ public enum RandomEvent {
         return this.name().replace('_', ' ').toLowerCase();
     }
 
+
+    /**
+     * Distributions of a single event bound to a single model instance.
+     */
+    public static class Sampler {
+
+        /**
+         * Models likehood of occurence of an event.
+         */
+        private final NumericalDist<Double> likehood;
+
+        /**
+         * Models duration of an event (in seconds).
+         */
+        private final NumericalDist<Long> duration;
+
+        /**
+         * Shows how an event affects competotor's desperation.
+         */
+        private final NumericalDist<Long> desperationMod;
+
+        private final Biathlon model;
+
+
+        private Sampler(NumericalDist<Double> likehood, NumericalDist<Long> duration,
+                NumericalDist<Long> desperationMod, Biathlon model) {
+            this.likehood = likehood;
+            this.duration = duration;
+            this.desperationMod = desperationMod;
+            this.model = model;
+        }
+
+
+        /**
+         * @see RandomEvent#hasHappened(Biathlon, double)
+         */
+        public boolean hasHappened(double modifier) {
+            return (likehood.sample() + modifier > model.rand());
+        }
+
+
+        /**
+         * @see RandomEvent#getDuration(Biathlon)
+         */
+        public TimeSpan getDuration() {
+            return duration.sampleTimeSpan();
+        }
+
+
+        /**
+         * @see RandomEvent#getDesperationMod(Biathlon)
+         */
+        public int getDesperationMod() {
+            return desperationMod.sample().intValue();
+        }
+    }
+
 }
@@ -0,0 +1,188 @@
+package sim;
+
+/**
+ * The occurences of the random events of a single competitor, scheduled in
+ * advance.
+ * <p>
+ * Sampling every event in every step (<code>RandomEvent.hasHappened()</code>)
+ * is a Bernoulli trial with the probability
+ * <code>RandomEvent.getProbability()</code>, so the number of steps between
+ * two occurences is geometrically distributed - the discrete counterpart of
+ * the Poisson process. The schedule draws it once per occurence instead of
+ * twice per step, which reproduces the same event rates. Every event draws
+ * from a stream of its own.
+ */
+public class RandomEventSchedule {
+
+    private static final RandomEvent[] EVENTS = RandomEvent.values();
+
+    /**
+     * The random streams of the events, indexed by the ordinal.
+     */
+    private final RandomStream[] random;
+
+    /**
+     * The probabilities of the events in a single step, indexed by the ordinal.
+     */
+    private final double[] probability;
+
+    /**
+     * The number of steps taken so far.
+     */
+    private long step = 0;
+
+    /**
+     * The step of the next occurence of each event, indexed by the ordinal.
+     */
+    private final long[] next = new long[EVENTS.length];
+
+
+    /**
+     * The c-tor. Schedules the first occurence of every event.
+     *
+     * @param random
+     *            The random streams of the events indexed by the ordinal,
+     *            see <code>CompetitorStreams.events()</code>.
+     */
+    public RandomEventSchedule(RandomStream[] random) {
+        this(random, defaultProbabilities());
+    }
+
+
+    /**
+     * The c-tor. Schedules the first occurence of every event with the given
+     * probabilities, e.g. biased by <code>ImportanceSampling</code>.
+     *
+     * @param random
+     *            The random streams of the events indexed by the ordinal.
+     * @param probability
+     *            The probabilities of the events in a single step indexed
+     *            by the ordinal.
+     */
+    public RandomEventSchedule(RandomStream[] random, double[] probability) {
+        this.random = random;
+        this.probability = probability;
+
+        for (RandomEvent e : EVENTS)
+            next[e.ordinal()] = nextOccurence(random[e.ordinal()], probability[e.ordinal()]);
+    }
+
+
+    /**
+     * The c-tor. Restores a captured state of the schedule.
+     *
+     * @param random
+     *            The random streams of the events indexed by the ordinal.
+     * @param probability
+     *            The probabilities of the events in a single step indexed
+     *            by the ordinal.
+     * @param step
+     *            The number of steps taken, see <code>getStep()</code>.
+     * @param next
+     *            The steps of the next occurences indexed by the event
+     *            ordinal, see <code>getNextOccurence()</code>.
+     */
+    public RandomEventSchedule(RandomStream[] random, double[] probability, long step, long[] next) {
+        this.random = random;
+        this.probability = probability;
+        this.step = step;
+        System.arraycopy(next, 0, this.next, 0, this.next.length);
+    }
+
+
+    /**
+     * Moves the schedule to the next step. Has to be called once per step,
+     * before the events are checked.
+     */
+    public void advance() {
+        ++step;
+    }
+
+
+    /**
+     * Determines whether an event happens in the current step and if so,
+     * schedules its next occurence.
+     *
+     * @param e
+     *            The random event.
+     * @return <code>true</code> if the event occures, otherwise
+     *         <code>false</code>
+     */
+    public boolean isDue(RandomEvent e) {
+        int i = e.ordinal();
+
+        if (next[i] != step)
+            return false;
+
+        next[i] = step + nextOccurence(random[i], probability[i]);
+        return true;
+    }
+
+
+    /**
+     * Returns the number of steps until the next occurence of any event.
+     * The steps before it need not check the events.
+     *
+     * @return The number of steps, 0 if an event is due in the current step.
+     */
+    public long stepsToNextEvent() {
+        long min = Long.MAX_VALUE;
+
+        for (long n : next)
+            min = Math.min(min, n);
+
+        return min - step;
+    }
+
+
+    /**
+     * Returns the number of steps taken so far.
+     *
+     * @return The current step.
+     */
+    public long getStep() {
+        return step;
+    }
+
+
+    /**
+     * Returns the step of the next occurence of an event.
+     *
+     * @param e
+     *            The random event.
+     * @return The step of the next occurence.
+     */
+    public long getNextOccurence(RandomEvent e) {
+        return next[e.ordinal()];
+    }
+
+
+    /**
+     * Returns the unbiased probabilities of the events in a single step.
+     *
+     * @return The probabilities indexed by the event ordinal.
+     */
+    public static double[] defaultProbabilities() {
+        double[] p = new double[EVENTS.length];
+
+        for (RandomEvent e : EVENTS)
+            p[e.ordinal()] = e.getProbability();
+
+        return p;
+    }
+
+
+    /**
+     * Draws the number of steps until the next occurence of an event.
+     *
+     * @param random
+     *            The random stream to sample.
+     * @param p
+     *            The probability of occurence in a single step.
+     * @return The number of steps, at least 1.
+     */
+    public static long nextOccurence(RandomStream random, double p) {
+        double u = 1.0 - random.nextDouble(); // (0, 1]
+        return 1 + (long) Math.floor(Math.log(u) / Math.log(1.0 - p));
+    }
+}
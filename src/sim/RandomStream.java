@@ -0,0 +1,340 @@
+package sim;
+
+/**
+ * A lightweight, non thread-safe stream of pseudorandom numbers.
+ * <p>
+ * The generator follows <code>java.util.SplittableRandom</code> (SplitMix64):
+ * the whole state is a single <code>long</code>, so a stream is cheap to
+ * create, to split and to capture. Every competitor owns a stream of its own,
+ * which makes the samples independent of the order the processes run in and
+ * frees the hot path from the shared state and reporting overhead of the
+ * DESMO-J distributions. Normal variates are drawn with the ziggurat method of
+ * Marsaglia and Tsang.
+ * <p>
+ * An antithetic stream (<code>antithetic()</code>) draws the mirror images of
+ * the samples of its twin: <i>1 - u</i> for the uniform and <i>-z</i> for the
+ * normal variates.
+ */
+public class RandomStream {
+
+    /**
+     * The odd increment of the Weyl sequence (the golden ratio).
+     */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    /**
+     * The number of ziggurat layers.
+     */
+    private static final int LAYERS = 128;
+
+    /**
+     * The start of the right tail of the ziggurat.
+     */
+    private static final double R = 3.442619855899;
+
+    /**
+     * The area of a single ziggurat layer.
+     */
+    private static final double V = 9.91256303526217e-3;
+
+    private static final long[] kn = new long[LAYERS];
+    private static final double[] wn = new double[LAYERS];
+    private static final double[] fn = new double[LAYERS];
+
+    static {
+        final double m = 2147483648.0;
+        double dn = R;
+        double tn = dn;
+        double q = V / Math.exp(-0.5 * dn * dn);
+
+        kn[0] = (long) ((dn / q) * m);
+        kn[1] = 0;
+        wn[0] = q / m;
+        wn[LAYERS - 1] = dn / m;
+        fn[0] = 1.0;
+        fn[LAYERS - 1] = Math.exp(-0.5 * dn * dn);
+
+        for (int i = LAYERS - 2; i >= 1; i--) {
+            dn = Math.sqrt(-2.0 * Math.log(V / dn + Math.exp(-0.5 * dn * dn)));
+            kn[i + 1] = (long) ((dn / tn) * m);
+            tn = dn;
+            fn[i] = Math.exp(-0.5 * dn * dn);
+            wn[i] = dn / m;
+        }
+    }
+
+    private long state;
+
+    private final boolean antithetic;
+
+
+    /**
+     * The c-tor.
+     *
+     * @param seed
+     *            The initial state of the stream.
+     */
+    public RandomStream(long seed) {
+        this(seed, false);
+    }
+
+
+    /**
+     * The c-tor. Creates one of many independent streams sharing a seed.
+     *
+     * @param seed
+     *            The seed shared by the streams, e.g. of a model.
+     * @param index
+     *            The index of the stream, e.g. a competitor ID.
+     */
+    public RandomStream(long seed, long index) {
+        this(derive(seed, index), false);
+    }
+
+
+    private RandomStream(long state, boolean antithetic) {
+        this.state = state;
+        this.antithetic = antithetic;
+    }
+
+
+    /**
+     * Restarts this stream where <code>RandomStream(seed, index)</code> would
+     * start, e.g. to reuse a pooled stream.
+     *
+     * @param seed
+     *            The seed shared by the streams.
+     * @param index
+     *            The index of the stream.
+     */
+    public void reset(long seed, long index) {
+        state = derive(seed, index);
+    }
+
+
+    /**
+     * Creates a new stream, independent of this one, advancing this one.
+     *
+     * @return The new stream, antithetic if this one is.
+     */
+    public RandomStream split() {
+        return new RandomStream(mix(rawLong() ^ GOLDEN_GAMMA), antithetic);
+    }
+
+
+    /**
+     * Creates one of many independent streams derived from the current state
+     * of this one, without advancing it.
+     *
+     * @param index
+     *            The index of the stream.
+     * @return The new stream, antithetic if this one is.
+     */
+    public RandomStream substream(long index) {
+        return new RandomStream(derive(state, index), antithetic);
+    }
+
+
+    /**
+     * Creates the antithetic twin of this stream. The twin starts at the same
+     * state and draws the mirror images of the samples of this stream.
+     *
+     * @return The new stream.
+     */
+    public RandomStream antithetic() {
+        return new RandomStream(state, !antithetic);
+    }
+
+
+    /**
+     * @return <code>true</code> if this stream draws the mirrored samples.
+     */
+    public boolean isAntithetic() {
+        return antithetic;
+    }
+
+
+    /**
+     * Returns the state of this stream. Restoring it with
+     * <code>setState()</code> repeats the following samples.
+     *
+     * @return The current state.
+     */
+    public long getState() {
+        return state;
+    }
+
+
+    /**
+     * Restores the state of this stream.
+     *
+     * @param state
+     *            A state returned by <code>getState()</code>.
+     */
+    public void setState(long state) {
+        this.state = state;
+    }
+
+
+    /**
+     * @return A uniformly distributed pseudorandom <code>long</code>.
+     */
+    public long nextLong() {
+        return antithetic ? ~rawLong() : rawLong();
+    }
+
+
+    /**
+     * @return A uniformly distributed pseudorandom double value in [0, 1) range.
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+
+    /**
+     * Returns a uniformly distributed pseudorandom integer.
+     *
+     * @param bound
+     *            The upper bound (exclusive), must be positive.
+     * @return A pseudorandom value in [0, <code>bound</code>) range.
+     */
+    public int nextInt(int bound) {
+        // Lemire's multiply-shift, the bias is below 2^-32 for the bounds used here.
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+
+    /**
+     * Returns a uniformly distributed pseudorandom double value.
+     *
+     * @param low
+     *            The lower bound of the range.
+     * @param high
+     *            The upper bound of the range.
+     * @return A pseudorandom value in [<code>low</code>, <code>high</code>) range.
+     */
+    public double uniform(double low, double high) {
+        return low + nextDouble() * (high - low);
+    }
+
+
+    /**
+     * Returns a uniformly distributed pseudorandom integer.
+     *
+     * @param low
+     *            The lower bound of the range.
+     * @param high
+     *            The upper bound of the range.
+     * @return A pseudorandom value in [<code>low</code>, <code>high</code>] range.
+     */
+    public long uniform(long low, long high) {
+        return low + nextInt((int) (high - low + 1));
+    }
+
+
+    /**
+     * Returns a normally distributed pseudorandom value.
+     *
+     * @param mean
+     *            The mean of the distribution.
+     * @param stdDev
+     *            The standard deviation of the distribution.
+     * @return A pseudorandom value.
+     */
+    public double normal(double mean, double stdDev) {
+        return mean + stdDev * nextGaussian();
+    }
+
+
+    /**
+     * Returns a normally distributed, non-negative pseudorandom value. The
+     * negative samples are drawn again, as with
+     * <code>NumericalDist.setNonNegative(true)</code>.
+     *
+     * @param mean
+     *            The mean of the distribution.
+     * @param stdDev
+     *            The standard deviation of the distribution.
+     * @return A non-negative pseudorandom value.
+     */
+    public double nonNegativeNormal(double mean, double stdDev) {
+        double x;
+
+        do {
+            x = mean + stdDev * nextGaussian();
+        } while (x < 0);
+
+        return x;
+    }
+
+
+    /**
+     * Returns a standard normal pseudorandom value (the ziggurat method).
+     *
+     * @return A pseudorandom value with the mean 0 and the standard deviation 1.
+     */
+    public double nextGaussian() {
+        return antithetic ? -gaussian() : gaussian();
+    }
+
+
+    /**
+     * Draws a standard normal value from the raw, unmirrored samples.
+     */
+    private double gaussian() {
+        for (;;) {
+            long bits = rawLong();
+            int iz = (int) (bits & (LAYERS - 1));
+            int hz = (int) (bits >> 32); // The layer and the value use separate bits.
+
+            double x = hz * wn[iz];
+
+            // Fast path: the point lies inside of the layer's rectangle (~98.8%).
+            if (Math.abs((long) hz) < kn[iz])
+                return x;
+
+            if (iz == 0) {
+                // The tail beyond R.
+                double y;
+
+                do {
+                    x = -Math.log(1.0 - rawDouble()) / R;
+                    y = -Math.log(1.0 - rawDouble());
+                } while (y + y < x * x);
+
+                return hz > 0 ? R + x : -R - x;
+            }
+
+            if (fn[iz] + rawDouble() * (fn[iz - 1] - fn[iz]) < Math.exp(-0.5 * x * x))
+                return x;
+        }
+    }
+
+
+    private long rawLong() {
+        return mix(state += GOLDEN_GAMMA);
+    }
+
+
+    private double rawDouble() {
+        return (rawLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+
+    private static long derive(long seed, long index) {
+        return mix(seed ^ mix(index * GOLDEN_GAMMA + GOLDEN_GAMMA));
+    }
+
+
+    /**
+     * The SplitMix64 finalizer.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,184 @@
+package sim;
+
+/**
+ * A shooting range with several lanes.
+ * <p>
+ * Unlike the <code>ShootingRange</code> process, the pool is passive: a
+ * <code>Competitor</code> takes an idle lane, shoots on its own and hands the
+ * lane over to the next waiting competitor when done, so an uncontended
+ * shooting session does not switch processes at all. Idle lanes are kept on a
+ * stack, so taking and returning a lane takes constant time.
+ * <p>
+ * The pool also keeps per-lane utilization and wait time statistics.
+ */
+public class RangePool {
+
+    private final Biathlon model;
+    private Logger logger;
+
+    /**
+     * Stack of the idle lanes.
+     */
+    private final int[] idle;
+    private int numIdle;
+
+    /**
+     * Start of the current session per lane, in seconds.
+     */
+    private final double[] busySince;
+
+    /**
+     * Total busy time per lane, in seconds.
+     */
+    private final double[] busyTime;
+
+    /**
+     * The number of sessions per lane.
+     */
+    private final int[] sessions;
+
+    /**
+     * Total and maximal waiting time of the competitors served per lane, in seconds.
+     */
+    private final double[] totalWait;
+    private final double[] maxWait;
+
+    /**
+     * The c-tor.
+     * @param model The model owning the pool.
+     * @param lanes The number of lanes.
+     */
+    public RangePool(Biathlon model, int lanes) {
+        this.model = model;
+
+        idle = new int[lanes];
+        busySince = new double[lanes];
+        busyTime = new double[lanes];
+        sessions = new int[lanes];
+        totalWait = new double[lanes];
+        maxWait = new double[lanes];
+
+        // Lane 0 is handed out first.
+        for (int i = 0; i < lanes; i++)
+            idle[i] = lanes - 1 - i;
+
+        numIdle = lanes;
+    }
+
+    /**
+     * The c-tor. Copies the state of another pool.
+     * @param model The model owning the pool.
+     * @param other The pool to copy.
+     */
+    public RangePool(Biathlon model, RangePool other) {
+        this.model = model;
+
+        idle = other.idle.clone();
+        numIdle = other.numIdle;
+        busySince = other.busySince.clone();
+        busyTime = other.busyTime.clone();
+        sessions = other.sessions.clone();
+        totalWait = other.totalWait.clone();
+        maxWait = other.maxWait.clone();
+    }
+
+    /**
+     * Returns the number of lanes.
+     * @return The number of lanes.
+     */
+    public int getLanes() {
+        return idle.length;
+    }
+
+    /**
+     * Takes an idle lane.
+     * @return The lane or -1 if all the lanes are busy.
+     */
+    public int acquire() {
+        return numIdle > 0 ? idle[--numIdle] : -1;
+    }
+
+    /**
+     * Returns a lane to the pool of idle lanes.
+     * @param lane The lane.
+     */
+    public void release(int lane) {
+        idle[numIdle++] = lane;
+    }
+
+    /**
+     * Registers the start of a shooting session.
+     * @param lane The lane.
+     * @param arrival The time the competitor arrived at the range, in seconds.
+     * @param now The current time, in seconds.
+     */
+    public void startSession(int lane, double arrival, double now) {
+        double wait = now - arrival;
+
+        busySince[lane] = now;
+        ++sessions[lane];
+        totalWait[lane] += wait;
+        maxWait[lane] = Math.max(maxWait[lane], wait);
+    }
+
+    /**
+     * Registers the end of a shooting session.
+     * @param lane The lane.
+     * @param now The current time, in seconds.
+     */
+    public void endSession(int lane, double now) {
+        busyTime[lane] += now - busySince[lane];
+    }
+
+    /**
+     * Returns the utilization of a lane.
+     * @param lane The lane.
+     * @param totalTime The time the utilization is computed over, in seconds.
+     * @return The fraction of the time the lane was busy.
+     */
+    public double getUtilization(int lane, double totalTime) {
+        return totalTime > 0 ? busyTime[lane] / totalTime : 0.0;
+    }
+
+    /**
+     * Returns the number of sessions carried out on a lane.
+     * @param lane The lane.
+     * @return The number of sessions.
+     */
+    public int getSessions(int lane) {
+        return sessions[lane];
+    }
+
+    /**
+     * Returns the mean waiting time of the competitors served on a lane.
+     * @param lane The lane.
+     * @return The mean waiting time in seconds.
+     */
+    public double getMeanWait(int lane) {
+        return sessions[lane] > 0 ? totalWait[lane] / sessions[lane] : 0.0;
+    }
+
+    /**
+     * Returns the maximal waiting time of the competitors served on a lane.
+     * @param lane The lane.
+     * @return The maximal waiting time in seconds.
+     */
+    public double getMaxWait(int lane) {
+        return maxWait[lane];
+    }
+
+    /**
+     * Dumps the per-lane statistics into a file.
+     * @param filename The log file storing the statistics.
+     */
+    public void dumpStatistics(String filename) {
+        if(logger == null) logger = new Logger(model, filename);
+
+        long now = model.presentTime().getTimeTruncated();
+
+        for (int lane = 0; lane < idle.length; lane++) {
+            logger.log(now, String.format("Lane %d \t %d sessions \t %.1f%% busy \t wait %.1f s avg, %.1f s max",
+                    lane + 1, sessions[lane], 100.0 * getUtilization(lane, now), getMeanWait(lane), maxWait[lane]));
+        }
+    }
+}
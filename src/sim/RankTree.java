@@ -0,0 +1,153 @@
+package sim;
+
+/**
+ * An order-statistic tree of the competitors ordered by time (a treap).
+ * <p>
+ * Every node keeps the size of its subtree, so both the rank of an entry and
+ * the entry at a rank are found in O(log n) expected time. The entries are
+ * ordered by the time and then by the competitor ID, which makes them unique.
+ * The priorities are drawn from a fixed seed, so the shape of the tree is
+ * deterministic.
+ */
+public class RankTree {
+
+    private static class Node {
+        final double time;
+        final int id;
+        final long priority;
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(double time, int id, long priority) {
+            this.time = time;
+            this.id = id;
+            this.priority = priority;
+        }
+    }
+
+    private final RandomStream priorities = new RandomStream(Biathlon.UNIVERSAL_SEED);
+    private Node root = null;
+
+    /**
+     * Inserts an entry.
+     * @param time The time of the competitor.
+     * @param id Internal competitor ID.
+     */
+    public void insert(double time, int id) {
+        root = insert(root, new Node(time, id, priorities.nextLong()));
+    }
+
+    /**
+     * @return The number of entries.
+     */
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Returns the rank of an entry.
+     * @param time The time of the competitor.
+     * @param id Internal competitor ID.
+     * @return The number of entries ordered before it, 0 for the leader.
+     */
+    public int rank(double time, int id) {
+        int rank = 0;
+        Node n = root;
+
+        while (n != null) {
+            if (less(n.time, n.id, time, id)) {
+                rank += size(n.left) + 1;
+                n = n.right;
+            } else {
+                n = n.left;
+            }
+        }
+
+        return rank;
+    }
+
+    /**
+     * Returns the competitor at a rank.
+     * @param rank The rank, 0 for the leader.
+     * @return Internal competitor ID or -1 if there are not that many entries.
+     */
+    public int select(int rank) {
+        Node n = nodeAt(rank);
+        return n != null ? n.id : -1;
+    }
+
+    /**
+     * Returns the time at a rank.
+     * @param rank The rank, 0 for the leader.
+     * @return The time or <code>NaN</code> if there are not that many entries.
+     */
+    public double selectTime(int rank) {
+        Node n = nodeAt(rank);
+        return n != null ? n.time : Double.NaN;
+    }
+
+    private Node nodeAt(int rank) {
+        Node n = root;
+
+        while (n != null) {
+            int l = size(n.left);
+
+            if (rank < l) {
+                n = n.left;
+            } else if (rank == l) {
+                return n;
+            } else {
+                rank -= l + 1;
+                n = n.right;
+            }
+        }
+
+        return null;
+    }
+
+    private static Node insert(Node n, Node x) {
+        if (n == null) return x;
+
+        if (less(x.time, x.id, n.time, n.id)) {
+            n.left = insert(n.left, x);
+            if (n.left.priority > n.priority) n = rotateRight(n);
+        } else {
+            n.right = insert(n.right, x);
+            if (n.right.priority > n.priority) n = rotateLeft(n);
+        }
+
+        update(n);
+        return n;
+    }
+
+    private static Node rotateRight(Node n) {
+        Node l = n.left;
+        n.left = l.right;
+        l.right = n;
+        update(n);
+        update(l);
+        return l;
+    }
+
+    private static Node rotateLeft(Node n) {
+        Node r = n.right;
+        n.right = r.left;
+        r.left = n;
+        update(n);
+        update(r);
+        return r;
+    }
+
+    private static void update(Node n) {
+        n.size = size(n.left) + size(n.right) + 1;
+    }
+
+    private static int size(Node n) {
+        return n != null ? n.size : 0;
+    }
+
+    private static boolean less(double t1, int id1, double t2, int id2) {
+        return t1 < t2 || (t1 == t2 && id1 < id2);
+    }
+}
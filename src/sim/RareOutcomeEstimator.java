@@ -0,0 +1,119 @@
+package sim;
+
+/**
+ * Estimates the probability of a race outcome from weighted replications.
+ * <p>
+ * The estimate is the mean of the outcome indicator weighted by the
+ * likelihood ratio of the race (<code>Results.getWeight()</code>), which is
+ * unbiased under importance sampling and reduces to the plain frequency when
+ * the samples are not biased. The estimator may be fed by several threads.
+ */
+public class RareOutcomeEstimator {
+
+    /**
+     * A race outcome.
+     */
+    public interface Outcome {
+        /**
+         * Checks whether the outcome occured in a race.
+         * @param results The results of the race.
+         * @return <code>true</code> if the outcome occured.
+         */
+        boolean occured(Results results);
+    }
+
+    private final String name;
+    private final Outcome outcome;
+
+    private final RunningStats estimate = new RunningStats();
+    private long hits = 0;
+
+    /**
+     * The c-tor.
+     * @param name The name of the outcome, used in the reports.
+     * @param outcome The outcome.
+     */
+    public RareOutcomeEstimator(String name, Outcome outcome) {
+        this.name = name;
+        this.outcome = outcome;
+    }
+
+    /**
+     * Adds a replication.
+     * @param results The results of the race.
+     */
+    public synchronized void add(Results results) {
+        boolean occured = outcome.occured(results);
+
+        if (occured)
+            ++hits;
+
+        estimate.add(occured ? results.getWeight() : 0.0);
+    }
+
+    /**
+     * @return The name of the outcome.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The estimated probability of the outcome.
+     */
+    public synchronized double getProbability() {
+        return estimate.getMean();
+    }
+
+    /**
+     * @return The standard error of the estimated probability.
+     */
+    public synchronized double getStdError() {
+        return estimate.getStdError();
+    }
+
+    /**
+     * @return The number of replications the outcome occured in.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of replications.
+     */
+    public synchronized long getReplications() {
+        return estimate.getCount();
+    }
+
+    /**
+     * The favourite does not win after both falling and having a problem with the skis.
+     * @param favourite Internal ID of the favourite.
+     * @return The outcome.
+     */
+    public static Outcome upset(final int favourite) {
+        return new Outcome() {
+            public boolean occured(Results results) {
+                return results.getWinner() != favourite
+                        && results.getEventCount(favourite, RandomEvent.FALL) > 0
+                        && results.getEventCount(favourite, RandomEvent.PROBLEM_WITH_SKIS) > 0;
+            }
+        };
+    }
+
+    /**
+     * A competitor panics before entering the last shooting range.
+     * @param id Internal competitor ID.
+     * @return The outcome.
+     */
+    public static Outcome panicBeforeLastRange(final int id) {
+        return new Outcome() {
+            public boolean occured(Results results) {
+                double panic = results.getPanicTime(id);
+                double lastRange = results.getSplitTime(id, Results.entrySplit(Biathlon.NUM_SHOOTING_RANGES - 1));
+
+                return !Double.isNaN(panic) && (Double.isNaN(lastRange) || panic < lastRange);
+            }
+        };
+    }
+}
@@ -0,0 +1,490 @@
+package sim;
+
+import desmoj.core.simulator.Experiment;
+import desmoj.core.simulator.TimeInstant;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a number of independent Monte Carlo replications of the Biathlon race.
+ * <p>
+ * Every replication builds its own model, experiment, results and random
+ * generators, so the replications can be carried out concurrently on a
+ * fixed-size thread pool. The seed of a replication depends only on its index,
+ * hence the results are identical regardless of the number of threads used.
+ */
+public class ReplicationRunner {
+
+    /**
+     * The number of replications folded into the statistics of a block, before the blocks are merged.
+     */
+    public static final int BLOCK_SIZE = 16;
+
+    /**
+     * The number of replications in a wave of <code>runAdaptive()</code> by default, whole blocks.
+     */
+    public static final int DEFAULT_WAVE_SIZE = 4 * BLOCK_SIZE;
+
+    private final int replications;
+    private final int threads;
+
+    /**
+     * Movement mode of the competitors in every replication.
+     */
+    private Biathlon.Movement movement = Biathlon.Movement.NEXT_EVENT;
+
+    /**
+     * Sampling mode of the random events in every replication.
+     */
+    private Biathlon.EventSampling eventSampling = Biathlon.EventSampling.SCHEDULED;
+
+    /**
+     * The number of competitors taking part in every replication.
+     */
+    private int numCompetitors = Biathlon.NUM_COMPETITORS;
+
+    /**
+     * The number of shooting range lanes in every replication.
+     */
+    private int shootingLanes = 0;
+
+    /**
+     * Root directory of the replication logs, <code>null</code> disables logging.
+     */
+    private String logDirectory = null;
+
+    /**
+     * Format of the replication logs.
+     */
+    private Biathlon.LogFormat logFormat = Biathlon.LogFormat.BINARY;
+
+    /**
+     * Directory of the replication traces, <code>null</code> disables tracing.
+     */
+    private String traceDirectory = null;
+
+    /**
+     * Selects the traced replications and events.
+     */
+    private TraceSettings traceSettings = null;
+
+    /**
+     * Values of the model parameters in every replication.
+     */
+    private Parameters parameters = new Parameters();
+
+    /**
+     * Set if the replications are carried out in antithetic pairs.
+     */
+    private boolean antithetic = false;
+
+    /**
+     * The biased sampling of the rare outcomes, <code>null</code> if the samples are not biased.
+     */
+    private ImportanceSampling importanceSampling = null;
+
+    /**
+     * The estimators fed with the results of every replication.
+     */
+    private final List<RareOutcomeEstimator> estimators = new ArrayList<RareOutcomeEstimator>();
+
+    /**
+     * The table the results of every replication are exported to, <code>null</code> disables the export.
+     */
+    private ResultsTable export = null;
+
+    /**
+     * The c-tor.
+     * @param replications The number of replications to carry out.
+     * @param threads The size of the thread pool.
+     */
+    public ReplicationRunner(int replications, int threads) {
+        this.replications = replications;
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the movement mode of the competitors, <code>NEXT_EVENT</code> by default.
+     * @param movement The movement mode.
+     */
+    public void setMovement(Biathlon.Movement movement) {
+        this.movement = movement;
+    }
+
+    /**
+     * Sets the sampling mode of the random events, <code>SCHEDULED</code> by default.
+     * @param eventSampling The sampling mode.
+     */
+    public void setEventSampling(Biathlon.EventSampling eventSampling) {
+        this.eventSampling = eventSampling;
+    }
+
+    /**
+     * Sets the number of competitors, <code>Biathlon.NUM_COMPETITORS</code> by default.
+     * @param numCompetitors The number of competitors.
+     */
+    public void setNumCompetitors(int numCompetitors) {
+        this.numCompetitors = numCompetitors;
+    }
+
+    /**
+     * Sets the number of shooting range lanes, 0 (the single-lane <code>ShootingRange</code>) by default.
+     * @param shootingLanes The number of lanes.
+     */
+    public void setShootingLanes(int shootingLanes) {
+        this.shootingLanes = shootingLanes;
+    }
+
+    /**
+     * Enables logging. Every replication logs into its own subdirectory.
+     * @param logDirectory The root directory of the logs, <code>null</code> disables logging.
+     * @param logFormat The format of the logs, <code>BINARY</code> by default.
+     */
+    public void setLogging(String logDirectory, Biathlon.LogFormat logFormat) {
+        this.logDirectory = logDirectory;
+        this.logFormat = logFormat;
+    }
+
+    /**
+     * Sets the values of the model parameters, the <code>Biathlon</code> constants by default.
+     * @param parameters The parameters.
+     */
+    public void setParameters(Parameters parameters) {
+        this.parameters = parameters;
+    }
+
+    /**
+     * Enables the streaming trace. Every traced replication writes its own <i>trace_NNNNNN.txt.gz</i> file.
+     * Tracing is off by default.
+     * @param traceDirectory The directory of the traces, <code>null</code> disables tracing.
+     * @param traceSettings Selects the traced replications and events.
+     */
+    public void setTrace(String traceDirectory, TraceSettings traceSettings) {
+        this.traceDirectory = traceDirectory;
+        this.traceSettings = traceSettings;
+    }
+
+    /**
+     * Enables the antithetic replication pairs: the replications <i>2k</i> and <i>2k + 1</i> share a seed and the
+     * latter draws the antithetic samples. Off by default.
+     * @param antithetic Set for the antithetic pairs.
+     */
+    public void setAntithetic(boolean antithetic) {
+        this.antithetic = antithetic;
+    }
+
+    /**
+     * Biases the random events and the accuracy in every replication. The results are weighted by the likelihood
+     * ratios of the races. Off by default.
+     * @param importanceSampling The setting, <code>null</code> for the unbiased samples.
+     */
+    public void setImportanceSampling(ImportanceSampling importanceSampling) {
+        this.importanceSampling = importanceSampling;
+    }
+
+    /**
+     * Adds an estimator of a race outcome, fed with the results of every replication.
+     * @param estimator The estimator.
+     */
+    public void addEstimator(RareOutcomeEstimator estimator) {
+        estimators.add(estimator);
+    }
+
+    /**
+     * Enables the export of the results of every replication into a columnar table. The table is not closed by
+     * the runner. The export is off by default.
+     * @param export The table, <code>null</code> disables the export.
+     */
+    public void setExport(ResultsTable export) {
+        this.export = export;
+    }
+
+    /**
+     * Returns the seed of a replication.
+     * @param replication The index of the replication.
+     * @return The seed derived from <code>Biathlon.UNIVERSAL_SEED</code>.
+     */
+    public static long seedFor(int replication) {
+        return Biathlon.UNIVERSAL_SEED + replication;
+    }
+
+    /**
+     * Creates a silent experiment without the DESMO-J report, trace, debug and error files, which would
+     * otherwise be written into the working directory for every replication.
+     * @param name The name of the experiment.
+     * @param seed The seed of the experiment.
+     * @return The experiment.
+     */
+    static Experiment batchExperiment(String name, long seed) {
+        Experiment exp = new Experiment(name, false);
+        exp.setShowProgressBar(false);
+        exp.setSilent(true);
+        exp.setSeedGenerator(seed);
+        return exp;
+    }
+
+    /**
+     * Carries out a single, fully isolated replication.
+     * @param replication The index of the replication.
+     * @return The results of the replication, detached from its model.
+     */
+    public Results runReplication(int replication) {
+        long seed = seedFor(antithetic ? replication & ~1 : replication);
+
+        String dir = null;
+
+        if (logDirectory != null) {
+            File d = new File(logDirectory, String.format("rep_%06d", replication));
+            d.mkdirs();
+            dir = d.getPath();
+        }
+
+        Biathlon model = new Biathlon("Biathlon", seed, dir);
+        model.setMovement(movement);
+        model.setEventSampling(eventSampling);
+        model.setAntithetic(antithetic && (replication & 1) == 1);
+        model.setImportanceSampling(importanceSampling);
+        model.setParameters(parameters);
+        model.setNumCompetitors(numCompetitors);
+        model.setShootingLanes(shootingLanes);
+        model.setLogFormat(logFormat);
+
+        if (traceDirectory != null && traceSettings.tracesReplication(replication)) {
+            new File(traceDirectory).mkdirs();
+            model.setTrace(new File(traceDirectory, String.format("trace_%06d.txt.gz", replication)), traceSettings);
+        }
+        Experiment exp = batchExperiment(String.format("Biathlon_%06d", replication), seed);
+        model.connectToExperiment(exp);
+
+        exp.stop(new TimeInstant(Biathlon.SIMULATION_TIME));
+        exp.start();
+        exp.finish();
+        model.closeLogs();
+
+        Results results = model.getResults();
+        results.setWeight(model.getLikelihoodRatio());
+        results.detach();
+
+        for (RareOutcomeEstimator estimator : estimators)
+            estimator.add(results);
+
+        if (export != null)
+            export.add(replication, results);
+
+        return results;
+    }
+
+    /**
+     * Carries out all the replications. The results are detached from their models, so the memory taken grows with
+     * the number of replications times the size of the field only.
+     * @return The results indexed by the replication index.
+     * @throws InterruptedException If interrupted while waiting for the replications.
+     * @throws ExecutionException If any of the replications failed.
+     */
+    public Results[] run() throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<Results>> futures = new ArrayList<Future<Results>>(replications);
+
+            for (int i = 0; i < replications; i++) {
+                final int replication = i;
+
+                futures.add(pool.submit(new Callable<Results>() {
+                    public Results call() {
+                        return runReplication(replication);
+                    }
+                }));
+            }
+
+            Results[] results = new Results[replications];
+
+            for (int i = 0; i < replications; i++)
+                results[i] = futures.get(i).get();
+
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Carries out all the replications, folding the results into statistics
+     * as they finish. Unlike <code>run()</code> the memory taken does not grow
+     * with the number of replications. The replications are folded in blocks
+     * of <code>BLOCK_SIZE</code>, merged in the index order, so the statistics
+     * are identical for any number of threads.
+     * @param statistics The statistics the results are added to.
+     * @throws InterruptedException If interrupted while waiting for the replications.
+     * @throws ExecutionException If a replication failed.
+     */
+    public void run(ReplicationStatistics statistics) throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        try {
+            runWave(pool, statistics, 0, replications);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Carries out a range of the replications, folding the results into
+     * statistics, e.g. a chunk handed to a <code>ReplicationWorker</code>.
+     * The number of replications given to the c-tor is not used.
+     * @param statistics The statistics the results are added to.
+     * @param from The index of the first replication.
+     * @param to The index past the last replication.
+     * @throws InterruptedException If interrupted while waiting for the replications.
+     * @throws ExecutionException If a replication failed.
+     */
+    public void run(ReplicationStatistics statistics, int from, int to)
+            throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        try {
+            runWave(pool, statistics, from, to);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Carries out the replications in waves until the statistics reach the
+     * target precision, at most as many replications as given to the c-tor.
+     * The replications of a wave are carried out in parallel and the
+     * precision is checked between the waves. The waves always cover the same
+     * replication indices, hence the number of replications carried out does
+     * not depend on the number of threads. With the antithetic pairs the wave
+     * size is rounded up to an even number, so no pair is split by a check.
+     * @param statistics The statistics the results are added to.
+     * @param target The target precision.
+     * @param waveSize The number of replications in a wave, at least 1.
+     * @return The number of replications carried out.
+     * @throws InterruptedException If interrupted while waiting for the replications.
+     * @throws ExecutionException If a replication failed.
+     */
+    public int runAdaptive(ReplicationStatistics statistics, PrecisionTarget target, int waveSize)
+            throws InterruptedException, ExecutionException {
+        if (waveSize < 1)
+            throw new IllegalArgumentException(String.format("The wave size has to be at least 1 (%d).", waveSize));
+
+        if (antithetic)
+            waveSize += waveSize & 1;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        int done = 0;
+
+        try {
+            while (done < replications && !target.isMet(statistics)) {
+                int to = Math.min(replications, done + waveSize);
+                runWave(pool, statistics, done, to);
+                done = to;
+            }
+
+            return done;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Carries out a range of replications on the pool. The range is split
+     * into blocks of <code>BLOCK_SIZE</code> replications, every block is
+     * folded in the index order and the blocks are merged in the index order,
+     * so the statistics do not depend on the number of threads nor on the
+     * timing.
+     */
+    private void runWave(ExecutorService pool, ReplicationStatistics statistics, int from, int to)
+            throws InterruptedException, ExecutionException {
+        List<Future<ReplicationStatistics>> futures = new ArrayList<Future<ReplicationStatistics>>();
+
+        for (int start = from; start < to; start += BLOCK_SIZE) {
+            final int first = start;
+            final int last = Math.min(to, start + BLOCK_SIZE);
+
+            futures.add(pool.submit(new Callable<ReplicationStatistics>() {
+                public ReplicationStatistics call() {
+                    ReplicationStatistics block = new ReplicationStatistics(numCompetitors);
+
+                    for (int replication = first; replication < last; replication++)
+                        block.add(runReplication(replication));
+
+                    return block;
+                }
+            }));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            statistics.merge(futures.get(i).get());
+            futures.set(i, null); // The merged block is not needed anymore.
+        }
+    }
+
+    /**
+     * Entry point of the replication runner. Prints the win probability of each competitor.
+     * The results are exported into a columnar table if <code>-Dsim.export=</code> names its file.
+     * <code>-Dsim.antithetic=true</code> carries out antithetic replication pairs. The
+     * <code>ImportanceSampling</code> system properties bias the samples and estimate a couple of rare outcomes.
+     * If a <code>PrecisionTarget</code> is given by the system properties, the replications stop once it is met.
+     * @param args The (maximal) number of replications and optionally the number of threads.
+     */
+    public static void main(String[] args) throws Exception {
+        int replications = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        ReplicationStatistics statistics = new ReplicationStatistics(Biathlon.NUM_COMPETITORS);
+        ReplicationRunner runner = new ReplicationRunner(replications, threads);
+
+        String exportFile = System.getProperty("sim.export");
+        ResultsTable export = exportFile != null ? new ResultsTable(new File(exportFile)) : null;
+        runner.setExport(export);
+        runner.setAntithetic(Boolean.getBoolean("sim.antithetic"));
+
+        ImportanceSampling importanceSampling = ImportanceSampling.fromSystemProperties();
+
+        if (importanceSampling.isSet()) {
+            // The outcomes are about the favourite, the only competitor biased by default.
+            int favourite = importanceSampling.getFirstTarget();
+
+            runner.setImportanceSampling(importanceSampling);
+            runner.addEstimator(new RareOutcomeEstimator(String.format(
+                    "Competitor #%d upset by a fall and a ski problem", favourite + 1),
+                    RareOutcomeEstimator.upset(favourite)));
+            runner.addEstimator(new RareOutcomeEstimator(String.format(
+                    "Competitor #%d panics before the last range", favourite + 1),
+                    RareOutcomeEstimator.panicBeforeLastRange(favourite)));
+        }
+
+        PrecisionTarget target = PrecisionTarget.fromSystemProperties();
+
+        if (target.isSet()) {
+            int waveSize = Integer.getInteger("sim.precision.wave", DEFAULT_WAVE_SIZE);
+            int done = runner.runAdaptive(statistics, target, waveSize);
+            System.out.println(String.format("%d replications carried out", done));
+        } else {
+            runner.run(statistics);
+        }
+
+        if (export != null)
+            export.close();
+
+        for (int i = 0; i < statistics.getNumCompetitors(); i++)
+            System.out.println(String.format("Competitor #%d \t %.4f", i + 1, statistics.getWinProbability(i)));
+
+        for (RareOutcomeEstimator e : runner.estimators)
+            System.out.println(String.format("%s \t %.3e +- %.1e \t (%d hits)", e.getName(), e.getProbability(),
+                    1.96 * e.getStdError(), e.getHits()));
+
+        statistics.dump("statistics.txt");
+
+        System.exit(0);
+    }
+}
@@ -0,0 +1,359 @@
+package sim;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Statistics of many replications of a race, folded in one at a time.
+ * <p>
+ * Per competitor the finish time is tracked by <code>RunningStats</code>
+ * (mean, variance, extremes) and a <code>QuantileSketch</code>, the time gap
+ * to the winner by another sketch, the total misses by <code>RunningStats</code>
+ * and the misses by a histogram per shooting range. The memory taken depends on the number of competitors only,
+ * not on the number of replications. Statistics collected by several threads
+ * are combined with <code>merge()</code>, statistics collected by other
+ * processes are passed through <code>writeTo()</code> and <code>readFrom()</code>.
+ * <p>
+ * The win probabilities are the means of the wins weighted by the likelihood
+ * ratios of the races (<code>Results.getWeight()</code>), so they stay
+ * unbiased under importance sampling. The other statistics describe the
+ * races as sampled.
+ */
+public class ReplicationStatistics {
+
+    private final int numCompetitors;
+
+    private long replications = 0;
+
+    private final RunningStats[] finishTime;
+    private final QuantileSketch[] finishTimeQuantiles;
+    private final QuantileSketch[] gapQuantiles;
+    private final RunningStats[] totalMisses;
+
+    /**
+     * The number of wins per competitor and of the races nobody finished.
+     */
+    private final long[] wins;
+    private long noWinner = 0;
+
+    /**
+     * The weighted wins per competitor and the weights of the races.
+     */
+    private final RunningStats[] weightedWins;
+    private final RunningStats weights = new RunningStats();
+
+    /**
+     * The number of races a competitor did not finish.
+     */
+    private final long[] didNotFinish;
+
+    /**
+     * Histograms of the misses, indexed by competitor, range and the number of misses.
+     */
+    private final long[][][] rangeMisses;
+
+    /**
+     * The c-tor.
+     * @param numCompetitors The number of competitors.
+     */
+    public ReplicationStatistics(int numCompetitors) {
+        this.numCompetitors = numCompetitors;
+
+        finishTime = new RunningStats[numCompetitors];
+        finishTimeQuantiles = new QuantileSketch[numCompetitors];
+        gapQuantiles = new QuantileSketch[numCompetitors];
+        totalMisses = new RunningStats[numCompetitors];
+        weightedWins = new RunningStats[numCompetitors];
+        wins = new long[numCompetitors];
+        didNotFinish = new long[numCompetitors];
+        rangeMisses = new long[numCompetitors][Biathlon.NUM_SHOOTING_RANGES][Biathlon.SHOTS_PER_SHOOTING + 1];
+
+        for (int i = 0; i < numCompetitors; i++) {
+            finishTime[i] = new RunningStats();
+            finishTimeQuantiles[i] = new QuantileSketch();
+            gapQuantiles[i] = new QuantileSketch();
+            totalMisses[i] = new RunningStats();
+            weightedWins[i] = new RunningStats();
+        }
+    }
+
+    /**
+     * Folds the results of a replication in.
+     * @param results The results of the race.
+     */
+    public void add(Results results) {
+        int winner = results.getWinner();
+        long winningTime = winner != -1 ? results.getFinishTime(winner) : 0;
+
+        double weight = results.getWeight();
+
+        if (winner != -1)
+            wins[winner]++;
+        else
+            noWinner++;
+
+        weights.add(weight);
+
+        for (int i = 0; i < numCompetitors; i++) {
+            long t = results.getFinishTime(i);
+
+            if (t != 0) {
+                finishTime[i].add(t);
+                finishTimeQuantiles[i].add(t);
+                gapQuantiles[i].add(t - winningTime);
+            } else {
+                didNotFinish[i]++;
+            }
+
+            totalMisses[i].add(results.getMisses(i));
+            weightedWins[i].add(i == winner ? weight : 0.0);
+
+            int visits = Math.min(results.getVisits(i), Biathlon.NUM_SHOOTING_RANGES);
+
+            for (int r = 0; r < visits; r++)
+                rangeMisses[i][r][results.getRangeMisses(i, r)]++;
+        }
+
+        replications++;
+    }
+
+    /**
+     * Adds the statistics of other replications.
+     * @param other The statistics to add.
+     */
+    public void merge(ReplicationStatistics other) {
+        replications += other.replications;
+        noWinner += other.noWinner;
+        weights.merge(other.weights);
+
+        for (int i = 0; i < numCompetitors; i++) {
+            finishTime[i].merge(other.finishTime[i]);
+            finishTimeQuantiles[i].merge(other.finishTimeQuantiles[i]);
+            gapQuantiles[i].merge(other.gapQuantiles[i]);
+            totalMisses[i].merge(other.totalMisses[i]);
+            weightedWins[i].merge(other.weightedWins[i]);
+            wins[i] += other.wins[i];
+            didNotFinish[i] += other.didNotFinish[i];
+
+            for (int r = 0; r < Biathlon.NUM_SHOOTING_RANGES; r++)
+                for (int m = 0; m <= Biathlon.SHOTS_PER_SHOOTING; m++)
+                    rangeMisses[i][r][m] += other.rangeMisses[i][r][m];
+        }
+    }
+
+    /**
+     * Writes the statistics.
+     * @param out The stream.
+     * @throws IOException If the statistics could not be written.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(numCompetitors);
+        out.writeLong(replications);
+        out.writeLong(noWinner);
+        weights.writeTo(out);
+
+        for (int i = 0; i < numCompetitors; i++) {
+            finishTime[i].writeTo(out);
+            finishTimeQuantiles[i].writeTo(out);
+            gapQuantiles[i].writeTo(out);
+            totalMisses[i].writeTo(out);
+            weightedWins[i].writeTo(out);
+            out.writeLong(wins[i]);
+            out.writeLong(didNotFinish[i]);
+
+            for (int r = 0; r < Biathlon.NUM_SHOOTING_RANGES; r++)
+                for (int m = 0; m <= Biathlon.SHOTS_PER_SHOOTING; m++)
+                    out.writeLong(rangeMisses[i][r][m]);
+        }
+    }
+
+    /**
+     * Reads statistics written by <code>writeTo()</code>.
+     * @param in The stream.
+     * @return The statistics.
+     * @throws IOException If the statistics could not be read.
+     */
+    public static ReplicationStatistics readFrom(DataInput in) throws IOException {
+        ReplicationStatistics s = new ReplicationStatistics(in.readInt());
+
+        s.replications = in.readLong();
+        s.noWinner = in.readLong();
+        s.weights.merge(RunningStats.readFrom(in));
+
+        for (int i = 0; i < s.numCompetitors; i++) {
+            s.finishTime[i] = RunningStats.readFrom(in);
+            s.finishTimeQuantiles[i] = QuantileSketch.readFrom(in);
+            s.gapQuantiles[i] = QuantileSketch.readFrom(in);
+            s.totalMisses[i] = RunningStats.readFrom(in);
+            s.weightedWins[i] = RunningStats.readFrom(in);
+            s.wins[i] = in.readLong();
+            s.didNotFinish[i] = in.readLong();
+
+            for (int r = 0; r < Biathlon.NUM_SHOOTING_RANGES; r++)
+                for (int m = 0; m <= Biathlon.SHOTS_PER_SHOOTING; m++)
+                    s.rangeMisses[i][r][m] = in.readLong();
+        }
+
+        return s;
+    }
+
+    /**
+     * @return The number of replications folded in.
+     */
+    public long getReplications() {
+        return replications;
+    }
+
+    /**
+     * @return The number of competitors.
+     */
+    public int getNumCompetitors() {
+        return numCompetitors;
+    }
+
+    /**
+     * Returns the finish time statistics of a competitor, over the races it finished.
+     * @param id Internal competitor ID.
+     * @return The statistics.
+     */
+    public RunningStats getFinishTime(int id) {
+        return finishTime[id];
+    }
+
+    /**
+     * Returns the statistics of the total misses of a competitor, over all the races.
+     * @param id Internal competitor ID.
+     * @return The statistics.
+     */
+    public RunningStats getTotalMisses(int id) {
+        return totalMisses[id];
+    }
+
+    /**
+     * Returns a quantile of the finish time of a competitor.
+     * @param id Internal competitor ID.
+     * @param q The quantile in [0, 1] range.
+     * @return The estimated finish time in seconds.
+     */
+    public double getFinishTimeQuantile(int id, double q) {
+        return finishTimeQuantiles[id].quantile(q);
+    }
+
+    /**
+     * Returns a quantile of the time gap of a competitor to the winner.
+     * @param id Internal competitor ID.
+     * @param q The quantile in [0, 1] range.
+     * @return The estimated gap in seconds.
+     */
+    public double getGapQuantile(int id, double q) {
+        return gapQuantiles[id].quantile(q);
+    }
+
+    /**
+     * Returns the probability of a competitor winning the race.
+     * @param id Internal competitor ID.
+     * @return The fraction of the races won.
+     */
+    public double getWinProbability(int id) {
+        return weightedWins[id].getMean();
+    }
+
+    /**
+     * Returns the standard error of the win probability of a competitor.
+     * @param id Internal competitor ID.
+     * @return The standard error.
+     */
+    public double getWinProbabilityStdError(int id) {
+        return weightedWins[id].getStdError();
+    }
+
+    /**
+     * @return The statistics of the weights of the races, all 1 unless importance sampling is used.
+     */
+    public RunningStats getWeights() {
+        return weights;
+    }
+
+    /**
+     * @return <code>true</code> if any of the races has a weight other than 1, i.e. importance sampling is used.
+     */
+    public boolean isWeighted() {
+        return weights.getCount() > 0 && (weights.getMin() != 1.0 || weights.getMax() != 1.0);
+    }
+
+    /**
+     * Returns the effective sample size of the weighted races, <i>(sum w)^2 / sum w^2</i>.
+     * @return The number of unweighted races worth the same precision.
+     */
+    public double getEffectiveSampleSize() {
+        long n = weights.getCount();
+        double sum = n * weights.getMean();
+        double sumSq = (n - 1) * weights.getVariance() + n * weights.getMean() * weights.getMean();
+
+        return sumSq > 0 ? sum * sum / sumSq : 0.0;
+    }
+
+    /**
+     * Returns the probability of a competitor missing a number of shots at a range.
+     * @param id Internal competitor ID.
+     * @param range The index of the visit, starting at 0.
+     * @param misses The number of misses.
+     * @return The fraction of the visits with that many misses.
+     */
+    public double getRangeMissesProbability(int id, int range, int misses) {
+        long visits = 0;
+
+        for (long n : rangeMisses[id][range])
+            visits += n;
+
+        return visits > 0 ? (double) rangeMisses[id][range][misses] / visits : 0.0;
+    }
+
+    /**
+     * Dumps the statistics into a file.
+     * @param filename The file storing the statistics.
+     */
+    public void dump(String filename) {
+        PrintWriter out;
+
+        try {
+            out = new PrintWriter(filename);
+        } catch (FileNotFoundException e) {
+            System.err.println(String.format("Could not open file (%s).", filename));
+            return;
+        }
+
+        out.println(String.format("%d replications, %d without a finisher", replications, noWinner));
+        out.println(String.format("mean weight %.4f, effective sample size %.1f", weights.getMean(),
+                getEffectiveSampleSize()));
+
+        for (int i = 0; i < numCompetitors; i++) {
+            RunningStats s = finishTime[i];
+
+            out.println(String.format("Competitor #%d \t wins %.4f (%d races) \t DNF %d", i + 1,
+                    getWinProbability(i), wins[i], didNotFinish[i]));
+            out.println(String.format("\t finish time \t mean %.1f s \t sd %.1f s \t min %.0f s \t max %.0f s",
+                    s.getMean(), s.getStdDev(), s.getMin(), s.getMax()));
+            out.println(String.format("\t finish time \t p5 %.0f s \t p50 %.0f s \t p95 %.0f s",
+                    getFinishTimeQuantile(i, 0.05), getFinishTimeQuantile(i, 0.5), getFinishTimeQuantile(i, 0.95)));
+            out.println(String.format("\t gap \t\t p5 +%.0f s \t p50 +%.0f s \t p95 +%.0f s",
+                    getGapQuantile(i, 0.05), getGapQuantile(i, 0.5), getGapQuantile(i, 0.95)));
+            out.println(String.format("\t misses \t mean %.2f \t sd %.2f", totalMisses[i].getMean(),
+                    totalMisses[i].getStdDev()));
+
+            for (int r = 0; r < Biathlon.NUM_SHOOTING_RANGES; r++) {
+                StringBuilder line = new StringBuilder(String.format("\t range %d \t", r + 1));
+
+                for (int m = 0; m <= Biathlon.SHOTS_PER_SHOOTING; m++)
+                    line.append(String.format(" %d: %.3f", m, getRangeMissesProbability(i, r, m)));
+
+                out.println(line);
+            }
+        }
+
+        out.close();
+    }
+}
@@ -0,0 +1,91 @@
+package sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+
+/**
+ * A worker process of the <code>DistributedRunner</code>.
+ * <p>
+ * The worker greets the coordinator with <code>HELLO</code>, then reads the
+ * chunks of replications from the standard input, each a pair of the first
+ * and the past-the-last replication indices. A chunk is carried out on a
+ * thread pool and answered by the index of its first replication followed by
+ * its statistics (<code>ReplicationStatistics.writeTo()</code>). A negative
+ * index stops the worker, and so does the end of the input.
+ * <p>
+ * The model is configured by the system properties of
+ * <code>ReplicationRunner</code>: <i>sim.antithetic</i>, <i>sim.lanes</i> and
+ * the <code>ImportanceSampling</code> properties. The standard output carries
+ * the protocol only, anything else printed goes to the standard error.
+ */
+public class ReplicationWorker {
+
+    /**
+     * The greeting of a worker, sent once it is ready to take the chunks.
+     */
+    public static final long HELLO = 0x4249415448574b31L; // "BIATHWK1"
+
+    /**
+     * The index stopping the worker.
+     */
+    public static final int STOP = -1;
+
+    /**
+     * Creates the runner of the replications as configured by the system properties.
+     * @param threads The size of the thread pool.
+     * @return The runner.
+     */
+    static ReplicationRunner createRunner(int threads) {
+        ReplicationRunner runner = new ReplicationRunner(0, threads);
+        runner.setAntithetic(Boolean.getBoolean("sim.antithetic"));
+        runner.setShootingLanes(Integer.getInteger("sim.lanes", 0));
+
+        ImportanceSampling importanceSampling = ImportanceSampling.fromSystemProperties();
+
+        if (importanceSampling.isSet())
+            runner.setImportanceSampling(importanceSampling);
+
+        return runner;
+    }
+
+    /**
+     * Entry point of the worker.
+     * @param args Optionally the number of threads.
+     */
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        System.setOut(System.err);
+
+        ReplicationRunner runner = createRunner(threads);
+
+        out.writeLong(HELLO);
+        out.flush();
+
+        try {
+            int from;
+
+            while ((from = in.readInt()) != STOP) {
+                int to = in.readInt();
+                ReplicationStatistics statistics = new ReplicationStatistics(Biathlon.NUM_COMPETITORS);
+
+                runner.run(statistics, from, to);
+
+                out.writeInt(from);
+                statistics.writeTo(out);
+                out.flush();
+            }
+        } catch (EOFException e) {
+            // The coordinator is gone, there is nobody to report to.
+        }
+
+        System.exit(0);
+    }
+}
@@ -4,13 +4,37 @@ import java.util.Arrays;
 import desmoj.core.simulator.TimeSpan;
 
 /**
- * A singleton collecting Biathlon results.
+ * Collects the results of a single Biathlon race.
  */
 public class Results {
-    private static Results instance = null;
+    /**
+     * The model carrying out the race, <code>null</code> once the results are detached.
+     */
+    private Biathlon model;
 
     private Logger logger;
 
+    /**
+     * The log the finishers are written to as they cross the line, opened by the first finisher.
+     */
+    private Logger finishLogger;
+
+    /**
+     * The number of split points: the entry and the exit of every shooting range visit.
+     */
+    public static final int NUM_SPLITS = 2 * Biathlon.NUM_SHOOTING_RANGES;
+
+    /**
+     * The standings at every split point and at the finish line.
+     */
+    private final RankTree[] splits = new RankTree[NUM_SPLITS];
+    private final RankTree finishers = new RankTree();
+
+    /**
+     * The likelihood ratio of the race under importance sampling, 1 if the samples are not biased.
+     */
+    private double weight = 1.0;
+
     /**
      * Results array indexed by the internal competitor ID.
      */
@@ -19,36 +43,95 @@ public class Results {
     /**
      * A simple class representing results of a biathlete.
      */
-    private static class Result implements Comparable {
+    private static class Result implements Comparable<Result> {
         String name = "John Doe";
         int misses = 0;
         long finishTime = 0;
 
-        public int compareTo(Object that) throws java.lang.ClassCastException {
-            // Castin' like there's no tomorrow.
+        /**
+         * Misses per shooting range visit.
+         */
+        int[] rangeMisses = new int[Biathlon.NUM_SHOOTING_RANGES];
+        int visits = 0;
+
+        /**
+         * Times at the split points, <code>NaN</code> if not passed yet.
+         */
+        double[] splitTimes = new double[NUM_SPLITS];
 
-            Result t = (Result) that;
-            return (int) (this.finishTime - t.finishTime);
+        /**
+         * Occurences per random event and the time the competitor panicked, <code>NaN</code> if never.
+         */
+        int[] events = new int[RandomEvent.values().length];
+        double panicTime = Double.NaN;
+
+        Result() {
+            Arrays.fill(splitTimes, Double.NaN);
+        }
+
+        public int compareTo(Result that) {
+            return Long.compare(this.finishTime, that.finishTime);
         }
     }
 
 
-    private Results() {
-        results = new Result[Biathlon.NUM_COMPETITORS];
+    /**
+     * The c-tor.
+     * @param model The model carrying out the race.
+     */
+    public Results(Biathlon model) {
+        this.model = model;
+        results = new Result[model.getNumCompetitors()];
 
-        for(int i = 0; i < Biathlon.NUM_COMPETITORS; i++)
+        for(int i = 0; i < results.length; i++)
           results[i] = new Result();
+
+        for(int s = 0; s < NUM_SPLITS; s++)
+          splits[s] = new RankTree();
     }
 
     /**
-     * Returns the single instance of this class.
+     * The c-tor. Copies the results collected so far. The copy opens no log until a competitor finishes, so the
+     * log of the finishers of the copied results is left alone.
+     * @param model The model carrying out the race.
+     * @param other The results to copy.
      */
-    public static Results getInstance() {
-        if(instance == null) {
-            instance = new Results();
+    public Results(Biathlon model, Results other) {
+        this(model);
+
+        for(int i = 0; i < results.length; i++) {
+          results[i].name = other.results[i].name;
+          results[i].misses = other.results[i].misses;
+          results[i].finishTime = other.results[i].finishTime;
+          results[i].rangeMisses = other.results[i].rangeMisses.clone();
+          results[i].visits = other.results[i].visits;
+          results[i].splitTimes = other.results[i].splitTimes.clone();
+          results[i].events = other.results[i].events.clone();
+          results[i].panicTime = other.results[i].panicTime;
+
+          for(int s = 0; s < NUM_SPLITS; s++)
+            if(!Double.isNaN(results[i].splitTimes[s])) splits[s].insert(results[i].splitTimes[s], i);
+
+          if(results[i].finishTime != 0) finishers.insert(results[i].finishTime, i);
         }
+    }
+
+    /**
+     * Returns the split point at the entry of a shooting range.
+     * @param range The index of the visit, starting at 0.
+     * @return The split point.
+     */
+    public static int entrySplit(int range) {
+        return 2 * range;
+    }
 
-        return instance;
+    /**
+     * Returns the split point at the exit of a shooting range.
+     * @param range The index of the visit, starting at 0.
+     * @return The split point.
+     */
+    public static int exitSplit(int range) {
+        return 2 * range + 1;
     }
 
     /**
@@ -66,7 +149,12 @@ public class Results {
      * @param misses The number of misses in a single shooting session.
      */
     public void registerMisses(int id, int misses) {
-        results[id].misses += misses;
+        Result r = results[id];
+
+        r.misses += misses;
+
+        if(r.visits < r.rangeMisses.length) r.rangeMisses[r.visits] = misses;
+        r.visits++;
     }
 
     /**
@@ -74,34 +162,256 @@ public class Results {
      * @param id Internal competitor ID.
      */
     public void registerFinish(int id) {
-        results[id].finishTime = Biathlon.getInstance().presentTime().getTimeTruncated();
+        Result r = results[id];
+        r.finishTime = model.presentTime().getTimeTruncated();
+        finishers.insert(r.finishTime, id);
+
+        // Without a log directory the line would only be formatted to be dropped.
+        if (LogLevel.INFO && model.getLogDirectory() != null) {
+            if(finishLogger == null) finishLogger = new Logger(model, "finishers.txt");
+
+            int position = finishers.rank(r.finishTime, id);
+            String d = formatGap(r.finishTime - (long) finishers.selectTime(0));
+
+            finishLogger.log(r.finishTime,
+                             String.format("%d. \t %s \t %d misses \t %s", position + 1, d, r.misses, r.name));
+        }
     }
 
     /**
-     * Dumps the sorted (by <code>finishTime</code>) results into a file.
-     * @param filename The log file storing the results.
+     * Registers an occurence of a random event.
+     * @param id Internal competitor ID.
+     * @param e The random event.
      */
-    public void dumpResults(String filename) {
-        if(logger == null) logger = new Logger(filename);
+    public void registerRandomEvent(int id, RandomEvent e) {
+        results[id].events[e.ordinal()]++;
+    }
+
+    /**
+     * Registers a competitor starting to panic at the current simulation time.
+     * @param id Internal competitor ID.
+     */
+    public void registerPanic(int id) {
+        results[id].panicTime = model.presentTime().getTimeAsDouble();
+    }
+
+    /**
+     * Returns the number of occurences of a random event.
+     * @param id Internal competitor ID.
+     * @param e The random event.
+     * @return The number of occurences.
+     */
+    public int getEventCount(int id, RandomEvent e) {
+        return results[id].events[e.ordinal()];
+    }
+
+    /**
+     * Returns the time a competitor started to panic.
+     * @param id Internal competitor ID.
+     * @return The time in seconds or <code>NaN</code> if the competitor did not panic.
+     */
+    public double getPanicTime(int id) {
+        return results[id].panicTime;
+    }
+
+    /**
+     * Sets the weight of the race, see <code>Biathlon.getLikelihoodRatio()</code>.
+     * @param weight The likelihood ratio of the race.
+     */
+    public void setWeight(double weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * Returns the weight of the race under importance sampling.
+     * @return The likelihood ratio of the race, 1 if the samples are not biased.
+     */
+    public double getWeight() {
+        return weight;
+    }
+
+    /**
+     * Registers a competitor passing a split point at the current simulation time.
+     * @param id Internal competitor ID.
+     * @param split The split point, see <code>entrySplit()</code> and <code>exitSplit()</code>.
+     */
+    public void registerSplit(int id, int split) {
+        double t = model.presentTime().getTimeAsDouble();
+
+        results[id].splitTimes[split] = t;
+        splits[split].insert(t, id);
+    }
+
+    /**
+     * Returns the time of a competitor at a split point.
+     * @param id Internal competitor ID.
+     * @param split The split point.
+     * @return The time in seconds or <code>NaN</code> if the split point was not passed yet.
+     */
+    public double getSplitTime(int id, int split) {
+        return results[id].splitTimes[split];
+    }
 
-        Arrays.sort(results);
-        long firstTime = results[0].finishTime;
+    /**
+     * Returns the current rank of a competitor at a split point, among the competitors who passed it so far.
+     * @param id Internal competitor ID.
+     * @param split The split point.
+     * @return The rank starting at 1 or 0 if the split point was not passed yet.
+     */
+    public int getSplitRank(int id, int split) {
+        double t = results[id].splitTimes[split];
+        return Double.isNaN(t) ? 0 : splits[split].rank(t, id) + 1;
+    }
 
-        for(Result r : results) {
-            long delta = r.finishTime - firstTime;
+    /**
+     * Returns the current leader at a split point.
+     * @param split The split point.
+     * @return Internal ID of the leader or -1 if nobody passed the split point yet.
+     */
+    public int getSplitLeader(int split) {
+        return splits[split].select(0);
+    }
 
-            long min = delta / 60;
-            long sec = delta % 60;
+    /**
+     * Returns the time gap of a competitor to the current leader at a split point.
+     * @param id Internal competitor ID.
+     * @param split The split point.
+     * @return The gap in seconds or <code>NaN</code> if the split point was not passed yet.
+     */
+    public double getGapToLeader(int id, int split) {
+        return results[id].splitTimes[split] - splits[split].selectTime(0);
+    }
 
-            // Do some pretty formatting...
-            String d;
+    /**
+     * Returns the number of competitors who passed a split point so far.
+     * @param split The split point.
+     * @return The number of competitors.
+     */
+    public int getSplitCount(int split) {
+        return splits[split].size();
+    }
 
-            if(min == 0 && sec == 0) d = "---";
-            else if(min == 0)        d = String.format("+%d", sec);
-            else                     d = String.format("+%d:%02d", min, sec);
+    /**
+     * Returns the current position of a competitor at the finish line.
+     * @param id Internal competitor ID.
+     * @return The position starting at 1 or 0 if the competitor did not finish yet.
+     */
+    public int getPosition(int id) {
+        long t = results[id].finishTime;
+        return t == 0 ? 0 : finishers.rank(t, id) + 1;
+    }
+
+    /**
+     * Closes the log of the finishers. Called once the simulation is finished.
+     */
+    public void close() {
+        if(finishLogger != null) finishLogger.close();
+    }
+
+    /**
+     * Detaches the results from the model once the race is over, so they no
+     * longer keep the whole model reachable. Called once the logs are closed.
+     * The collected values stay available, nothing can be registered or
+     * dumped afterwards.
+     */
+    public void detach() {
+        model = null;
+        logger = null;
+        finishLogger = null;
+    }
+
+    /**
+     * Returns the total number of misses of a competitor.
+     * @param id Internal competitor ID.
+     * @return The number of missed shots.
+     */
+    public int getMisses(int id) {
+        return results[id].misses;
+    }
+
+    /**
+     * Returns the number of misses of a competitor at a single shooting range visit.
+     * @param id Internal competitor ID.
+     * @param range The index of the visit, starting at 0.
+     * @return The number of missed shots, 0 if the range was not visited.
+     */
+    public int getRangeMisses(int id, int range) {
+        return results[id].rangeMisses[range];
+    }
+
+    /**
+     * Returns the number of shooting range visits of a competitor.
+     * @param id Internal competitor ID.
+     * @return The number of visits.
+     */
+    public int getVisits(int id) {
+        return results[id].visits;
+    }
+
+    /**
+     * Returns the number of competitors.
+     * @return The number of competitors.
+     */
+    public int getNumCompetitors() {
+        return results.length;
+    }
+
+    /**
+     * Returns the finish time of a competitor.
+     * @param id Internal competitor ID.
+     * @return The finish time in seconds or 0 if the competitor did not finish.
+     */
+    public long getFinishTime(int id) {
+        return results[id].finishTime;
+    }
+
+    /**
+     * Returns the winner of the race. Ties are resolved in favour of the lower ID.
+     * @return The internal ID of the winner or -1 if nobody finished.
+     */
+    public int getWinner() {
+        int winner = -1;
+
+        for(int i = 0; i < results.length; i++) {
+            long t = results[i].finishTime;
+            if(t != 0 && (winner == -1 || t < results[winner].finishTime)) winner = i;
+        }
+
+        return winner;
+    }
+
+    /**
+     * Dumps the sorted (by <code>finishTime</code>) results into a file.
+     * @param filename The log file storing the results.
+     */
+    public void dumpResults(String filename) {
+        if(logger == null) logger = new Logger(model, filename);
+
+        // Sort a copy, results are indexed by the competitor ID.
+        Result[] sorted = results.clone();
+        Arrays.sort(sorted);
+        long firstTime = sorted[0].finishTime;
+
+        for(Result r : sorted) {
+            String d = formatGap(r.finishTime - firstTime);
 
             logger.log(r.finishTime,
                        String.format("%s \t %d misses \t %s", d, r.misses, r.name));
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Formats a time gap to the leader.
+     * @param delta The gap in seconds.
+     * @return The gap as <i>+m:ss</i>.
+     */
+    private static String formatGap(long delta) {
+        long min = delta / 60;
+        long sec = delta % 60;
+
+        // Do some pretty formatting...
+        if(min == 0 && sec == 0) return "---";
+        else if(min == 0)        return String.format("+%d", sec);
+        else                     return String.format("+%d:%02d", min, sec);
+    }
+}
@@ -0,0 +1,294 @@
+package sim;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A columnar binary table of the results of many replications.
+ * <p>
+ * Every row holds the results of a single competitor in a single replication.
+ * The file starts with a header (magic number, format version, the number of
+ * columns and the type of every column) followed by chunks of at most
+ * <code>ROWS_PER_CHUNK</code> rows. A chunk starts with the number of its rows
+ * and stores every column as a contiguous block of primitive values:
+ * <ul>
+ * <li><code>long</code> replication ID,</li>
+ * <li><code>int</code> competitor ID,</li>
+ * <li><code>long</code> finish time in seconds (0 if the competitor did not finish),</li>
+ * <li><code>int</code> misses at every shooting range visit,</li>
+ * <li><code>double</code> time at every split point (<code>NaN</code> if not passed).</li>
+ * </ul>
+ * The rows are buffered in columns and written with a single channel write per
+ * chunk. The table may be shared by several threads.
+ *
+ * @see ResultsTableReader
+ */
+public class ResultsTable {
+
+    /**
+     * The magic number identifying the results tables.
+     */
+    public static final long MAGIC = 0x4249415448524553L; // "BIATHRES"
+
+    /**
+     * The version of the file format.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The column types.
+     */
+    public static final int TYPE_INT = 0;
+    public static final int TYPE_LONG = 1;
+    public static final int TYPE_DOUBLE = 2;
+
+    /**
+     * The fixed columns.
+     */
+    public static final int REPLICATION = 0;
+    public static final int COMPETITOR = 1;
+    public static final int FINISH_TIME = 2;
+
+    /**
+     * The number of columns.
+     */
+    public static final int NUM_COLUMNS = 3 + Biathlon.NUM_SHOOTING_RANGES + Results.NUM_SPLITS;
+
+    /**
+     * The size of the file header in bytes.
+     */
+    public static final int HEADER_SIZE = 16 + 4 * NUM_COLUMNS;
+
+    /**
+     * The size of the chunk header in bytes.
+     */
+    public static final int CHUNK_HEADER_SIZE = 8;
+
+    /**
+     * The maximal number of rows in a chunk.
+     */
+    public static final int ROWS_PER_CHUNK = 65536;
+
+    private final String filename;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    /**
+     * The columns of the rows not written yet.
+     */
+    private final long[] replication = new long[ROWS_PER_CHUNK];
+    private final int[] competitor = new int[ROWS_PER_CHUNK];
+    private final long[] finishTime = new long[ROWS_PER_CHUNK];
+    private final int[][] misses = new int[Biathlon.NUM_SHOOTING_RANGES][ROWS_PER_CHUNK];
+    private final double[][] splits = new double[Results.NUM_SPLITS][ROWS_PER_CHUNK];
+    private int buffered = 0;
+
+    private long rows = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates a new table. Any previous file with the given name is overwritten.
+     *
+     * @param tablefile The table file.
+     * @throws IOException If the file could not be created.
+     */
+    public ResultsTable(File tablefile) throws IOException {
+        filename = tablefile.getPath();
+        file = new RandomAccessFile(tablefile, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+
+        buffer = ByteBuffer.allocateDirect(CHUNK_HEADER_SIZE + ROWS_PER_CHUNK * rowSize());
+
+        buffer.putLong(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(NUM_COLUMNS);
+
+        for (int c = 0; c < NUM_COLUMNS; c++)
+            buffer.putInt(type(c));
+
+        writeBuffer();
+    }
+
+    /**
+     * Returns the column of the misses at a shooting range visit.
+     *
+     * @param range The index of the visit, starting at 0.
+     * @return The column.
+     */
+    public static int missesColumn(int range) {
+        return 3 + range;
+    }
+
+    /**
+     * Returns the column of the times at a split point.
+     *
+     * @param split The split point, see <code>Results.entrySplit()</code> and <code>Results.exitSplit()</code>.
+     * @return The column.
+     */
+    public static int splitColumn(int split) {
+        return 3 + Biathlon.NUM_SHOOTING_RANGES + split;
+    }
+
+    /**
+     * Returns the type of a column.
+     *
+     * @param column The column.
+     * @return One of <code>TYPE_INT</code>, <code>TYPE_LONG</code> and <code>TYPE_DOUBLE</code>.
+     */
+    public static int type(int column) {
+        if (column == REPLICATION || column == FINISH_TIME)
+            return TYPE_LONG;
+        if (column < splitColumn(0))
+            return TYPE_INT;
+        return TYPE_DOUBLE;
+    }
+
+    /**
+     * Returns the size of a column value.
+     *
+     * @param column The column.
+     * @return The size in bytes.
+     */
+    public static int width(int column) {
+        return type(column) == TYPE_INT ? 4 : 8;
+    }
+
+    /**
+     * Returns the offset of a column block within a chunk.
+     *
+     * @param column The column.
+     * @param rows The number of rows in the chunk.
+     * @return The offset in bytes, from the beginning of the chunk.
+     */
+    public static long columnOffset(int column, int rows) {
+        long offset = CHUNK_HEADER_SIZE;
+
+        for (int c = 0; c < column; c++)
+            offset += (long) width(c) * rows;
+
+        return offset;
+    }
+
+    /**
+     * Returns the size of a row.
+     *
+     * @return The size in bytes.
+     */
+    public static int rowSize() {
+        int size = 0;
+
+        for (int c = 0; c < NUM_COLUMNS; c++)
+            size += width(c);
+
+        return size;
+    }
+
+    /**
+     * Appends the results of a replication, one row per competitor.
+     *
+     * @param replicationId The ID of the replication.
+     * @param results The results of the race.
+     */
+    public synchronized void add(long replicationId, Results results) {
+        if (closed)
+            return;
+
+        for (int i = 0; i < results.getNumCompetitors(); i++) {
+            int row = buffered;
+
+            replication[row] = replicationId;
+            competitor[row] = i;
+            finishTime[row] = results.getFinishTime(i);
+
+            for (int r = 0; r < Biathlon.NUM_SHOOTING_RANGES; r++)
+                misses[r][row] = results.getRangeMisses(i, r);
+
+            for (int s = 0; s < Results.NUM_SPLITS; s++)
+                splits[s][row] = results.getSplitTime(i, s);
+
+            if (++buffered == ROWS_PER_CHUNK && !writeChunk())
+                return;
+        }
+    }
+
+    /**
+     * Returns the number of rows added so far.
+     *
+     * @return The number of rows.
+     */
+    public synchronized long size() {
+        return rows + buffered;
+    }
+
+    /**
+     * Writes the buffered rows and closes the file.
+     */
+    public synchronized void close() {
+        if (closed)
+            return;
+
+        if (buffered > 0)
+            writeChunk();
+
+        closed = true;
+
+        try {
+            file.close();
+        } catch (IOException e) {
+            System.err.println(String.format("Error while closing the results table (%s).", filename));
+        }
+    }
+
+    /**
+     * Writes the buffered rows as a chunk.
+     */
+    private boolean writeChunk() {
+        int n = buffered;
+
+        buffer.clear();
+        buffer.putInt(n);
+        buffer.putInt(0);
+
+        buffer.asLongBuffer().put(replication, 0, n);
+        buffer.position(buffer.position() + 8 * n);
+        buffer.asIntBuffer().put(competitor, 0, n);
+        buffer.position(buffer.position() + 4 * n);
+        buffer.asLongBuffer().put(finishTime, 0, n);
+        buffer.position(buffer.position() + 8 * n);
+
+        for (int[] m : misses) {
+            buffer.asIntBuffer().put(m, 0, n);
+            buffer.position(buffer.position() + 4 * n);
+        }
+
+        for (double[] s : splits) {
+            buffer.asDoubleBuffer().put(s, 0, n);
+            buffer.position(buffer.position() + 8 * n);
+        }
+
+        buffered = 0;
+        rows += n;
+
+        return writeBuffer();
+    }
+
+    private boolean writeBuffer() {
+        buffer.flip();
+
+        try {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+
+            return true;
+        } catch (IOException e) {
+            System.err.println(String.format("Error while writing to the results table (%s).", filename));
+            closed = true;
+            return false;
+        }
+    }
+}
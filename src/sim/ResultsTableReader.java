@@ -0,0 +1,204 @@
+package sim;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a <code>ResultsTable</code> through a memory mapping.
+ * <p>
+ * Only the chunk headers are read when the table is opened. The columns are
+ * returned as views of the mapped chunks, so scanning a single column touches
+ * the pages of that column only and no rows are deserialized.
+ *
+ * @see ResultsTable
+ */
+public class ResultsTableReader {
+
+    private final RandomAccessFile file;
+    private final List<MappedByteBuffer> chunks = new ArrayList<MappedByteBuffer>();
+    private final List<Integer> chunkRows = new ArrayList<Integer>();
+    private long rows = 0;
+
+    /**
+     * Opens a table.
+     *
+     * @param tablefile The table file.
+     * @throws IOException If the table is malformed or could not be read.
+     */
+    public ResultsTableReader(File tablefile) throws IOException {
+        file = new RandomAccessFile(tablefile, "r");
+
+        try {
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(ResultsTable.HEADER_SIZE);
+
+            while (header.hasRemaining() && channel.read(header) >= 0)
+                ;
+
+            header.flip();
+
+            if (header.remaining() < 16 || header.getLong() != ResultsTable.MAGIC)
+                throw new IOException(String.format("Not a results table (%s).", tablefile));
+
+            if (header.getInt() != ResultsTable.VERSION || header.getInt() != ResultsTable.NUM_COLUMNS
+                    || header.remaining() < 4 * ResultsTable.NUM_COLUMNS)
+                throw new IOException(String.format("Unsupported results table version (%s).", tablefile));
+
+            for (int c = 0; c < ResultsTable.NUM_COLUMNS; c++)
+                if (header.getInt() != ResultsTable.type(c))
+                    throw new IOException(String.format("Unsupported results table version (%s).", tablefile));
+
+            long offset = ResultsTable.HEADER_SIZE;
+            long size = channel.size();
+            ByteBuffer chunkHeader = ByteBuffer.allocate(ResultsTable.CHUNK_HEADER_SIZE);
+
+            while (offset + ResultsTable.CHUNK_HEADER_SIZE <= size) {
+                chunkHeader.clear();
+                channel.read(chunkHeader, offset);
+                int n = chunkHeader.getInt(0);
+                long length = ResultsTable.columnOffset(ResultsTable.NUM_COLUMNS, n);
+
+                if (n <= 0 || offset + length > size)
+                    throw new IOException(String.format("Truncated results table (%s).", tablefile));
+
+                chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+                chunkRows.add(n);
+                rows += n;
+                offset += length;
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The number of rows.
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return The number of chunks.
+     */
+    public int getNumChunks() {
+        return chunks.size();
+    }
+
+    /**
+     * Returns the number of rows in a chunk.
+     *
+     * @param chunk The chunk.
+     * @return The number of rows.
+     */
+    public int getRows(int chunk) {
+        return chunkRows.get(chunk);
+    }
+
+    /**
+     * Returns an <code>int</code> column of a chunk.
+     *
+     * @param chunk The chunk.
+     * @param column The column.
+     * @return A view of the column.
+     */
+    public IntBuffer getIntColumn(int chunk, int column) {
+        checkType(column, ResultsTable.TYPE_INT);
+        return column(chunk, column).asIntBuffer();
+    }
+
+    /**
+     * Returns a <code>long</code> column of a chunk.
+     *
+     * @param chunk The chunk.
+     * @param column The column.
+     * @return A view of the column.
+     */
+    public LongBuffer getLongColumn(int chunk, int column) {
+        checkType(column, ResultsTable.TYPE_LONG);
+        return column(chunk, column).asLongBuffer();
+    }
+
+    /**
+     * Returns a <code>double</code> column of a chunk.
+     *
+     * @param chunk The chunk.
+     * @param column The column.
+     * @return A view of the column.
+     */
+    public DoubleBuffer getDoubleColumn(int chunk, int column) {
+        checkType(column, ResultsTable.TYPE_DOUBLE);
+        return column(chunk, column).asDoubleBuffer();
+    }
+
+    /**
+     * Computes the statistics of a column over all the rows. The <code>NaN</code> values are skipped.
+     *
+     * @param column The column.
+     * @return The statistics.
+     */
+    public RunningStats scan(int column) {
+        RunningStats stats = new RunningStats();
+
+        for (int chunk = 0; chunk < chunks.size(); chunk++) {
+            switch (ResultsTable.type(column)) {
+            case ResultsTable.TYPE_INT:
+                IntBuffer ints = getIntColumn(chunk, column);
+                while (ints.hasRemaining())
+                    stats.add(ints.get());
+                break;
+            case ResultsTable.TYPE_LONG:
+                LongBuffer longs = getLongColumn(chunk, column);
+                while (longs.hasRemaining())
+                    stats.add(longs.get());
+                break;
+            default:
+                DoubleBuffer doubles = getDoubleColumn(chunk, column);
+                while (doubles.hasRemaining()) {
+                    double x = doubles.get();
+                    if (!Double.isNaN(x))
+                        stats.add(x);
+                }
+            }
+        }
+
+        return stats;
+    }
+
+    /**
+     * Closes the table.
+     */
+    public void close() {
+        try {
+            file.close();
+        } catch (IOException e) {
+            System.err.println("Error while closing the results table.");
+        }
+    }
+
+    private ByteBuffer column(int chunk, int column) {
+        int n = chunkRows.get(chunk);
+        ByteBuffer view = chunks.get(chunk).duplicate();
+
+        int from = (int) ResultsTable.columnOffset(column, n);
+        view.position(from);
+        view.limit(from + ResultsTable.width(column) * n);
+
+        return view.slice();
+    }
+
+    private static void checkType(int column, int type) {
+        if (ResultsTable.type(column) != type)
+            throw new IllegalArgumentException(String.format("Column %d has a different type.", column));
+    }
+}
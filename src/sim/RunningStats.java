@@ -0,0 +1,146 @@
+package sim;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Online mean, variance and extremes of a stream of values.
+ * <p>
+ * Uses Welford's update, so the variance stays accurate over millions of
+ * values, and Chan's formula to merge the statistics of two streams. The
+ * memory taken does not depend on the number of values.
+ * <p>
+ * The statistics can be written to and read from a binary stream, e.g. to be
+ * merged in another process.
+ */
+public class RunningStats {
+
+    private long n = 0;
+    private double mean = 0.0;
+    private double m2 = 0.0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Adds a value.
+     * @param x The value.
+     */
+    public void add(double x) {
+        ++n;
+
+        double delta = x - mean;
+        mean += delta / n;
+        m2 += delta * (x - mean);
+
+        if (x < min) min = x;
+        if (x > max) max = x;
+    }
+
+    /**
+     * Adds the values of another stream.
+     * @param other The statistics of the other stream.
+     */
+    public void merge(RunningStats other) {
+        if (other.n == 0) return;
+
+        if (n == 0) {
+            n = other.n;
+            mean = other.mean;
+            m2 = other.m2;
+            min = other.min;
+            max = other.max;
+            return;
+        }
+
+        long total = n + other.n;
+        double delta = other.mean - mean;
+
+        mean += delta * other.n / total;
+        m2 += other.m2 + delta * delta * ((double) n * other.n / total);
+        n = total;
+
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Writes the statistics.
+     * @param out The stream.
+     * @throws IOException If the statistics could not be written.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(n);
+        out.writeDouble(mean);
+        out.writeDouble(m2);
+        out.writeDouble(min);
+        out.writeDouble(max);
+    }
+
+    /**
+     * Reads statistics written by <code>writeTo()</code>.
+     * @param in The stream.
+     * @return The statistics.
+     * @throws IOException If the statistics could not be read.
+     */
+    public static RunningStats readFrom(DataInput in) throws IOException {
+        RunningStats s = new RunningStats();
+
+        s.n = in.readLong();
+        s.mean = in.readDouble();
+        s.m2 = in.readDouble();
+        s.min = in.readDouble();
+        s.max = in.readDouble();
+
+        return s;
+    }
+
+    /**
+     * @return The number of values.
+     */
+    public long getCount() {
+        return n;
+    }
+
+    /**
+     * @return The mean or 0 if there are no values.
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return The sample variance or 0 if there are less than two values.
+     */
+    public double getVariance() {
+        return n > 1 ? m2 / (n - 1) : 0.0;
+    }
+
+    /**
+     * @return The sample standard deviation.
+     */
+    public double getStdDev() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * @return The standard error of the mean.
+     */
+    public double getStdError() {
+        return n > 0 ? Math.sqrt(getVariance() / n) : 0.0;
+    }
+
+    /**
+     * @return The smallest value or +Infinity if there are no values.
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * @return The largest value or -Infinity if there are no values.
+     */
+    public double getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,271 @@
+package sim;
+
+import java.util.Arrays;
+
+/**
+ * A World Cup season: a series of races with the same field of athletes.
+ * <p>
+ * The athletes are a pool of <code>CompetitorModel</code>s, created once and
+ * reset before every race, run by a single, reused <code>EventRace</code>. A
+ * race allocates nothing, so a season costs the simulation only. The form of
+ * an athlete - the initial speed and accuracy factors - carries over from race
+ * to race as a mean-reverting random walk. The World Cup points, the wins and
+ * the podiums are added up after every race.
+ */
+public final class Season {
+
+    /**
+     * The World Cup points of the first 40 places.
+     */
+    public static final int[] WORLD_CUP_POINTS = { 90, 75, 60, 50, 45, 40, 36, 34, 32, 31, 30, 29, 28, 27, 26, 25,
+            24, 23, 22, 21, 20, 19, 18, 17, 16, 15, 14, 13, 12, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1 };
+
+    /**
+     * The number of races of a season.
+     */
+    public static final int NUM_RACES = 26;
+
+    /**
+     * The share of the deviation of the form from 1 kept from one race to the next.
+     */
+    public static final double FORM_PERSISTENCE = 0.8;
+
+    /**
+     * The standard deviation of the change of the form between two races.
+     */
+    public static final double FORM_STD_DEV = 0.01;
+
+    /**
+     * The largest number of athletes, the IDs are packed into the low 20 bits of the sort keys.
+     */
+    public static final int MAX_ATHLETES = (1 << 20) - 1;
+
+    /**
+     * The largest number of races, the points take the 23 bits above bit 40 of the sort keys of the standings
+     * and the wins the 20 bits below.
+     */
+    public static final int MAX_RACES = ((1 << 23) - 1) / WORLD_CUP_POINTS[0];
+
+    private final int numAthletes;
+    private final int numRaces;
+
+    private final CompetitorModel[] athletes;
+    private final EventRace race;
+
+    /**
+     * The stream of the form changes.
+     */
+    private final RandomStream random = new RandomStream(0);
+
+    private long seed;
+    private int racesRun = 0;
+
+    private final double[] form;
+    private final int[] points;
+    private final int[] wins;
+    private final int[] podiums;
+
+    /**
+     * The finishers of the last race, sorted by the finish time, as the finish time bits and the ID.
+     */
+    private final long[] order;
+
+    /**
+     * The c-tor.
+     * @param numAthletes The number of athletes, at most <code>MAX_ATHLETES</code>.
+     * @param numRaces The number of races, at most <code>MAX_RACES</code>.
+     * @param seed The seed of the season.
+     * @param params The values of the model parameters.
+     * @throws IllegalArgumentException If there are too many athletes or races.
+     */
+    public Season(int numAthletes, int numRaces, long seed, Parameters params) {
+        if (numAthletes > MAX_ATHLETES)
+            throw new IllegalArgumentException(String.format("At most %d athletes are supported, not %d.",
+                    MAX_ATHLETES, numAthletes));
+
+        if (numRaces > MAX_RACES)
+            throw new IllegalArgumentException(String.format("At most %d races are supported, not %d.",
+                    MAX_RACES, numRaces));
+
+        this.numAthletes = numAthletes;
+        this.numRaces = numRaces;
+
+        athletes = new CompetitorModel[numAthletes];
+
+        for (int i = 0; i < numAthletes; i++)
+            athletes[i] = new CompetitorModel(i, params, new CompetitorStreams(new RandomStream(seed, i)));
+
+        race = new EventRace(athletes);
+
+        form = new double[numAthletes];
+        points = new int[numAthletes];
+        wins = new int[numAthletes];
+        podiums = new int[numAthletes];
+        order = new long[numAthletes];
+
+        reset(seed);
+    }
+
+    /**
+     * Starts the season again, keeping the pool.
+     * @param seed The seed of the season.
+     */
+    public void reset(long seed) {
+        this.seed = seed;
+        racesRun = 0;
+        random.reset(seed, -1);
+
+        Arrays.fill(form, 1.0);
+        Arrays.fill(points, 0);
+        Arrays.fill(wins, 0);
+        Arrays.fill(podiums, 0);
+    }
+
+    /**
+     * Carries out the races left.
+     */
+    public void run() {
+        while (racesRun < numRaces)
+            runRace();
+    }
+
+    /**
+     * Carries out the next race and adds its results to the standings.
+     */
+    public void runRace() {
+        long raceSeed = seed + racesRun * 0x9E3779B97F4A7C15L;
+
+        for (int i = 0; i < numAthletes; i++)
+            athletes[i].reset(raceSeed, form[i]);
+
+        race.run();
+
+        int finishers = 0;
+
+        for (int i = 0; i < numAthletes; i++) {
+            double t = race.getFinishTime(i);
+
+            // The finish times are positive, so their bits sort as the times do.
+            if (t != 0)
+                order[finishers++] = (Double.doubleToLongBits(t) & ~0xFFFFFL) | i;
+        }
+
+        Arrays.sort(order, 0, finishers);
+
+        for (int place = 0; place < finishers; place++) {
+            int id = (int) (order[place] & 0xFFFFF);
+
+            if (place < WORLD_CUP_POINTS.length)
+                points[id] += WORLD_CUP_POINTS[place];
+            if (place == 0)
+                ++wins[id];
+            if (place < 3)
+                ++podiums[id];
+        }
+
+        for (int i = 0; i < numAthletes; i++)
+            form[i] = 1.0 + FORM_PERSISTENCE * (form[i] - 1.0) + random.normal(0.0, FORM_STD_DEV);
+
+        ++racesRun;
+    }
+
+    /**
+     * Returns the athletes ordered by the standings: the points, then the wins.
+     * @return The IDs of the athletes, the leader first.
+     */
+    public int[] getStandings() {
+        long[] keys = new long[numAthletes];
+
+        // Sorting the negated points and wins puts the best first, the ID breaks the ties.
+        for (int i = 0; i < numAthletes; i++)
+            keys[i] = (((long) -points[i]) << 40) + (((long) -wins[i]) << 20) + i;
+
+        Arrays.sort(keys);
+
+        int[] standings = new int[numAthletes];
+
+        for (int i = 0; i < numAthletes; i++)
+            standings[i] = (int) (keys[i] & 0xFFFFF);
+
+        return standings;
+    }
+
+    /**
+     * @param id Internal athlete ID.
+     * @return The World Cup points of an athlete.
+     */
+    public int getPoints(int id) {
+        return points[id];
+    }
+
+    /**
+     * @param id Internal athlete ID.
+     * @return The number of races won by an athlete.
+     */
+    public int getWins(int id) {
+        return wins[id];
+    }
+
+    /**
+     * @param id Internal athlete ID.
+     * @return The number of podiums of an athlete.
+     */
+    public int getPodiums(int id) {
+        return podiums[id];
+    }
+
+    /**
+     * @param id Internal athlete ID.
+     * @return The current form of an athlete, 1 for the usual form.
+     */
+    public double getForm(int id) {
+        return form[id];
+    }
+
+    /**
+     * @return The number of races carried out.
+     */
+    public int getRacesRun() {
+        return racesRun;
+    }
+
+    /**
+     * Entry point of the season mode. Prints the standings of the first season and the probabilities of winning
+     * the overall World Cup.
+     * @param args The number of seasons, optionally the number of athletes and races.
+     */
+    public static void main(String[] args) {
+        int seasons = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int athletes = args.length > 1 ? Integer.parseInt(args[1]) : Biathlon.NUM_COMPETITORS;
+        int races = args.length > 2 ? Integer.parseInt(args[2]) : NUM_RACES;
+
+        Season season = new Season(athletes, races, ReplicationRunner.seedFor(0), new Parameters());
+        int[] titles = new int[athletes];
+        long start = System.nanoTime();
+
+        for (int s = 0; s < seasons; s++) {
+            season.reset(ReplicationRunner.seedFor(s));
+            season.run();
+
+            int[] standings = season.getStandings();
+            ++titles[standings[0]];
+
+            if (s == 0) {
+                for (int place = 0; place < Math.min(10, athletes); place++) {
+                    int id = standings[place];
+                    System.out.println(String.format("%2d. Athlete #%d \t %d points \t %d wins \t %d podiums",
+                            place + 1, id + 1, season.getPoints(id), season.getWins(id), season.getPodiums(id)));
+                }
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        for (int i = 0; i < athletes; i++)
+            if (titles[i] > 0)
+                System.out.println(String.format("Athlete #%d \t title %.4f", i + 1, (double) titles[i] / seasons));
+
+        System.out.println(String.format("%d seasons of %d races in %.2f s (%.0f races/s).", seasons, races, seconds,
+                (double) seasons * races / seconds));
+    }
+}
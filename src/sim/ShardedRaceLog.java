@@ -0,0 +1,62 @@
+package sim;
+
+/**
+ * A <code>TextRaceLog</code> spreading the competitors over a fixed number of
+ * shard files.
+ * <p>
+ * Competitors are hashed into <i>competitors_NN.txt</i> shards and every line
+ * is tagged with the name of the competitor. The number of open files and the
+ * memory taken by their buffers depend only on the number of shards, not on
+ * the number of competitors.
+ */
+public class ShardedRaceLog extends TextRaceLog {
+
+    private final Logger[] shards;
+
+    /**
+     * The c-tor.
+     * @param model The model providing the log directory.
+     * @param numShards The number of shard files.
+     */
+    public ShardedRaceLog(Biathlon model, int numShards) {
+        super(model);
+        shards = new Logger[numShards];
+    }
+
+    /**
+     * Returns the shard a competitor is logged to.
+     * @param competitor Internal competitor ID.
+     * @param numShards The number of shards.
+     * @return The index of the shard.
+     */
+    public static int shardOf(int competitor, int numShards) {
+        int h = competitor * 0x9E3779B9; // Fibonacci hashing spreads consecutive IDs.
+        return (int) ((h & 0xFFFFFFFFL) % numShards);
+    }
+
+    public void close() {
+        super.close();
+
+        for (int i = 0; i < shards.length; i++) {
+            if (shards[i] != null) {
+                shards[i].close();
+                shards[i] = null;
+            }
+        }
+    }
+
+    protected void open(int competitor) {
+        int shard = shardOf(competitor, shards.length);
+
+        if (shards[shard] == null)
+            shards[shard] = new Logger(model, String.format("competitors_%02d.txt", shard), true);
+    }
+
+    protected Logger loggerFor(int competitor) {
+        return shards[shardOf(competitor, shards.length)];
+    }
+
+    protected void release(int competitor) {
+        // Shards stay open until the race is over.
+    }
+}
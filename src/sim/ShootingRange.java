@@ -11,7 +11,7 @@ import desmoj.core.simulator.TimeSpan;
 public class ShootingRange extends SimProcess {
 
     private Biathlon myModel;
-    private Logger myLogger;
+    private RaceLog log;
 
     /**
      * The c-tor.
@@ -22,7 +22,7 @@ public class ShootingRange extends SimProcess {
     public ShootingRange(Model owner, String name, boolean showInTrace) {
         super(owner, name, showInTrace);
         myModel = (Biathlon) owner;
-        myLogger = new Logger("ShootingRange.txt");
+        log = myModel.getRaceLog();
     }
 
     /**
@@ -38,27 +38,29 @@ public class ShootingRange extends SimProcess {
                 Competitor nextCompetitor = myModel.competitorsQueue.first();
                 myModel.competitorsQueue.remove(nextCompetitor);
 
-                myLogger.log(String.format("%s enters the shooting range.",
-                                           nextCompetitor.toString()));
+                double now = presentTime().getTimeAsDouble();
+                myModel.getMetrics().dequeue(now);
+                myModel.getMetrics().startSession(nextCompetitor.getArrival(), now);
+
+                if (LogLevel.INFO) log.rangeEnter(presentTime().getTimeAsDouble(), nextCompetitor.getID());
 
                 int misses = nextCompetitor.computeShotsMissed();
                 nextCompetitor.addPenalties(misses);
 
                 // Models concrete shooting time.
                 TimeSpan time = nextCompetitor.computeShootingTime();
-                nextCompetitor.activate(time);
 
-                long simTime = Biathlon.getInstance().presentTime().getTimeTruncated();
-                long timeVal = time.getTimeTruncated();
-                long allTime = timeVal + simTime;
+                // A competitor who ran on while the range was busy does not end the session itself.
+                if (nextCompetitor.isScheduled())
+                    myModel.getMetrics().endSessionAt(now + time.getTimeAsDouble());
 
-                // FIXME These two show unordered in the log.
-                // FIXME Add a log queue?
-                myLogger.log(allTime, String.format("%s misses %d times.",
-                                                    nextCompetitor.toString(), misses));
+                nextCompetitor.activate(time);
 
-                myLogger.log(allTime, String.format("%s leaves the shooting range.",
-                                                    nextCompetitor.toString()));
+                // FIXME This shows unordered in the log.
+                if (LogLevel.INFO) {
+                    long allTime = presentTime().getTimeTruncated() + time.getTimeTruncated();
+                    log.rangeLeave(allTime, nextCompetitor.getID(), misses);
+                }
             }
         }
     }
@@ -0,0 +1,37 @@
+package sim;
+
+import desmoj.core.simulator.Model;
+import desmoj.core.simulator.SimProcess;
+import desmoj.core.simulator.TimeInstant;
+
+/**
+ * Takes a <code>RaceSnapshot</code> at a point of simulation time.
+ */
+public class SnapshotProcess extends SimProcess {
+
+    private final double time;
+
+    /**
+     * The c-tor.
+     * @param owner The model owning this process.
+     * @param name The name of this process.
+     * @param showInTrace A flag toggling tracing for this process.
+     * @param time The simulation time of the snapshot in seconds.
+     */
+    public SnapshotProcess(Model owner, String name, boolean showInTrace, double time) {
+        super(owner, name, showInTrace);
+        this.time = time;
+    }
+
+    /**
+     * Waits until the time of the snapshot and captures the race.
+     */
+    public void lifeCycle() {
+        Biathlon model = (Biathlon) getModel();
+
+        if (presentTime().getTimeAsDouble() < time)
+            hold(new TimeInstant(time));
+
+        model.setSnapshot(RaceSnapshot.capture(model));
+    }
+}
@@ -0,0 +1,133 @@
+package sim;
+
+/**
+ * A <code>RaceLog</code> writing the human-readable text logs: one file per
+ * competitor plus one for the shooting range.
+ * <p>
+ * The events are passed to the <code>AsyncLogWriter</code> as typed records
+ * and formatted on its thread by the <code>EventFormatter</code>.
+ */
+public class TextRaceLog extends RaceLog {
+
+    protected final Biathlon model;
+    private Logger[] competitors;
+    private Logger shootingRange;
+
+    /**
+     * The c-tor.
+     * @param model The model providing the log directory.
+     */
+    public TextRaceLog(Biathlon model) {
+        this.model = model;
+    }
+
+    public void start(double time, int competitor) {
+        open(competitor);
+        log(time, competitor, EventType.START, 0, 0, 0.0);
+    }
+
+    public void enterRange(double time, int competitor, int visit) {
+        log(time, competitor, EventType.ENTER_RANGE, visit, 0, 0.0);
+    }
+
+    public void leaveRange(double time, int competitor) {
+        log(time, competitor, EventType.LEAVE_RANGE, 0, 0, 0.0);
+    }
+
+    public void randomEvent(double time, int competitor, RandomEvent event, double duration, int desperationMod) {
+        log(time, competitor, EventType.RANDOM_EVENT, event.ordinal(), desperationMod, duration);
+    }
+
+    public void desperation(double time, int competitor, int desperation) {
+        log(time, competitor, EventType.DESPERATION, desperation, 0, 0.0);
+    }
+
+    public void panic(double time, int competitor) {
+        log(time, competitor, EventType.PANIC, 0, 0, 0.0);
+    }
+
+    public void misses(double time, int competitor, int missed) {
+        log(time, competitor, EventType.MISSES, missed, 0, 0.0);
+    }
+
+    public void penalty(double time, int competitor, double distance) {
+        log(time, competitor, EventType.PENALTY, 0, 0, distance);
+    }
+
+    public void factors(double time, int competitor, double speed, double aiming, double accuracy) {
+        log(time, competitor, EventType.SPEED_FACTOR, 0, 0, speed);
+        log(time, competitor, EventType.AIMING_FACTOR, 0, 0, aiming);
+        log(time, competitor, EventType.ACCURACY_FACTOR, 0, 0, accuracy);
+    }
+
+    public void finish(double time, int competitor) {
+        log(time, competitor, EventType.FINISH, 0, 0, 0.0);
+        release(competitor);
+    }
+
+    public void rangeEnter(double time, int competitor) {
+        rangeLog().log((long) time, EventType.RANGE_ENTER, competitor, 0, 0, 0.0);
+    }
+
+    public void rangeLeave(double time, int competitor, int missed) {
+        rangeLog().log((long) time, EventType.RANGE_MISSES, competitor, missed, 0, 0.0);
+        rangeLog().log((long) time, EventType.RANGE_LEAVE, competitor, 0, 0, 0.0);
+    }
+
+    public void close() {
+        if (competitors != null) {
+            for (int i = 0; i < competitors.length; i++) {
+                if (competitors[i] != null) {
+                    competitors[i].close();
+                    competitors[i] = null;
+                }
+            }
+        }
+
+        if (shootingRange != null)
+            shootingRange.close();
+    }
+
+    /**
+     * Opens the log of a competitor starting the race.
+     * @param competitor Internal competitor ID.
+     */
+    protected void open(int competitor) {
+        if (competitors == null)
+            competitors = new Logger[model.getNumCompetitors()];
+
+        competitors[competitor] = new Logger(model, String.format("competitor_%02d.txt", competitor));
+    }
+
+    /**
+     * Returns the log of a competitor.
+     * @param competitor Internal competitor ID.
+     * @return The logger or <code>null</code> if the log is not open.
+     */
+    protected Logger loggerFor(int competitor) {
+        return competitors != null ? competitors[competitor] : null;
+    }
+
+    /**
+     * Releases the log of a competitor who finished the race.
+     * @param competitor Internal competitor ID.
+     */
+    protected void release(int competitor) {
+        competitors[competitor].close();
+        competitors[competitor] = null;
+    }
+
+    private void log(double time, int competitor, EventType type, int a, int b, double value) {
+        Logger l = loggerFor(competitor);
+
+        if (l != null)
+            l.log((long) time, type, competitor, a, b, value);
+    }
+
+    private Logger rangeLog() {
+        if (shootingRange == null)
+            shootingRange = new Logger(model, "ShootingRange.txt");
+
+        return shootingRange;
+    }
+}
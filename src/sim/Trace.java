@@ -0,0 +1,170 @@
+package sim;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A streaming, size-capped trace of a single model.
+ * <p>
+ * The records are formatted like the text logs, tagged with the competitor,
+ * and streamed through a GZIP compressor straight to the file, so the memory
+ * taken by a trace does not depend on its length. Once the compressed file
+ * reaches the size cap, a final line is written and the remaining records are
+ * dropped. The cap is checked against the bytes the compressor already
+ * emitted, so the file may exceed it by the size of the compressor buffer.
+ */
+public class Trace {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final CountingOutputStream file;
+    private final GZIPOutputStream out;
+    private final long maxBytes;
+    private final StringBuilder line = new StringBuilder(256);
+
+    /**
+     * The record is encoded through these buffers, reused for all the records.
+     */
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private CharBuffer chars = CharBuffer.allocate(256);
+    private final ByteBuffer bytes = ByteBuffer.allocate(1024);
+
+    private long records = 0;
+    private long dropped = 0;
+    private boolean full = false;
+
+    /**
+     * The c-tor.
+     * @param filename The trace file, conventionally <i>*.txt.gz</i>.
+     * @param maxBytes The size cap of the compressed file in bytes.
+     * @throws IOException If the file could not be created.
+     */
+    public Trace(File filename, long maxBytes) throws IOException {
+        this.file = new CountingOutputStream(new FileOutputStream(filename));
+        this.out = new GZIPOutputStream(file, BUFFER_SIZE);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Writes a record into the trace, unless the trace is full.
+     * @param time Simulation time of the record in seconds.
+     * @param competitor Internal ID of the competitor.
+     * @param type The type of the record.
+     * @param a Integer payload.
+     * @param b Integer payload.
+     * @param value Floating point payload.
+     */
+    public void record(double time, int competitor, EventType type, int a, int b, double value) {
+        if (full) {
+            ++dropped;
+            return;
+        }
+
+        line.setLength(0);
+        EventFormatter.format(line, (long) time, type, competitor, a, b, value, true);
+        write();
+        ++records;
+
+        if (file.count >= maxBytes) {
+            full = true;
+            line.setLength(0);
+            Logger.format(line, (long) time, String.format("Trace size cap of %d bytes reached.", maxBytes));
+            write();
+        }
+    }
+
+    /**
+     * @return The number of records written.
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * @return The number of records dropped over the size cap.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Finishes the compressed stream and closes the file.
+     */
+    public void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            System.err.println("Could not close the trace.");
+        }
+    }
+
+    private void write() {
+        int length = line.length();
+
+        if (chars.capacity() < length)
+            chars = CharBuffer.allocate(Math.max(length, 2 * chars.capacity()));
+
+        chars.clear();
+        line.getChars(0, length, chars.array(), 0);
+        chars.limit(length);
+        encoder.reset();
+
+        try {
+            CoderResult result;
+
+            do {
+                result = encoder.encode(chars, bytes, true);
+                drain();
+            } while (result.isOverflow());
+
+            encoder.flush(bytes);
+            drain();
+        } catch (IOException e) {
+            System.err.println("Could not write to the trace.");
+            full = true;
+        }
+    }
+
+    /**
+     * Passes the encoded bytes on to the compressor.
+     */
+    private void drain() throws IOException {
+        out.write(bytes.array(), 0, bytes.position());
+        bytes.clear();
+    }
+
+    /**
+     * Counts the bytes leaving the compressor.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
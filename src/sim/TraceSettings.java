@@ -0,0 +1,123 @@
+package sim;
+
+import java.util.BitSet;
+
+/**
+ * Selects what goes into a <code>Trace</code>: the replications, the time
+ * window and the competitors, and how large the trace file may grow.
+ */
+public class TraceSettings {
+
+    /**
+     * The default size cap of a trace file in bytes.
+     */
+    public static final long DEFAULT_MAX_BYTES = 16L << 20;
+
+    private long maxBytes = DEFAULT_MAX_BYTES;
+
+    /**
+     * Every <code>replicationInterval</code>-th replication is traced.
+     */
+    private int replicationInterval = 1;
+
+    private double from = 0.0;
+    private double to = Double.POSITIVE_INFINITY;
+
+    /**
+     * The traced competitors, <code>null</code> traces all of them.
+     */
+    private BitSet competitors = null;
+
+    /**
+     * Sets the size cap of a (compressed) trace file, <code>DEFAULT_MAX_BYTES</code> by default.
+     * @param maxBytes The size cap in bytes.
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the size cap of a trace file.
+     * @return The size cap in bytes.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Traces only every <code>n</code>-th replication, all of them by default.
+     * @param n The sampling interval.
+     */
+    public void setReplicationInterval(int n) {
+        this.replicationInterval = n;
+    }
+
+    /**
+     * Traces only the records in a simulation time window, the whole race by default.
+     * @param from The start of the window in seconds (inclusive).
+     * @param to The end of the window in seconds (exclusive).
+     */
+    public void setTimeWindow(double from, double to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Traces only the chosen competitors, all of them by default.
+     * @param ids Internal IDs of the competitors.
+     */
+    public void setCompetitors(int... ids) {
+        competitors = new BitSet();
+
+        for (int id : ids)
+            competitors.set(id);
+    }
+
+    /**
+     * Determines whether a replication is traced.
+     * @param replication The index of the replication.
+     * @return <code>true</code> if the replication is traced.
+     */
+    public boolean tracesReplication(int replication) {
+        return replication % replicationInterval == 0;
+    }
+
+    /**
+     * Determines whether a record is traced.
+     * @param time Simulation time of the record in seconds.
+     * @param competitor Internal ID of the competitor.
+     * @return <code>true</code> if the record is traced.
+     */
+    public boolean accepts(double time, int competitor) {
+        return time >= from && time < to && (competitors == null || competitors.get(competitor));
+    }
+
+    /**
+     * Reads the settings from the system properties: <i>sim.trace.maxBytes</i>,
+     * <i>sim.trace.every</i>, <i>sim.trace.from</i>, <i>sim.trace.to</i> and
+     * <i>sim.trace.competitors</i> (comma separated, 1-based like the logs).
+     * @return The settings.
+     */
+    public static TraceSettings fromSystemProperties() {
+        TraceSettings settings = new TraceSettings();
+
+        settings.setMaxBytes(Long.getLong("sim.trace.maxBytes", DEFAULT_MAX_BYTES));
+        settings.setReplicationInterval(Integer.getInteger("sim.trace.every", 1));
+        settings.setTimeWindow(Double.parseDouble(System.getProperty("sim.trace.from", "0")),
+                Double.parseDouble(System.getProperty("sim.trace.to", "Infinity")));
+
+        String competitors = System.getProperty("sim.trace.competitors");
+
+        if (competitors != null) {
+            String[] names = competitors.split(",");
+            int[] ids = new int[names.length];
+
+            for (int i = 0; i < names.length; i++)
+                ids[i] = Integer.parseInt(names[i].trim()) - 1;
+
+            settings.setCompetitors(ids);
+        }
+
+        return settings;
+    }
+}
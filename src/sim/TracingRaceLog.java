@@ -0,0 +1,106 @@
+package sim;
+
+/**
+ * A <code>RaceLog</code> passing the events on to another log and copying the
+ * ones selected by <code>TraceSettings</code> into a <code>Trace</code>.
+ */
+public class TracingRaceLog extends RaceLog {
+
+    private final RaceLog log;
+    private final Trace trace;
+    private final TraceSettings settings;
+
+    /**
+     * The c-tor.
+     * @param log The log the events are passed on to, <code>RaceLog.NONE</code> for a trace only.
+     * @param trace The trace the selected events are written to.
+     * @param settings Selects the traced events.
+     */
+    public TracingRaceLog(RaceLog log, Trace trace, TraceSettings settings) {
+        this.log = log;
+        this.trace = trace;
+        this.settings = settings;
+    }
+
+    public void start(double time, int competitor) {
+        log.start(time, competitor);
+        if (settings.accepts(time, competitor))
+            trace.record(time, competitor, EventType.START, 0, 0, 0.0);
+    }
+
+    public void enterRange(double time, int competitor, int visit) {
+        log.enterRange(time, competitor, visit);
+        if (settings.accepts(time, competitor))
+            trace.record(time, competitor, EventType.ENTER_RANGE, visit, 0, 0.0);
+    }
+
+    public void leaveRange(double time, int competitor) {
+        log.leaveRange(time, competitor);
+        if (settings.accepts(time, competitor))
+            trace.record(time, competitor, EventType.LEAVE_RANGE, 0, 0, 0.0);
+    }
+
+    public void randomEvent(double time, int competitor, RandomEvent event, double duration, int desperationMod) {
+        log.randomEvent(time, competitor, event, duration, desperationMod);
+        if (settings.accepts(time, competitor))
+            trace.record(time, competitor, EventType.RANDOM_EVENT, event.ordinal(), desperationMod, duration);
+    }
+
+    public void desperation(double time, int competitor, int desperation) {
+        log.desperation(time, competitor, desperation);
+        if (settings.accepts(time, competitor))
+            trace.record(time, competitor, EventType.DESPERATION, desperation, 0, 0.0);
+    }
+
+    public void panic(double time, int competitor) {
+        log.panic(time, competitor);
+        if (settings.accepts(time, competitor))
+            trace.record(time, competitor, EventType.PANIC, 0, 0, 0.0);
+    }
+
+    public void misses(double time, int competitor, int missed) {
+        log.misses(time, competitor, missed);
+        if (settings.accepts(time, competitor))
+            trace.record(time, competitor, EventType.MISSES, missed, 0, 0.0);
+    }
+
+    public void penalty(double time, int competitor, double distance) {
+        log.penalty(time, competitor, distance);
+        if (settings.accepts(time, competitor))
+            trace.record(time, competitor, EventType.PENALTY, 0, 0, distance);
+    }
+
+    public void factors(double time, int competitor, double speed, double aiming, double accuracy) {
+        log.factors(time, competitor, speed, aiming, accuracy);
+        if (settings.accepts(time, competitor)) {
+            trace.record(time, competitor, EventType.SPEED_FACTOR, 0, 0, speed);
+            trace.record(time, competitor, EventType.AIMING_FACTOR, 0, 0, aiming);
+            trace.record(time, competitor, EventType.ACCURACY_FACTOR, 0, 0, accuracy);
+        }
+    }
+
+    public void finish(double time, int competitor) {
+        log.finish(time, competitor);
+        if (settings.accepts(time, competitor))
+            trace.record(time, competitor, EventType.FINISH, 0, 0, 0.0);
+    }
+
+    public void rangeEnter(double time, int competitor) {
+        log.rangeEnter(time, competitor);
+        if (settings.accepts(time, competitor))
+            trace.record(time, competitor, EventType.RANGE_ENTER, 0, 0, 0.0);
+    }
+
+    public void rangeLeave(double time, int competitor, int missed) {
+        log.rangeLeave(time, competitor, missed);
+        if (settings.accepts(time, competitor)) {
+            trace.record(time, competitor, EventType.RANGE_MISSES, missed, 0, 0.0);
+            trace.record(time, competitor, EventType.RANGE_LEAVE, 0, 0, 0.0);
+        }
+    }
+
+    public void close() {
+        log.close();
+        trace.close();
+    }
+}